@@ -75,15 +75,19 @@ import fr.umlv.unitex.process.commands.DicoCommand;
 import fr.umlv.unitex.process.commands.ExtractCommand;
 import fr.umlv.unitex.process.commands.Grf2Fst2Command;
 import fr.umlv.unitex.process.commands.LocateCommand;
+import fr.umlv.unitex.process.commands.MergeShardsCommand;
 import fr.umlv.unitex.process.commands.MkdirCommand;
 import fr.umlv.unitex.process.commands.MultiCommands;
 import fr.umlv.unitex.process.commands.NormalizeCommand;
 import fr.umlv.unitex.process.commands.Reg2GrfCommand;
+import fr.umlv.unitex.process.commands.RmCommand;
 import fr.umlv.unitex.process.commands.SortTxtCommand;
+import fr.umlv.unitex.process.commands.SplitCorpusCommand;
 import fr.umlv.unitex.process.commands.SvnCommand;
 import fr.umlv.unitex.process.commands.TokenizeCommand;
 import fr.umlv.unitex.svn.SvnConflict;
 import fr.umlv.unitex.svn.SvnMonitor;
+import fr.umlv.unitex.text.CorpusShards;
 import fr.umlv.unitex.text.Text;
 import fr.umlv.unitex.common.frames.manager.FrameManager;
 /**
@@ -1546,7 +1550,88 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 		return commands;
 	}
 
+	/**
+	 * Returns the fingerprint of the preprocessing of the given text, which
+	 * tells whether preprocessText would give the same result as last time.
+	 */
+	public StageFingerprint getPreprocessingFingerprint(File txt) {
+		File sntDir = FileUtil.getSntDir(txt);
+		return new StageFingerprint(new File(sntDir,
+				"..preprocessing.fingerprint"), sntDir);
+	}
+
+	/**
+	 * Like preprocessText followed by getLocateCommands, but the text is cut
+	 * into at most n shards that are preprocessed and searched in parallel.
+	 * Their results are then merged into the snt dir of the text, so that the
+	 * following operations see a single text.
+	 */
+	public MultiCommands preprocessAndLocateShards(File txt, int n) {
+		final File snt = FileUtil.getSnt(txt);
+		/* The text is only read by the split command, not by the caller */
+		int count = CorpusShards.getShardCount(txt, n);
+		if (count <= 1) {
+			/* The text is too small to be cut */
+			MultiCommands commands = preprocessText(txt);
+			commands.addCommand(getLocateCommands(snt));
+			return commands;
+		}
+		File[] shards = new File[count];
+		File[] shardSnts = new File[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = CorpusShards.getShard(txt, i);
+			shardSnts[i] = FileUtil.getSnt(shards[i]);
+		}
+		MultiCommands commands = new MultiCommands();
+		commands.addCommand(createSntDir(txt));
+		SplitCorpusCommand split = new SplitCorpusCommand().split(txt, shards);
+		commands.addCommand(split);
+		/* Graphs are compiled once for all the shards */
+		commands.addCommand(getPreprocessing().getDeployCommands(this));
+		File fst2 = addGrammarCommands(commands);
+		for (int i = 0; i < shards.length; i++) {
+			MultiCommands shard = new MultiCommands();
+			shard.addCommand(getNormalizeCommand(shards[i]));
+			shard.addCommand(createSntDir(shards[i]));
+			shard.addCommand(getPreprocessing().getPreprocessCommands(this,
+					shardSnts[i]));
+			shard.addCommand(createTokenizeCommand(shardSnts[i]));
+			shard.addCommand(createDicoCommand(shardSnts[i], false));
+			/*
+			 * The regexp files must not be removed before all the shards have
+			 * been searched
+			 */
+			shard.addCommand(createLocateCommand(shardSnts[i], fst2, false));
+			/* The text may give fewer shards than asked for */
+			MultiCommands lane = new MultiCommands();
+			lane.addCommand(shard, split.isMissing(i));
+			commands.addParallelCommands(lane);
+		}
+		commands.addCommand(new MergeShardsCommand().merge(snt, shardSnts)
+				.limit(getSearchLimit()).alphabet(getAlphabet()));
+		/* Dictionary files of the shards have been appended to each other */
+		commands.addCommand(createSortCommands(FileUtil.getSntDir(snt), true));
+		/* The shards are removed even if a command has failed */
+		RmCommand rm = new RmCommand().rm(CorpusShards.getShardDir(txt));
+		if (isLastPatternRegexp()) {
+			final File regexFst2 = fst2;
+			rm.setWhatToDoOnceCompleted(new ToDoAfterSingleCommand() {
+				@Override
+				public void toDo(boolean success, ConsoleEntry entry) {
+					FileUtil.removeFile(new File(FileUtil
+							.getFileNameWithoutExtension(regexFst2) + ".*"));
+				}
+			});
+		}
+		commands.addFinalCommand(rm);
+		return commands;
+	}
+
 	private MultiCommands createDicoCommand(File snt) {
+		return createDicoCommand(snt, true);
+	}
+
+	private MultiCommands createDicoCommand(File snt, boolean sort) {
 		if (!applyDictionaries() || getDictionaries().size() == 0)
 			return null;
 		MultiCommands commands = new MultiCommands();
@@ -1562,19 +1647,33 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 		}
 		monitor(c);
 		commands.addCommand(c);
-		File sntDir = FileUtil.getSntDir(snt);
-		SortTxtCommand sort1 = new SortTxtCommand()
-				.file(new File(sntDir, "dlf")).sortAlphabet(getSortAlphabet())
-				.thai(ConfigManager.getManager().isThai(getName()));
-		commands.addCommand(sort1);
-		SortTxtCommand sort2 = new SortTxtCommand()
-				.file(new File(sntDir, "dlc")).sortAlphabet(getSortAlphabet())
-				.thai(ConfigManager.getManager().isThai(getName()));
-		commands.addCommand(sort2);
-		SortTxtCommand sort3 = new SortTxtCommand()
-				.file(new File(sntDir, "err")).sortAlphabet(getSortAlphabet())
-				.thai(ConfigManager.getManager().isThai(getName()));
-		commands.addCommand(sort3);
+		if (sort) {
+			commands.addCommand(createSortCommands(FileUtil.getSntDir(snt),
+					false));
+		}
+		return commands;
+	}
+
+	/**
+	 * Sorts the dlf, dlc and err files of the given snt dir. If countLines is
+	 * true, their numbers of lines are saved in the dlf.n, dlc.n and err.n
+	 * files.
+	 */
+	private MultiCommands createSortCommands(File sntDir, boolean countLines) {
+		if (!applyDictionaries() || getDictionaries().size() == 0)
+			return null;
+		MultiCommands commands = new MultiCommands();
+		/* The sorts don't depend on each other, so they can run in parallel */
+		for (String name : new String[] { "dlf", "dlc", "err" }) {
+			SortTxtCommand sort = new SortTxtCommand()
+					.file(new File(sntDir, name))
+					.sortAlphabet(getSortAlphabet())
+					.thai(ConfigManager.getManager().isThai(getName()));
+			if (countLines) {
+				sort = sort.saveNumberOfLines(new File(sntDir, name + ".n"));
+			}
+			commands.addParallelCommand(sort);
+		}
 		return commands;
 	}
 
@@ -1674,10 +1773,18 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 
 	public MultiCommands getLocateCommands(File snt) {
 		MultiCommands cmds = new MultiCommands();
+		File fst2 = addGrammarCommands(cmds);
+		cmds.addCommand(createLocateCommand(snt, fst2, isLastPatternRegexp()));
+		return cmds;
+	}
+
+	/**
+	 * Adds to cmds the commands that build the .fst2 to apply with Locate,
+	 * and returns this .fst2.
+	 */
+	private File addGrammarCommands(MultiCommands cmds) {
 		File fst2;
-		boolean regex = false;
 		if (isLastPatternRegexp()) {
-			regex = true;
 			File regexp = new File(getSrcDirectory(), "regexp.txt");
 			FileUtil.write(getLastRegexp(), regexp);
 			cmds.addCommand(getReg2GrfCommand(regexp));
@@ -1707,8 +1814,7 @@ public class GramlabProject implements Project, Comparable<GramlabProject> {
 								+ grf.getAbsolutePath());
 			}
 		}
-		cmds.addCommand(createLocateCommand(snt, fst2, regex));
-		return cmds;
+		return fst2;
 	}
 
 	private LocateCommand createLocateCommand(File snt, File fst2, boolean regex) {
@@ -31,6 +31,7 @@ import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.border.BevelBorder;
 import javax.swing.event.CaretEvent;
 import javax.swing.event.CaretListener;
@@ -47,6 +48,7 @@ import fr.gramlab.project.console.ConsolePanel;
 import fr.gramlab.util.MyComboCellRenderer;
 import fr.gramlab.util.SplitUtil;
 import fr.umlv.unitex.LinkButton;
+import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.files.FileUtil;
 import fr.umlv.unitex.files.PersonalFileFilter;
 import fr.umlv.unitex.frames.InternalFrameManager;
@@ -54,7 +56,12 @@ import fr.umlv.unitex.frames.TextFrame;
 import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.listeners.TextFrameListener;
 import fr.umlv.unitex.process.Launcher;
+import fr.umlv.unitex.process.MetricsHistory;
+import fr.umlv.unitex.process.MetricsReport;
 import fr.umlv.unitex.process.ToDo;
+import fr.umlv.unitex.process.ToDoBeforeSingleCommand;
+import fr.umlv.unitex.process.commands.AbstractMethodCommand;
+import fr.umlv.unitex.process.commands.MessageCommand;
 import fr.umlv.unitex.process.commands.MultiCommands;
 import fr.umlv.unitex.text.SntUtil;
 
@@ -69,6 +76,7 @@ public class ProcessPane extends JSplitPane {
 	JCheckBox doLocate=new JCheckBox();
 	JCheckBox doResults=new JCheckBox();
 	JCheckBox doConcordance=new JCheckBox();
+	JCheckBox shardedRun=new JCheckBox("(sharded run)");
 
 	LocateConfigPane locateConfigPane;
 	FileOperationConfigPane resultPane;
@@ -127,6 +135,9 @@ public class ProcessPane extends JSplitPane {
 			}
 		});
 		top.add(setPreprocessing);
+		top.add(Box.createHorizontalStrut(10));
+		shardedRun.setToolTipText("Cut the text into shards that are preprocessed and searched in parallel");
+		top.add(shardedRun);
 		top.add(Box.createHorizontalGlue());
 		LinkButton b=new LinkButton("\u2666",false);
 		b.addActionListener(new ActionListener() {
@@ -652,6 +663,24 @@ public class ProcessPane extends JSplitPane {
 				return;
 			}
 		}
+		final boolean sharded=shardedRun.isSelected();
+		if (sharded) {
+			/* The shards are only merged after the Locate operation */
+			if (!doPreprocessing.isSelected() || !doLocate.isSelected()) {
+				JOptionPane.showMessageDialog(null,
+						"A sharded run must include both the preprocessing and the locate operation",
+						"Error",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			if (project.isDebugMode()) {
+				JOptionPane.showMessageDialog(null,
+						"The debug mode cannot be used with a sharded run",
+						"Error",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+		}
 		if (doResults.isSelected()) {
 			if (!resultPane.validateConfiguration(project,true)) return;
 		}
@@ -729,6 +758,9 @@ public class ProcessPane extends JSplitPane {
 		}
 		
 		MultiCommands cmds=new MultiCommands();
+		final boolean isTextFrameVisible=
+				(GlobalProjectManager.search(snt)
+					.getFrameManagerAs(InternalFrameManager.class).getTextFrame()!=null);
 		if (doPreprocessing.isSelected()) {
 			if (!txt.exists()) {
 				JOptionPane.showMessageDialog(null,
@@ -736,22 +768,53 @@ public class ProcessPane extends JSplitPane {
 						JOptionPane.ERROR_MESSAGE);
 				return;
 			}
-			cmds.addCommand(project.preprocessText(txt));
-		}
-		final boolean isTextFrameVisible=
-				(GlobalProjectManager.search(snt)
-					.getFrameManagerAs(InternalFrameManager.class).getTextFrame()!=null);
-		if (isTextFrameVisible && doPreprocessing.isSelected()) {
-			GlobalProjectManager.search(snt)
-				.getFrameManagerAs(InternalFrameManager.class).closeTextFrame();
-			SntUtil.cleanSntDir(FileUtil.getSntDir(snt));
+			if (isTextFrameVisible) {
+				/* It will be opened again once the preprocessing is done */
+				GlobalProjectManager.search(snt)
+					.getFrameManagerAs(InternalFrameManager.class).closeTextFrame();
+			}
+			if (sharded) {
+				if (isTextFrameVisible) {
+					SntUtil.cleanSntDir(FileUtil.getSntDir(snt));
+				}
+				cmds.addCommand(project.preprocessAndLocateShards(txt,
+						Runtime.getRuntime().availableProcessors()));
+			} else {
+				MultiCommands preprocessing=new MultiCommands();
+				if (isTextFrameVisible) {
+					/* Only if the preprocessing is not skipped */
+					preprocessing.addCommand(new AbstractMethodCommand("clean") {
+						@Override
+						public boolean execute() {
+							SntUtil.cleanSntDir(FileUtil.getSntDir(snt));
+							return true;
+						}
+					});
+				}
+				preprocessing.addCommand(project.preprocessText(txt));
+				final String message="[Preprocessing skipped: the text, the resources and the configuration did not change]";
+				MessageCommand skipped=new MessageCommand(message+"\n");
+				skipped.setWhatToDoBefore(new ToDoBeforeSingleCommand() {
+					@Override
+					public void toDo(ConsoleEntry entry) {
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								project.getConsolePanel().add(new JLabel(message));
+							}
+						});
+					}
+				});
+				StageFingerprint fingerprint=project.getPreprocessingFingerprint(txt);
+				cmds.addCommand(fingerprint.wrap(preprocessing,new MultiCommands(skipped)));
+			}
 		}
 		GlobalProjectManager.search(snt)
 			.getFrameManagerAs(InternalFrameManager.class).closeConcordanceFrame();
 		GlobalProjectManager.search(snt)
 			.getFrameManagerAs(InternalFrameManager.class).closeConcordanceDiffFrame();
 		
-		if (doLocate.isSelected()) {
+		if (doLocate.isSelected() && !sharded) {
 			cmds.addCommand(project.getLocateCommands(snt));
 		}	
 		if (doResults.isSelected()) {
@@ -898,8 +961,17 @@ public class ProcessPane extends JSplitPane {
 				project.getConsolePanel().copy();
 			}
 		});
+		LinkButton metrics=new LinkButton("Metrics");
+		metrics.setToolTipText("Export the timings and resources of the last runs");
+		metrics.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				exportMetrics();
+			}
+		});
 		box.add(clear);
 		box.add(copy);
+		box.add(metrics);
 		box.add(Box.createHorizontalGlue());
 		LinkButton b=new LinkButton("\u2666",false);
 		b.addActionListener(new ActionListener() {
@@ -914,5 +986,36 @@ public class ProcessPane extends JSplitPane {
 		p.setMinimumSize(new Dimension(0,0));
 		return p;
 	}
+
+	void exportMetrics() {
+		if (MetricsHistory.getRuns().isEmpty()) {
+			JOptionPane.showMessageDialog(null,
+					"There is no run to export yet.", "Metrics",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		JFileChooser jfc = new JFileChooser(project.getProjectDirectory());
+		jfc.addChoosableFileFilter(new PersonalFileFilter("json",
+				"JSON reports"));
+		jfc.addChoosableFileFilter(new PersonalFileFilter("csv",
+				"CSV reports"));
+		jfc.setDialogType(JFileChooser.SAVE_DIALOG);
+		jfc.setMultiSelectionEnabled(false);
+		final int returnVal = jfc.showSaveDialog(null);
+		if (returnVal != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		File f = jfc.getSelectedFile();
+		if (!f.getName().contains(".")) {
+			f = new File(f.getParentFile(), f.getName() + ".csv");
+		}
+		try {
+			MetricsReport.save(f, MetricsHistory.getRuns());
+		} catch (IOException e) {
+			JOptionPane.showMessageDialog(null,
+					"Cannot save metrics in " + f, "Error",
+					JOptionPane.ERROR_MESSAGE);
+		}
+	}
 	
 }
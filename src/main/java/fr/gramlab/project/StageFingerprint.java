@@ -0,0 +1,344 @@
+package fr.gramlab.project;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import fr.umlv.unitex.graphtools.Dependancies;
+import fr.umlv.unitex.graphtools.GraphCall;
+import fr.umlv.unitex.process.commands.AbstractMethodCommand;
+import fr.umlv.unitex.process.commands.CommandBuilder;
+import fr.umlv.unitex.process.commands.Grf2Fst2Command;
+import fr.umlv.unitex.process.commands.MultiCommands;
+
+/**
+ * This class tells whether a stage of commands, like the preprocessing of a
+ * text, must be run again. The fingerprint of a stage is computed from the
+ * command lines of its programs and from the content of the files they name,
+ * plus the subgraphs of the graphs compiled by Grf2Fst2.
+ * When the stage succeeds, its fingerprint is saved, along with the size and
+ * the date of the files it has written in its output directory. The stage is
+ * up to date if its fingerprint has not changed and if these files are still
+ * there, untouched.
+ *
+ * The content hash of each file is saved with its size and date, so that a
+ * file is only read again when it has been modified.
+ */
+public class StageFingerprint {
+
+	private static final String FINGERPRINT = "fingerprint";
+	private static final String OUTPUT = "output.";
+	private static final String HASH = "hash.";
+	/* Dates of files may be rounded to the second */
+	private static final long DATE_PRECISION = 1000;
+
+	private final File file;
+	private final File outputDir;
+
+	/**
+	 * @param file
+	 *            the file where the fingerprint is saved
+	 * @param outputDir
+	 *            the directory where the stage writes its outputs
+	 */
+	public StageFingerprint(File file, File outputDir) {
+		this.file = file;
+		this.outputDir = outputDir;
+	}
+
+	private Properties load() {
+		final Properties p = new Properties();
+		if (!file.exists()) {
+			return p;
+		}
+		try {
+			final FileInputStream in = new FileInputStream(file);
+			try {
+				p.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			p.clear();
+		}
+		return p;
+	}
+
+	/**
+	 * Returns true if the given commands have already been run successfully,
+	 * on the same files, and if their outputs have not changed since.
+	 */
+	public boolean isUpToDate(MultiCommands cmds) {
+		final Properties p = load();
+		final String fingerprint = p.getProperty(FINGERPRINT);
+		if (fingerprint == null) {
+			return false;
+		}
+		for (final String key : p.stringPropertyNames()) {
+			if (key.startsWith(OUTPUT)) {
+				final File f = new File(key.substring(OUTPUT.length()));
+				if (!getState(f).equals(p.getProperty(key))) {
+					return false;
+				}
+			}
+		}
+		return fingerprint.equals(compute(cmds, p, new HashSet<String>(),
+				true));
+	}
+
+	/**
+	 * Returns the given commands, preceded by a command that checks whether
+	 * they are up to date, and followed by a command that saves their
+	 * fingerprint if they succeed. When they are up to date, they are skipped,
+	 * and the commands of whenUpToDate, which may be null, are run instead.
+	 * The check is made by the first command, so that the files are not read
+	 * by the caller.
+	 */
+	public MultiCommands wrap(final MultiCommands cmds,
+			MultiCommands whenUpToDate) {
+		final MultiCommands res = new MultiCommands();
+		final long[] start = new long[1];
+		final boolean[] upToDate = new boolean[1];
+		res.addCommand(new AbstractMethodCommand("fingerprint-check") {
+			@Override
+			public boolean execute() {
+				start[0] = System.currentTimeMillis();
+				upToDate[0] = isUpToDate(cmds);
+				/* If the stage fails, it will be run again next time */
+				return upToDate[0] || !file.exists() || file.delete();
+			}
+		});
+		res.addCommand(whenUpToDate, new MultiCommands.Condition() {
+			@Override
+			public boolean holds() {
+				return !upToDate[0];
+			}
+		});
+		final MultiCommands stage = new MultiCommands();
+		stage.addCommand(cmds);
+		stage.addCommand(new AbstractMethodCommand("fingerprint-save") {
+			@Override
+			public boolean execute() {
+				save(cmds, start[0]);
+				/* The stage itself has succeeded anyway */
+				return true;
+			}
+		});
+		res.addCommand(stage, new MultiCommands.Condition() {
+			@Override
+			public boolean holds() {
+				return upToDate[0];
+			}
+		});
+		return res;
+	}
+
+	void save(MultiCommands cmds, long start) {
+		final Properties old = load();
+		final Properties p = new Properties();
+		final Set<String> used = new HashSet<String>();
+		final String fingerprint = compute(cmds, old, used, false);
+		if (fingerprint == null) {
+			return;
+		}
+		p.setProperty(FINGERPRINT, fingerprint);
+		for (final String path : used) {
+			p.setProperty(HASH + path, old.getProperty(HASH + path));
+		}
+		final File[] files = outputDir.listFiles();
+		if (files != null) {
+			for (final File f : files) {
+				if (f.isFile() && !f.equals(file)
+						&& f.lastModified() >= start - DATE_PRECISION) {
+					p.setProperty(OUTPUT + f.getAbsolutePath(), getState(f));
+				}
+			}
+		}
+		try {
+			final FileOutputStream out = new FileOutputStream(file);
+			try {
+				p.store(out, null);
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			file.delete();
+		}
+	}
+
+	private static String getState(File f) {
+		if (!f.exists()) {
+			return "";
+		}
+		return f.length() + ":" + f.lastModified();
+	}
+
+	/**
+	 * Computes the fingerprint of the given commands. Hashes are taken from
+	 * and added to the given properties, and the paths of the files are added
+	 * to used.
+	 *
+	 * @param checkOnly
+	 *            if true, we return null as soon as a file has not the size
+	 *            it had, since the stage must be run again anyway
+	 */
+	private static String compute(MultiCommands cmds, Properties hashes,
+			Set<String> used, boolean checkOnly) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (int i = 0; i < cmds.numberOfCommands(); i++) {
+				final CommandBuilder c = cmds.getCommand(i);
+				if (c == null || c.getType() != CommandBuilder.PROGRAM) {
+					/* Messages, mkdir and the like don't change the outputs */
+					continue;
+				}
+				for (final String arg : c.getCommandArguments(true)) {
+					if (arg.startsWith("--time=")) {
+						/* It changes for each run */
+						continue;
+					}
+					digest.update(arg.getBytes("UTF-8"));
+					digest.update((byte) 0);
+					final File f = getFile(arg);
+					if (f == null) {
+						continue;
+					}
+					final String hash = getHash(f, hashes, checkOnly);
+					if (hash == null) {
+						return null;
+					}
+					used.add(f.getAbsolutePath());
+					digest.update(hash.getBytes("UTF-8"));
+				}
+				if (c instanceof Grf2Fst2Command
+						&& !addSubgraphs(digest, (Grf2Fst2Command) c, hashes,
+								used, checkOnly)) {
+					return null;
+				}
+				digest.update((byte) '\n');
+			}
+			return toHex(digest.digest());
+		} catch (final NoSuchAlgorithmException e) {
+			return null;
+		} catch (final UnsupportedEncodingException e) {
+			return null;
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Adds to the digest the subgraphs of the graph compiled by the given
+	 * command, since only the main graph is named on its command line. A
+	 * missing subgraph is part of the fingerprint too.
+	 * 
+	 * @return false if the fingerprint has changed and checkOnly is true
+	 */
+	private static boolean addSubgraphs(MessageDigest digest,
+			Grf2Fst2Command c, Properties hashes, Set<String> used,
+			boolean checkOnly) throws IOException, NoSuchAlgorithmException {
+		final File grf = c.getGrf();
+		if (grf == null) {
+			return true;
+		}
+		for (final GraphCall call : Dependancies.getAllSubgraphs(grf)) {
+			final File f = call.getGrf().getAbsoluteFile();
+			digest.update(f.getPath().getBytes("UTF-8"));
+			digest.update((byte) 0);
+			if (!f.isFile()) {
+				continue;
+			}
+			final String hash = getHash(f, hashes, checkOnly);
+			if (hash == null) {
+				return false;
+			}
+			used.add(f.getPath());
+			digest.update(hash.getBytes("UTF-8"));
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the file named by the given argument, like foo.txt, -afoo.txt
+	 * or --alphabet=foo.txt, or null if there is none.
+	 */
+	private static File getFile(String arg) {
+		File f = new File(arg);
+		if (f.isFile()) {
+			return f;
+		}
+		if (!arg.startsWith("-")) {
+			return null;
+		}
+		final int equal = arg.indexOf('=');
+		if (equal != -1) {
+			f = new File(arg.substring(equal + 1));
+			if (f.isFile()) {
+				return f;
+			}
+		}
+		if (arg.length() > 2) {
+			f = new File(arg.substring(2));
+			if (f.isFile()) {
+				return f;
+			}
+		}
+		return null;
+	}
+
+	private static String getHash(File f, Properties hashes, boolean checkOnly)
+			throws IOException, NoSuchAlgorithmException {
+		final String key = HASH + f.getAbsolutePath();
+		final String state = getState(f);
+		final String saved = hashes.getProperty(key);
+		if (saved != null) {
+			final int colon = saved.lastIndexOf(':');
+			if (saved.substring(0, colon).equals(state)) {
+				return saved.substring(colon + 1);
+			}
+		}
+		if (checkOnly
+				&& (saved == null || !saved.startsWith(f.length() + ":"))) {
+			/*
+			 * No need to read the file to know that the fingerprint has
+			 * changed: either the file is new to the stage, or its size is
+			 * not the same
+			 */
+			return null;
+		}
+		final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		final FileInputStream in = new FileInputStream(f);
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		final String hash = toHex(digest.digest());
+		hashes.setProperty(key, state + ":" + hash);
+		return hash;
+	}
+
+	private static String toHex(byte[] bytes) {
+		final StringBuilder b = new StringBuilder();
+		for (final byte x : bytes) {
+			b.append(Character.forDigit((x >> 4) & 0xF, 16));
+			b.append(Character.forDigit(x & 0xF, 16));
+		}
+		return b.toString();
+	}
+}
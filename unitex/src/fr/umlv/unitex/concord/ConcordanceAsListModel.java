@@ -21,20 +21,19 @@
 package fr.umlv.unitex.concord;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.ref.PhantomReference;
-import java.lang.ref.ReferenceQueue;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 
 import javax.swing.AbstractListModel;
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
 import fr.umlv.unitex.text.Interval;
+import fr.umlv.unitex.text.LineScanner;
+import fr.umlv.unitex.text.LineIndexFile;
+import fr.umlv.unitex.text.ParallelLineScanner;
 
 /**
  * This is a model for representing an HTML concordance file as the list of its
@@ -52,93 +51,138 @@ public class ConcordanceAsListModel extends AbstractListModel {
 	int HTML_START_LINES = 7;
 	private int HTML_END_LINES = 2;
 	private int HTML_CONTROL_LINES = HTML_START_LINES + HTML_END_LINES;
-	MappedByteBuffer buffer;
-	private int dataLength;
-	private SwingWorker<Void, Integer> worker;
+	MappedFile buffer;
+	private long dataLength;
+	private SwingWorker<Void, long[]> worker;
 	Interval selection;
-	private FileChannel channel;
-	private FileInputStream stream;
 	private File file;
 	static final Charset utf8 = Charset.forName("UTF-8");
-	private int[] endOfLines;
+	private long[] endOfLines;
 	private int numberOfEOL;
 
-	public void load(File f) {
+	public void load(final File f) {
 		this.file = f;
-		setDataLength((int) file.length());
-		endOfLines = new int[0];
+		setDataLength(file.length());
+		endOfLines = new long[0];
 		numberOfEOL = 0;
 		try {
-			stream = new FileInputStream(file);
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-			return;
-		}
-		channel = stream.getChannel();
-		try {
-			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
-					getDataLength());
+			buffer = MappedFile.map(file);
 		} catch (final IOException e) {
 			e.printStackTrace();
 			return;
 		}
-		worker = new SwingWorker<Void, Integer>() {
+		final MappedFile data = buffer;
+		worker = new SwingWorker<Void, long[]>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				int lastStart = 0;
-				for (int pos = 0; pos < getDataLength(); pos = pos + 1) {
-					final int a = 0xFF & buffer.get(pos);
-					if (a == '\n') {
-						// if we have an end-of-line
-						publish(pos);
-						setProgress(100 * pos / getDataLength());
-						lastStart = pos + 1;
+				if (!data.startReading()) {
+					return null;
+				}
+				try {
+					indexLines();
+				} finally {
+					data.stopReading();
+				}
+				return null;
+			}
+
+			private long lastStart = 0;
+
+			private void indexLines() {
+				final long length = getDataLength();
+				final LineScanner.LineSink sink = new LineScanner.LineSink() {
+					private int progress = 0;
+
+					@SuppressWarnings("synthetic-access")
+					@Override
+					public boolean add(long[] nextInBytes,
+							long[] nextInChars, int n, long scanned) {
+						if (isCancelled()) {
+							return false;
+						}
+						if (n > 0) {
+							/* We publish the positions of the '\n' */
+							final long[] eol = new long[n];
+							for (int i = 0; i < n; i++) {
+								eol[i] = nextInBytes[i] - 1;
+							}
+							lastStart = nextInBytes[n - 1];
+							publish(eol);
+						}
+						final int p = (int) (scanned * 100 / length);
+						if (p != progress) {
+							progress = p;
+							setProgress(p);
+						}
+						return true;
+					}
+				};
+				long result = LineIndexFile.read(f, Encoding.UTF8, sink);
+				if (result == -1) {
+					if (isCancelled()) {
+						return;
+					}
+					final LineIndexFile.Writer writer = LineIndexFile
+							.createWriter(f, Encoding.UTF8);
+					result = ParallelLineScanner.scan(data, Encoding.UTF8,
+							(writer == null) ? sink : writer.wrap(sink));
+					if (writer != null) {
+						if (result == -1) {
+							writer.abort();
+						} else {
+							writer.finish(result);
+						}
 					}
 				}
-				if (lastStart < (getDataLength() - 1)) {
-					publish(getDataLength() - 1);
+				if (result == -1) {
+					return;
+				}
+				if (lastStart < (length - 1)) {
+					publish(new long[] { length - 1 });
 					setProgress(100);
 				}
 				/*
-				 * We publish a negative position in order to inform the
-				 * progress method that there are no more ends of line.
+				 * We publish an empty array in order to inform the process
+				 * method that there are no more ends of line.
 				 */
-				publish(-1);
-				return null;
+				publish(new long[0]);
 			}
 
 			@SuppressWarnings("synthetic-access")
 			@Override
-			protected void process(java.util.List<Integer> chunks) {
+			protected void process(java.util.List<long[]> chunks) {
 				final int oldSize = numberOfEOL;
-				int newSize = oldSize + chunks.size();
+				int newSize = oldSize;
+				for (final long[] chunk : chunks) {
+					newSize += chunk.length;
+				}
 				int multiplier = 1;
 				/*
 				 * We check if it is necessary to enlarge the EOL array
 				 */
 				if (endOfLines.length == 0) {
-					endOfLines = new int[1];
+					endOfLines = new long[1];
 				}
 				while (multiplier * endOfLines.length < newSize) {
 					multiplier = 2 * multiplier;
 				}
-				int[] temp = endOfLines;
+				long[] temp = endOfLines;
 				if (multiplier != 1) {
 					temp = Arrays.copyOf(endOfLines, multiplier
 							* endOfLines.length);
 				}
 				int insertPos = oldSize;
-				for (final Integer i : chunks) {
-					if (i < 0) {
+				for (final long[] chunk : chunks) {
+					if (chunk.length == 0) {
 						/*
-						 * We assume that a negative position means the end of
-						 * the new lines, and, so, we resize the array.
+						 * We assume that an empty chunk means the end of the
+						 * new lines, and, so, we resize the array.
 						 */
 						temp = Arrays.copyOf(temp, insertPos);
-						newSize = insertPos;
 						break;
 					}
-					temp[insertPos++] = i;
+					System.arraycopy(chunk, 0, temp, insertPos, chunk.length);
+					insertPos += chunk.length;
 				}
 				/*
 				 * If we keep the following instructions in this order, there is
@@ -146,7 +190,9 @@ public class ConcordanceAsListModel extends AbstractListModel {
 				 */
 				endOfLines = temp;
 				numberOfEOL = newSize;
-				fireIntervalAdded(this, oldSize, newSize - 1);
+				if (newSize > oldSize) {
+					fireIntervalAdded(this, oldSize, newSize - 1);
+				}
 			}
 		};
 		worker.execute();
@@ -181,16 +227,13 @@ public class ConcordanceAsListModel extends AbstractListModel {
 		final long end = interval.getEndInBytes() - 12; // nor the
 		// </td></tr>\r\n
 		final byte[] tmp = new byte[(int) (end - start + 1)];
-		int z = 0;
-		for (long pos = start; pos <= end; pos++) {
-			tmp[z++] = buffer.get((int) pos);
-		}
+		buffer.get(start, tmp, 0, tmp.length);
 		return new String(tmp, utf8);
 	}
 
 	Interval getInterval(int i) {
-		final int end = endOfLines[i];
-		final int start = (i == 0) ? 0 : (endOfLines[i - 1] + 1);
+		final long end = endOfLines[i];
+		final long start = (i == 0) ? 0 : (endOfLines[i - 1] + 1);
 		return new Interval(start, end, -1, -1);
 	}
 
@@ -212,44 +255,21 @@ public class ConcordanceAsListModel extends AbstractListModel {
 
 	
 	public void reset() {
+		if (worker != null) {
+			worker.cancel(true);
+			worker = null;
+		}
 		if (buffer != null) {
-			ReferenceQueue<MappedByteBuffer> queue=new ReferenceQueue<MappedByteBuffer>();
-			new PhantomReference<MappedByteBuffer>(buffer,queue);
+			buffer.close();
 			buffer = null;
-			while (queue.poll()!=null) {
-				System.gc();
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					/* do nothing */
-				}
-				Thread.yield();
-			}
-		}
-		if (channel != null) {
-			try {
-				channel.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			channel = null;
-		}
-		if (stream != null) {
-			try {
-				stream.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			stream = null;
 		}
-		System.gc();
 	}
 
-	public void setDataLength(int dataLength) {
+	public void setDataLength(long dataLength) {
 		this.dataLength = dataLength;
 	}
 
-	public int getDataLength() {
+	public long getDataLength() {
 		return dataLength;
 	}
 }
@@ -20,6 +20,8 @@
  */
 package fr.umlv.unitex.console;
 
+import java.util.concurrent.CountDownLatch;
+
 public class ConsoleEntry {
 	private final String content;
 	private String error;
@@ -87,6 +89,11 @@ public class ConsoleEntry {
 
 	private boolean errorStreamEnded = false;
 	private boolean normalStreamEnded = false;
+	/*
+	 * Counted down once for each stream, so that the executor can sleep until
+	 * both the stdout and stderr readers are done
+	 */
+	private final CountDownLatch streamsEnded = new CountDownLatch(2);
 
 	private final Object lock = new Object();
 
@@ -98,6 +105,9 @@ public class ConsoleEntry {
 
 	public void setErrorStreamEnded(boolean errorStreamEnded) {
 		synchronized (lock) {
+			if (errorStreamEnded && !this.errorStreamEnded) {
+				streamsEnded.countDown();
+			}
 			this.errorStreamEnded = errorStreamEnded;
 		}
 	}
@@ -110,8 +120,18 @@ public class ConsoleEntry {
 
 	public void setNormalStreamEnded(boolean normalStreamEnded) {
 		synchronized (lock) {
+			if (normalStreamEnded && !this.normalStreamEnded) {
+				streamsEnded.countDown();
+			}
 			this.normalStreamEnded = normalStreamEnded;
 		}
 	}
 
+	/**
+	 * Blocks until both the normal and the error streams have ended.
+	 */
+	public void waitForStreamsEnded() throws InterruptedException {
+		streamsEnded.await();
+	}
+
 }
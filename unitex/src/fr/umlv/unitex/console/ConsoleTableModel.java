@@ -20,17 +20,89 @@
  */
 package fr.umlv.unitex.console;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.table.AbstractTableModel;
 
+import fr.umlv.unitex.io.SpillLog;
+
+/**
+ * This is the model of the console. Only the last maxEntries entries are kept
+ * in memory. Older ones are moved by batches to a SpillLog, from which they
+ * are read back when they are displayed again. Such entries cannot be edited
+ * anymore.
+ */
 public class ConsoleTableModel extends AbstractTableModel {
+	public static final int DEFAULT_MAX_ENTRIES = 5000;
+	static final int MAX_SPILL_SEGMENTS = 8;
+	static final SpillLog.Codec<ConsoleEntry> CODEC = new SpillLog.Codec<ConsoleEntry>() {
+		@Override
+		public void write(DataOutput out, ConsoleEntry e) throws IOException {
+			writeString(out, e.getContent());
+			writeString(out, e.getErrorMessage());
+			writeString(out, e.getlogID());
+			out.writeInt(e.getStatus());
+			out.writeBoolean(e.isSystemMsg());
+		}
+
+		@Override
+		public ConsoleEntry read(DataInput in) throws IOException {
+			final String content = readString(in);
+			final String error = readString(in);
+			final String logID = readString(in);
+			final int status = in.readInt();
+			final boolean systemMsg = in.readBoolean();
+			final ConsoleEntry e = new ConsoleEntry(content, status != 3,
+					systemMsg, logID);
+			if (error != null) {
+				e.addErrorMessage(error);
+			}
+			e.setStatus(status);
+			return e;
+		}
+
+		private void writeString(DataOutput out, String s) throws IOException {
+			if (s == null) {
+				out.writeInt(-1);
+				return;
+			}
+			final byte[] bytes = s.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private String readString(DataInput in) throws IOException {
+			final int n = in.readInt();
+			if (n == -1) {
+				return null;
+			}
+			final byte[] bytes = new byte[n];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+	};
+	private final int maxEntries;
 	private final ArrayList<ConsoleEntry> data;
+	private final SpillLog<ConsoleEntry> spilled = new SpillLog<ConsoleEntry>(
+			CODEC, MAX_SPILL_SEGMENTS);
 
-	public ConsoleTableModel() {
+	public ConsoleTableModel(int maxEntries) {
+		if (maxEntries < 4) {
+			throw new IllegalArgumentException("Invalid entry number: "
+					+ maxEntries);
+		}
+		this.maxEntries = maxEntries;
 		data = new ArrayList<ConsoleEntry>();
 	}
 
+	public ConsoleTableModel() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
 	@Override
 	public int getColumnCount() {
 		return 3;
@@ -38,12 +110,12 @@ public class ConsoleTableModel extends AbstractTableModel {
 
 	@Override
 	public int getRowCount() {
-		return data.size();
+		return spilled.size() + data.size();
 	}
 
 	@Override
 	public Object getValueAt(int rowIndex, int columnIndex) {
-		final ConsoleEntry e = data.get(rowIndex);
+		final ConsoleEntry e = getConsoleEntry(rowIndex);
 		if (columnIndex == 0) {
 			return e.getStatus();
 		}
@@ -76,8 +148,29 @@ public class ConsoleTableModel extends AbstractTableModel {
 	}
 
 	public void addConsoleEntry(int index, ConsoleEntry e) {
-		data.add(index, e);
+		if (index < spilled.size()) {
+			throw new IllegalArgumentException(
+					"Cannot insert an entry before the ones in memory");
+		}
+		data.add(index - spilled.size(), e);
 		fireTableRowsInserted(index, index);
+		if (data.size() > maxEntries) {
+			spillOldEntries();
+		}
+	}
+
+	/**
+	 * Moves the oldest quarter of the entries in memory to the spill log. This
+	 * doesn't change the indices of rows, unless the log has to forget its
+	 * oldest entries.
+	 */
+	private void spillOldEntries() {
+		final List<ConsoleEntry> old = data.subList(0, maxEntries / 4);
+		final int removed = spilled.append(old);
+		old.clear();
+		if (removed > 0) {
+			fireTableRowsDeleted(0, removed - 1);
+		}
 	}
 
 	@Override
@@ -97,15 +190,20 @@ public class ConsoleTableModel extends AbstractTableModel {
 
 	@Override
 	public boolean isCellEditable(int rowIndex, int columnIndex) {
-		return true;
+		/* Entries that have been spilled cannot be modified */
+		return rowIndex >= spilled.size();
 	}
 
 	public ConsoleEntry getConsoleEntry(int index) {
-		return data.get(index);
+		final int n = spilled.size();
+		if (index < n) {
+			return spilled.get(index);
+		}
+		return data.get(index - n);
 	}
 
 	public void removeEntry(int index) {
-		data.remove(index);
+		data.remove(index - spilled.size());
 		fireTableRowsDeleted(index, index);
 	}
 }
@@ -22,7 +22,7 @@ package fr.umlv.unitex.debug;
 
 import java.util.ArrayList;
 
-import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.GraphModel;
 
 public class Coverage {
 	int[][] infos;
@@ -30,12 +30,12 @@ public class Coverage {
 	public Coverage(DebugInfos d) {
 		infos = new int[d.graphNames.size()][];
 		for (int i = 0; i < infos.length; i++) {
-			final GraphIO gio = d.getGraphIO(i + 1);
+			final GraphModel model = d.getGraphModel(i + 1);
 			/*
 			 * +1 because the store in cell #0 the total number of matched box
 			 * for the graph
 			 */
-			final int n = (gio == null) ? 0 : gio.getBoxes().size() + 1;
+			final int n = (model == null) ? 0 : model.getBoxCount() + 1;
 			infos[i] = new int[n];
 		}
 	}
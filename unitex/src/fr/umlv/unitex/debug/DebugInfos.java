@@ -21,8 +21,10 @@
 package fr.umlv.unitex.debug;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -30,9 +32,9 @@ import java.util.regex.Pattern;
 import javax.swing.JOptionPane;
 
 import fr.umlv.unitex.files.FileUtil;
-import fr.umlv.unitex.graphrendering.GenericGraphBox;
 import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.GraphModel;
 
 public class DebugInfos {
 	public File concordIndFile = null;
@@ -40,6 +42,9 @@ public class DebugInfos {
 	public ArrayList<File> graphs = new ArrayList<File>();
 	public ArrayList<String> lines = new ArrayList<String>();
 	public HashMap<Integer, GraphIO> graphIOMap = new HashMap<Integer, GraphIO>();
+	public HashMap<Integer, GraphModel> graphModelMap = new HashMap<Integer, GraphModel>();
+	/* The graphs whose problem has already been shown to the user */
+	private final HashSet<Integer> reportedGraphs = new HashSet<Integer>();
 
 	public static DebugInfos loadConcordanceIndex(File html) {
 		final String concord_ind = FileUtil.getFileNameWithoutExtension(html)
@@ -101,42 +106,27 @@ public class DebugInfos {
 
 	/**
 	 * Note: n must be in [1;number of graphs]
+	 * 
+	 * If the graph cannot be debugged, an error message is shown, once for
+	 * each graph.
 	 */
 	public GraphIO getGraphIO(int n) {
 		GraphIO gio = graphIOMap.get(Integer.valueOf(n));
 		if (gio == null) {
-			/*
-			 * If we try to load a graph for the first time, we check if it has
-			 * been modified since the concordance was built. Once loaded, we
-			 * use the cached version, so that we are sure to debug on the
-			 * correct version, even if the graph has been changed while
-			 * debugging
-			 */
-			final File f = graphs.get(n - 1);
+			final File f = getGraphFile(n);
 			if (f == null) {
-				/*
-				 * If f is null, it is because it was indicated as not to be
-				 * being loaded in concord.ind because it was an empty graph in
-				 * the fst2, or a graph that was part of a precompiled fst2
-				 */
-				return null;
-			}
-			if (f.lastModified() > concordIndFile.lastModified()) {
-				JOptionPane
-						.showMessageDialog(
-								null,
-								"File "
-										+ f.getAbsolutePath()
-										+ " has been modified\n"
-										+ "since the concordance index was built. Cannot debug it.",
-								"Error", JOptionPane.ERROR_MESSAGE);
+				final File modified = graphs.get(n - 1);
+				if (modified != null) {
+					reportProblem(n, "File " + modified.getAbsolutePath()
+							+ " has been modified\n"
+							+ "since the concordance index was built. "
+							+ "Cannot debug it.");
+				}
 				return null;
 			}
 			gio = GraphIO.loadGraph(f, false, false);
 			if (gio == null) {
-				JOptionPane.showMessageDialog(null,
-						"Cannot load graph " + f.getAbsolutePath(), "Error",
-						JOptionPane.ERROR_MESSAGE);
+				reportProblem(n, "Cannot load graph " + f.getAbsolutePath());
 				return null;
 			}
 			graphIOMap.put(Integer.valueOf(n), gio);
@@ -144,12 +134,65 @@ public class DebugInfos {
 		return gio;
 	}
 
+	/**
+	 * Like getGraphIO, but returns the lightweight model of the graph, which
+	 * is all that the analysis of matches needs. No message is shown: the
+	 * problem, if any, is reported when the graph is displayed.
+	 */
+	public GraphModel getGraphModel(int n) {
+		GraphModel model = graphModelMap.get(Integer.valueOf(n));
+		if (model == null) {
+			final File f = getGraphFile(n);
+			if (f == null) {
+				return null;
+			}
+			try {
+				model = GraphModel.load(f);
+			} catch (final IOException e) {
+				return null;
+			}
+			graphModelMap.put(Integer.valueOf(n), model);
+		}
+		return model;
+	}
+
+	private void reportProblem(int n, String message) {
+		if (reportedGraphs.add(Integer.valueOf(n))) {
+			JOptionPane.showMessageDialog(null, message, "Error",
+					JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * Returns the file of the graph #n, or null if it cannot be debugged.
+	 */
+	private File getGraphFile(int n) {
+		/*
+		 * If we try to load a graph for the first time, we check if it has
+		 * been modified since the concordance was built. Once loaded, we use
+		 * the cached version, so that we are sure to debug on the correct
+		 * version, even if the graph has been changed while debugging
+		 */
+		final File f = graphs.get(n - 1);
+		if (f == null) {
+			/*
+			 * If f is null, it is because it was indicated as not to be being
+			 * loaded in concord.ind because it was an empty graph in the fst2,
+			 * or a graph that was part of a precompiled fst2
+			 */
+			return null;
+		}
+		if (f.lastModified() > concordIndFile.lastModified()) {
+			return null;
+		}
+		return f;
+	}
+
 	public int getEpsilonLineInInitialState(int graph) {
-		final GraphIO gio = getGraphIO(graph);
-		if (gio == null)
+		final GraphModel model = getGraphModel(graph);
+		if (model == null)
 			return -1;
-		final GenericGraphBox box = gio.getBoxes().get(0);
-		return box.lines.indexOf("<E>");
+		return model.indexOfLine(GraphModel.INITIAL, "<E>");
 	}
 
 	public ArrayList<DebugDetails> getMatchDetails(int n,
@@ -259,13 +302,11 @@ public class DebugInfos {
 				 */
 				continue;
 			}
-			final GraphIO gio = getGraphIO(src.graph);
-			if (gio == null) {
+			final GraphModel model = getGraphModel(src.graph);
+			if (model == null) {
 				return false;
 			}
-			final GenericGraphBox srcBox = gio.getBoxes().get(src.box);
-			final GenericGraphBox dstBox = gio.getBoxes().get(dst.box);
-			if (srcBox.transitions.contains(dstBox)) {
+			if (model.hasTransition(src.box, dst.box)) {
 				/* Nothing to do if there is a transition */
 				continue;
 			}
@@ -278,7 +319,7 @@ public class DebugInfos {
 					 * the box, but it may also be because the line contains
 					 * several tokens
 					 */
-					final String line = srcBox.lines.get(src.line);
+					final String line = model.getLine(src.box, src.line);
 					int pos = line.indexOf(src.tag);
 					pos = line.indexOf(dst.tag, pos + src.tag.length());
 					if (pos != -1) {
@@ -297,8 +338,7 @@ public class DebugInfos {
 					 * It may also be because the box contains a range
 					 * indication
 					 */
-					if (srcBox.transduction != null
-							&& srcBox.transduction.startsWith("$[")) {
+					if (model.getTransduction(src.box).startsWith("$[")) {
 						continue;
 					}
 				} else {
@@ -306,16 +346,14 @@ public class DebugInfos {
 					 * Not in the same line. It must be because the box contains
 					 * a range indication
 					 */
-					if (srcBox.transduction != null
-							&& srcBox.transduction.startsWith("$[")) {
+					if (model.getTransduction(src.box).startsWith("$[")) {
 						continue;
 					}
 				}
 			}
-			final ArrayList<GenericGraphBox> visited = new ArrayList<GenericGraphBox>();
+			final boolean[] visited = new boolean[model.getBoxCount()];
 			final ArrayList<Integer> path = new ArrayList<Integer>();
-			if (!findEpsilonPath(0, srcBox, dstBox, visited, path,
-					gio.getBoxes())) {
+			if (!findEpsilonPath(0, src.box, dst.box, visited, path, model)) {
 				JOptionPane.showMessageDialog(null,
 						"Cannot find <E> path between box " + src.box + " and "
 								+ dst.box + " in graph " + f.getAbsolutePath(),
@@ -334,56 +372,46 @@ public class DebugInfos {
 		return true;
 	}
 
-	private boolean findEpsilonPath(int depth, GenericGraphBox current,
-			GenericGraphBox dstBox, ArrayList<GenericGraphBox> visited,
-			ArrayList<Integer> path, ArrayList<GenericGraphBox> boxes) {
-		if (current.equals(dstBox) && depth > 0)
+	private boolean findEpsilonPath(int depth, int current, int dstBox,
+			boolean[] visited, ArrayList<Integer> path, GraphModel model) {
+		if (current == dstBox && depth > 0)
 			return true;
-		if (visited.contains(current))
+		if (visited[current])
 			return false;
-		visited.add(current);
+		visited[current] = true;
 		if (depth == 0) {
 			/* Special of the starting box */
-			for (final GenericGraphBox dest : current.transitions) {
-				if (findEpsilonPath(depth + 1, dest, dstBox, visited, path,
-						boxes))
+			for (int j = 0; j < model.getTransitionCount(current); j++) {
+				if (findEpsilonPath(depth + 1, model.getTransition(current, j),
+						dstBox, visited, path, model))
 					return true;
 			}
 			return false;
 		}
-		if (current.transduction != null && current.transduction.length() > 0) {
+		if (model.getTransduction(current).length() > 0) {
 			/* Boxes with an output cannot be considered */
 			return false;
 		}
-		if (current.lines.size() == 0) {
+		final int line;
+		if (model.getLineCount(current) == 0) {
 			/* Case of a box only containing <E> */
-			path.add(boxes.indexOf(current));
-			path.add(0);
-			for (final GenericGraphBox dest : current.transitions) {
-				if (findEpsilonPath(depth + 1, dest, dstBox, visited, path,
-						boxes))
-					return true;
+			line = 0;
+		} else {
+			/* An <E> is enough to go through a box */
+			line = model.indexOfLine(current, "<E>");
+			if (line == -1) {
+				return false;
 			}
-			path.remove(path.size() - 1);
-			path.remove(path.size() - 1);
-			return false;
 		}
-		for (int i = 0; i < current.lines.size(); i++) {
-			if (current.lines.get(i).equals("<E>")) {
-				/* The box line is a candidate */
-				path.add(boxes.indexOf(current));
-				path.add(i);
-				for (final GenericGraphBox dest : current.transitions) {
-					if (findEpsilonPath(depth + 1, dest, dstBox, visited, path,
-							boxes))
-						return true;
-				}
-				path.remove(path.size() - 1);
-				path.remove(path.size() - 1);
-				/* An <E> is enough to go through a box, so we can stop */
-				break;
-			}
+		path.add(current);
+		path.add(line);
+		for (int j = 0; j < model.getTransitionCount(current); j++) {
+			if (findEpsilonPath(depth + 1, model.getTransition(current, j),
+					dstBox, visited, path, model))
+				return true;
 		}
+		path.remove(path.size() - 1);
+		path.remove(path.size() - 1);
 		return false;
 	}
 }
@@ -548,7 +548,7 @@ public class ApplyLexicalResourcesFrame extends JInternalFrame {
 			}
 		}
 		commands.addCommand(cmd);
-		/* Sorting dictionaries dlf, dlc and err */
+		/* Sorting dictionaries dlf, dlc and err, in parallel */
 		final File alph = new File(Config.getUserCurrentLanguageDir(),
 				"Alphabet_sort.txt");
 		SortTxtCommand sortCmd = new SortTxtCommand().file(
@@ -559,7 +559,7 @@ public class ApplyLexicalResourcesFrame extends JInternalFrame {
 		} else {
 			sortCmd = sortCmd.sortAlphabet(alph);
 		}
-		commands.addCommand(sortCmd);
+		commands.addParallelCommand(sortCmd);
 		SortTxtCommand sortCmd2 = new SortTxtCommand().file(
 				new File(Config.getCurrentSntDir(), "dlc")).saveNumberOfLines(
 				new File(Config.getCurrentSntDir(), "dlc.n"));
@@ -568,7 +568,7 @@ public class ApplyLexicalResourcesFrame extends JInternalFrame {
 		} else {
 			sortCmd2 = sortCmd2.sortAlphabet(alph);
 		}
-		commands.addCommand(sortCmd2);
+		commands.addParallelCommand(sortCmd2);
 		SortTxtCommand sortCmd3 = new SortTxtCommand().file(
 				new File(Config.getCurrentSntDir(), "err")).saveNumberOfLines(
 				new File(Config.getCurrentSntDir(), "err.n"));
@@ -577,7 +577,7 @@ public class ApplyLexicalResourcesFrame extends JInternalFrame {
 		} else {
 			sortCmd3 = sortCmd3.sortAlphabet(alph);
 		}
-		commands.addCommand(sortCmd3);
+		commands.addParallelCommand(sortCmd3);
 		SortTxtCommand sortCmd4 = new SortTxtCommand().file(
 				new File(Config.getCurrentSntDir(), "tags_err"))
 				.saveNumberOfLines(
@@ -587,7 +587,7 @@ public class ApplyLexicalResourcesFrame extends JInternalFrame {
 		} else {
 			sortCmd4 = sortCmd4.sortAlphabet(alph);
 		}
-		commands.addCommand(sortCmd4);
+		commands.addParallelCommand(sortCmd4);
 		return (commands);
 	}
 
@@ -30,12 +30,14 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JFormattedTextField;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
@@ -58,6 +60,7 @@ import fr.umlv.unitex.config.PreferencesManager;
 import fr.umlv.unitex.io.Encoding;
 import fr.umlv.unitex.process.ToDo;
 import fr.umlv.unitex.text.BigTextList;
+import fr.umlv.unitex.text.LineSearch;
 import fr.umlv.unitex.text.TextAsListModelImpl;
 import fr.umlv.unitex.utils.KeyUtil;
 
@@ -71,6 +74,10 @@ public class DelaFrame extends KeyedInternalFrame<File> {
 	final BigTextList text = new BigTextList(true);
 	final JScrollBar scrollBar;
 	File dela;
+	LineSearch search;
+	/* Moves asked for while the search was running, true meaning forward */
+	final ArrayList<Boolean> pendingMoves = new ArrayList<Boolean>();
+	final JLabel matchCount = new JLabel();
 
 	DelaFrame() {
 		super("", true, true, true, true);
@@ -94,18 +101,12 @@ public class DelaFrame extends KeyedInternalFrame<File> {
 			@Override
 			public void internalFrameClosing(InternalFrameEvent e) {
 				Config.setCurrentDELA(null);
-				text.reset();
-				setVisible(false);
 				/*
-				 * We wait to avoid blocking the creation of fooflx.dic by
-				 * MultiFlex
+				 * The mapping is released right away, so that MultiFlex can
+				 * create fooflx.dic
 				 */
-				try {
-					Thread.sleep(10);
-				} catch (final InterruptedException e2) {
-					e2.printStackTrace();
-				}
-				System.gc();
+				text.reset();
+				setVisible(false);
 			}
 
 			@Override
@@ -189,6 +190,8 @@ public class DelaFrame extends KeyedInternalFrame<File> {
 		p.add(reload, gbc);
 		p.add(previous, gbc);
 		p.add(next, gbc);
+		gbc.insets = new Insets(0, 5, 0, 0);
+		p.add(matchCount, gbc);
 		p.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
 		text.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 		find.addActionListener(new ActionListener() {
@@ -218,24 +221,61 @@ public class DelaFrame extends KeyedInternalFrame<File> {
 		return p;
 	}
 
-	void moveToMatchedElement(String regex, int currentPosition, boolean forward) {
+	void moveToMatchedElement(String regex, final int currentPosition,
+			final boolean forward) {
+		if (search != null && search.isUpToDate()
+				&& search.getPattern().pattern().equals(regex)) {
+			/*
+			 * If the search is still running, it will move to the first match
+			 * when done, and then do the moves asked for in the meantime
+			 */
+			if (search.isDone()) {
+				showMatchedElement(search, currentPosition, forward);
+			} else if (currentPosition != -1) {
+				pendingMoves.add(forward);
+			}
+			return;
+		}
 		/*
-		 * We don't use pattern.getValue(), because in order to match lines, we
-		 * have to add .* before and after the actual pattern entered by the
-		 * user
+		 * We look for all the lines that contain a match in the background.
+		 * Then, moving to the next or previous match doesn't need to search
+		 * the dictionary again
 		 */
 		Pattern p1;
 		try {
-			p1 = Pattern.compile(".*" + regex + ".*");
+			p1 = Pattern.compile(regex);
 		} catch (final PatternSyntaxException e2) {
 			return;
 		}
+		final TextAsListModelImpl model = (TextAsListModelImpl) text.getModel();
+		final LineSearch s = model.search(p1);
+		search = s;
+		pendingMoves.clear();
+		matchCount.setText("Searching...");
+		s.start(new Runnable() {
+			@Override
+			public void run() {
+				if (s != search) {
+					return;
+				}
+				final int n = s.getMatchCount();
+				matchCount.setText(n + " match" + ((n != 1) ? "es" : ""));
+				showMatchedElement(s, currentPosition, forward);
+				for (final Boolean b : pendingMoves) {
+					showMatchedElement(s, text.getSelectedIndex(), b);
+				}
+				pendingMoves.clear();
+			}
+		});
+	}
+
+	void showMatchedElement(LineSearch s, int currentPosition, boolean forward) {
 		final TextAsListModelImpl model = (TextAsListModelImpl) text.getModel();
 		int n;
 		if (forward)
-			n = model.getNextMatchedElement(currentPosition, p1);
+			n = s.getNextMatchedElement(currentPosition);
 		else
-			n = model.getPreviousMatchedElement(currentPosition, p1);
+			n = s.getPreviousMatchedElement(currentPosition);
 		if (n == -1)
 			return;
 		text.setSelectedIndex(n);
@@ -266,6 +306,7 @@ public class DelaFrame extends KeyedInternalFrame<File> {
 	 *            the dictionary to be loaded
 	 */
 	public void loadDela(File dela1) {
+		matchCount.setText("");
 		final LoadDelaDo toDo = new LoadDelaDo(dela1);
 		final Encoding e = Encoding.getEncoding(dela1);
 		if (e == null) {
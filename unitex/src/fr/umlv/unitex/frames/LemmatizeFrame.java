@@ -85,12 +85,16 @@ import fr.umlv.unitex.listeners.GraphListener;
 import fr.umlv.unitex.process.EatStreamThread;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.Log;
+import fr.umlv.unitex.process.ProcessFactory;
 import fr.umlv.unitex.process.ToDo;
 import fr.umlv.unitex.process.commands.ConcordCommand;
 import fr.umlv.unitex.process.commands.LocateTfstCommand;
 import fr.umlv.unitex.process.commands.MultiCommands;
 import fr.umlv.unitex.process.commands.RebuildTfstCommand;
 import fr.umlv.unitex.process.commands.Tfst2GrfCommand;
+import fr.umlv.unitex.tfst.SentenceCache;
+import fr.umlv.unitex.tfst.SentenceGraphBuilder;
+import fr.umlv.unitex.tfst.TfstSentence;
 import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.utils.KeyUtil;
 
@@ -138,6 +142,10 @@ public class LemmatizeFrame extends TfstFrame {
 	File sentence_tok;
 	File sentence_modified;
 	File text_tfst;
+	/* Offset in tokens of the sentence currently shown */
+	int offsetInTokens = 0;
+	/* Number of sentences to read in advance on each side of the current one */
+	private static final int PREFETCH_RADIUS = 3;
 	boolean isAcurrentLoadingThread = false;
 	JSplitPane superpanel;
 	JButton resetSentenceGraphs;
@@ -323,10 +331,20 @@ public class LemmatizeFrame extends TfstFrame {
 	
 	
 	protected int getOffsetInTokens() {
+		return offsetInTokens;
+	}
+
+	/**
+	 * Reads the offset that Tfst2Grf has written for the sentence it has
+	 * just built, or returns 0 if there is none.
+	 */
+	private static int readOffsetInTokens() {
 		File start=new File(Config.getCurrentSntDir(),"cursentence.start");
+		if (!start.exists()) return 0;
 		String content=Encoding.getContent(start);
+		if (content==null) return 0;
 		Scanner s=new Scanner(content);
-		return s.nextInt();
+		return s.hasNextInt() ? s.nextInt() : 0;
 	}
 
 	private JPanel constructSearchPanel() {
@@ -775,14 +793,29 @@ public class LemmatizeFrame extends TfstFrame {
 			return false;
 		isAcurrentLoadingThread = true;
 		graphicalZone.empty();
+		final File f = new File(sentence_modified + String.valueOf(z) + ".grf");
+		final boolean isSentenceModified = f.exists();
+		final TfstSentence sentence = SentenceCache.get(text_tfst, z);
+		if (sentence != null) {
+			offsetInTokens = sentence.getOffsetInTokens();
+			TokensInfo.setTokensInfo(sentence.getTokens(), sentence.getText());
+			if (isSentenceModified) {
+				loadSentenceGraph(f, n);
+				setModified(isSentenceModified);
+			} else {
+				loadSentenceGraph(SentenceGraphBuilder.build(sentence), n);
+			}
+			isAcurrentLoadingThread = false;
+			SentenceCache.prefetch(z, PREFETCH_RADIUS, text_tfst);
+			return true;
+		}
 		Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
 				.sentence(z);
 		cmd = cmd.font(ConfigManager.getManager().getInputFont(null).getName())
 				.fontSize(ConfigManager.getManager().getInputFontSize(null));
 		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
-		Process p;
 		try {
-			p = Runtime.getRuntime().exec(cmd.getCommandArguments(true));
+			final Process p = ProcessFactory.exec(cmd.getCommandArguments(true));
 			final BufferedInputStream in = new BufferedInputStream(
 					p.getInputStream());
 			final BufferedInputStream err = new BufferedInputStream(
@@ -795,13 +828,11 @@ public class LemmatizeFrame extends TfstFrame {
 		} catch (final InterruptedException e1) {
 			e1.printStackTrace();
 		}
+		offsetInTokens = readOffsetInTokens();
 		final String text = readSentenceText();
 		TokensInfo.loadTokensInfo(sentence_tok, text);
-		final File f = new File(sentence_modified + String.valueOf(z) + ".grf");
-		final boolean isSentenceModified = f.exists();
 		if (isSentenceModified) {
-			loadSentenceGraph(new File(sentence_modified.getAbsolutePath()
-					+ String.valueOf(z) + ".grf"),n);
+			loadSentenceGraph(f, n);
 			setModified(isSentenceModified);
 		} else {
 			loadSentenceGraph(sentence_grf,n);
@@ -835,11 +866,15 @@ public class LemmatizeFrame extends TfstFrame {
 	}
 
 	boolean loadSentenceGraph(File file,int sentence) {
-		setModified(false);
 		final GraphIO g = GraphIO.loadGraph(file, true, true);
 		if (g == null) {
 			return false;
 		}
+		return loadSentenceGraph(g, sentence);
+	}
+
+	boolean loadSentenceGraph(GraphIO g, int sentence) {
+		setModified(false);
 		textfield.setFont(g.getInfo().getInput().getFont());
 		graphicalZone.setup(g,sentence);
 		final Timer t = new Timer(300, new ActionListener() {
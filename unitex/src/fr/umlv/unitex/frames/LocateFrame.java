@@ -631,9 +631,15 @@ public class LocateFrame extends JInternalFrame {
 			return null;
 		}
 		try {
-			res = UnicodeIO.readLine(reader) + "\n";
-			res = res + UnicodeIO.readLine(reader) + "\n";
-			res = res + UnicodeIO.readLine(reader);
+			/* concord.n may have less than 3 lines, like for sharded runs */
+			res = UnicodeIO.readLine(reader);
+			for (int i = 0; res != null && i < 2; i++) {
+				final String line = UnicodeIO.readLine(reader);
+				if (line == null) {
+					break;
+				}
+				res = res + "\n" + line;
+			}
 			reader.close();
 		} catch (final FileNotFoundException e) {
 			return null;
@@ -392,7 +392,7 @@ public class PreprocessDialog extends JDialog {
 				e.printStackTrace();
 			}
 		}
-		// SORTING TEXT DICTIONARIES
+		// SORTING TEXT DICTIONARIES, IN PARALLEL
 		final File alph = new File(Config.getUserCurrentLanguageDir(),
 				"Alphabet_sort.txt");
 		if (dicoCmd != null) {
@@ -406,7 +406,7 @@ public class PreprocessDialog extends JDialog {
 			} else {
 				sortCmd = sortCmd.sortAlphabet(alph);
 			}
-			commands.addCommand(sortCmd);
+			commands.addParallelCommand(sortCmd);
 			// sorting DLC
 			SortTxtCommand sortCmd2 = new SortTxtCommand().file(
 					new File(Config.getCurrentSntDir(), "dlc"))
@@ -417,7 +417,7 @@ public class PreprocessDialog extends JDialog {
 			} else {
 				sortCmd2 = sortCmd2.sortAlphabet(alph);
 			}
-			commands.addCommand(sortCmd2);
+			commands.addParallelCommand(sortCmd2);
 			// sorting ERR
 			SortTxtCommand sortCmd3 = new SortTxtCommand().file(
 					new File(Config.getCurrentSntDir(), "err"))
@@ -428,7 +428,7 @@ public class PreprocessDialog extends JDialog {
 			} else {
 				sortCmd3 = sortCmd3.sortAlphabet(alph);
 			}
-			commands.addCommand(sortCmd3);
+			commands.addParallelCommand(sortCmd3);
 			// sorting TAGS_ERR
 			SortTxtCommand sortCmd4 = new SortTxtCommand().file(
 					new File(Config.getCurrentSntDir(), "tags_err"))
@@ -439,7 +439,7 @@ public class PreprocessDialog extends JDialog {
 			} else {
 				sortCmd4 = sortCmd4.sortAlphabet(alph);
 			}
-			commands.addCommand(sortCmd4);
+			commands.addParallelCommand(sortCmd4);
 		}
 		return commands;
 	}
@@ -69,7 +69,7 @@ public class ProcessInfoFrame extends JInternalFrame {
 	public final static Color systemColor = new Color(0xF0, 0xCB, 0xAA);
 	final static DefaultListCellRenderer myRenderer = new DefaultListCellRenderer() {
 		@Override
-		public Component getListCellRendererComponent(JList l, Object value,
+		public Component getListCellRendererComponent(JList<?> l, Object value,
 				int index, boolean isSelected, boolean cellHasFocus) {
 			final Couple c = (Couple) value;
 			setBackground(c.isSystemMessage() ? systemColor : Color.WHITE);
@@ -157,7 +157,7 @@ public class ProcessInfoFrame extends JInternalFrame {
 			public void actionPerformed(ActionEvent arg0){
 				String s = "";
 				for(int i=0; i < stderrList.getModel().getSize(); i++){
-					Couple c = (Couple) stderrList.getModel().get(i);
+					Couple c = stderrList.getModel().get(i);
 					s = s + c.getString() + "\n";}
 				Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
 				StringSelection selection = new StringSelection(s);
@@ -183,6 +183,14 @@ public class ProcessInfoFrame extends JInternalFrame {
 		setBounds(100, 100, 600, 400);
 	}
 	
+	@Override
+	public void dispose() {
+		super.dispose();
+		/* We delete the files where old lines may have been stored */
+		stdoutList.empty();
+		stderrList.empty();
+	}
+
 	public void setForceToDo(boolean forceToDo) {
 		this.forceToDo = forceToDo;
 	}
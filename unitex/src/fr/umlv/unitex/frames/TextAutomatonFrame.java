@@ -40,10 +40,15 @@ import fr.umlv.unitex.listeners.GraphListener;
 import fr.umlv.unitex.process.EatStreamThread;
 import fr.umlv.unitex.process.Launcher;
 import fr.umlv.unitex.process.Log;
+import fr.umlv.unitex.process.ProcessFactory;
 import fr.umlv.unitex.process.ToDo;
 import fr.umlv.unitex.process.commands.*;
 import fr.umlv.unitex.tfst.TagFilter;
 import fr.umlv.unitex.tfst.TfstTableModel;
+import fr.umlv.unitex.tfst.TokenTags;
+import fr.umlv.unitex.tfst.SentenceCache;
+import fr.umlv.unitex.tfst.SentenceGraphBuilder;
+import fr.umlv.unitex.tfst.TfstSentence;
 import fr.umlv.unitex.tfst.TokensInfo;
 import fr.umlv.unitex.utils.KeyUtil;
 
@@ -64,6 +69,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -109,9 +117,24 @@ public class TextAutomatonFrame extends TfstFrame {
 	File text_tfst;
 	File elag_tfst;
 	File elagsentence_grf;
+	/* Number of sentences to read in advance on each side of the current one */
+	private static final int PREFETCH_RADIUS = 3;
 	boolean isAcurrentLoadingThread = false;
-	boolean isAcurrentElagLoadingThread = false;
-	Process currentElagLoadingProcess = null;
+	/*
+	 * Sentences are loaded one at a time by a background thread. Only the last
+	 * request is shown; the number is only changed on the EDT.
+	 */
+	volatile int loadingRequest = 0;
+	private final ExecutorService sentenceLoader = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					final Thread t = new Thread(r, "Sentence loader");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	final JProgressBar loadingIndicator = new JProgressBar();
 	JSplitPane superpanel;
 	JButton revertSentenceGraph;
   private JButton undoButton;
@@ -492,6 +515,11 @@ public class TextAutomatonFrame extends TfstFrame {
 		});
 		spinner = new JSpinner(spinnerModel);
 		middle.add(spinner, BorderLayout.CENTER);
+		loadingIndicator.setIndeterminate(true);
+		loadingIndicator.setPreferredSize(new Dimension(20, 10));
+		loadingIndicator.setToolTipText("Loading sentence...");
+		loadingIndicator.setVisible(false);
+		middle.add(loadingIndicator, BorderLayout.EAST);
 		cornerPanel.add(middle);
 		final Action revertSentenceAction = new AbstractAction(
 				"Revert To Last Save") {
@@ -661,82 +689,152 @@ public class TextAutomatonFrame extends TfstFrame {
 	}
 
 	/**
-	 * Loads a sentence automaton
+	 * Asks for a sentence automaton to be loaded. The loading is done by a
+	 * background thread, and only the last requested sentence is shown: when
+	 * the user goes through sentences quickly, the previous requests are
+	 * given up.
 	 *
 	 * @param n
 	 *            sentence number
-	 * @return <code>false</code> if a sentence is already being loaded,
+	 * @return <code>false</code> if there is no such sentence,
 	 *         <code>true</code> otherwise
 	 */
-	boolean loadSentence(int n) {
-		if (n < 1 || n > sentence_count)
+	boolean loadSentence(final int n) {
+		if (n < 1 || n > sentence_count || sentenceLoader.isShutdown())
 			return false;
     reinitializeUndoManager();
-		final int z = n;
-		if (isAcurrentLoadingThread)
-			return false;
+		final int request = ++loadingRequest;
+		/* No modification must be saved until the new sentence is shown */
 		isAcurrentLoadingThread = true;
 		graphicalZone.empty();
+		elaggraph.empty();
 		sentenceTextArea.setText("");
-		Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
-				.sentence(z);
-		cmd = cmd.font(ConfigManager.getManager().getInputFont(null).getName())
-				.fontSize(ConfigManager.getManager().getInputFontSize(null));
-		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
-		Process p;
-		try {
-			p = Runtime.getRuntime().exec(cmd.getCommandArguments(true));
-			final BufferedInputStream in = new BufferedInputStream(
-					p.getInputStream());
-			final BufferedInputStream err = new BufferedInputStream(
-					p.getErrorStream());
-			new EatStreamThread(in).start();
-			new EatStreamThread(err).start();
-			p.waitFor();
-		} catch (final IOException e1) {
-			e1.printStackTrace();
-		} catch (final InterruptedException e1) {
-			e1.printStackTrace();
+		loadingIndicator.setVisible(true);
+		sentenceLoader.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (request != loadingRequest) {
+					return;
+				}
+				LoadedSentence s = null;
+				try {
+					s = readSentence(n, request);
+				} catch (final RuntimeException e) {
+					e.printStackTrace();
+				} catch (final AssertionError e) {
+					e.printStackTrace();
+				}
+				final LoadedSentence loaded = s;
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						showSentence(request, loaded);
+					}
+				});
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * What the background thread prepares for the EDT: the sentence, its
+	 * graph with the rows of the table, and its ELAG graph, if any.
+	 */
+	static class LoadedSentence {
+		final int n;
+		String text;
+		int[] tokenInfo;
+		GraphIO graph;
+		boolean modified;
+		ArrayList<TokenTags> lines;
+		GraphIO elagGraph;
+		/* The graphs that could not be loaded, to be reported on the EDT */
+		final ArrayList<File> errors = new ArrayList<File>();
+
+		LoadedSentence(int n) {
+			this.n = n;
 		}
-		final String text = readSentenceText();
-		TokensInfo.loadTokensInfo(sentence_tok, text);
-		final File f = new File(sentence_modified + String.valueOf(z) + ".grf");
-		final boolean isSentenceModified = f.exists();
-		if (isSentenceModified) {
-			loadSentenceGraph(new File(sentence_modified.getAbsolutePath()
-					+ String.valueOf(z) + ".grf"),n);
-			setModified(isSentenceModified);
-		} else {
-			loadSentenceGraph(sentence_grf,n);
+	}
+
+	/**
+	 * Reads the sentence #n. This is called by the background thread.
+	 *
+	 * @return null if a more recent request has been made
+	 */
+	LoadedSentence readSentence(int n, int request) {
+		try {
+			return readSentence(new LoadedSentence(n), request);
+		} finally {
+			TokensInfo.clearLocalTokensInfo();
 		}
-		isAcurrentLoadingThread = false;
-		loadElagSentence(z);
-		return true;
 	}
 
-	boolean loadElagSentence(int n) {
-		if (n < 1 || n > sentence_count) {
-			System.err.println("loadElagSentence: n = " + n + " out of bounds");
-			return false;
+	private LoadedSentence readSentence(LoadedSentence res, int request) {
+		final int n = res.n;
+		final File modified = new File(sentence_modified + String.valueOf(n)
+				+ ".grf");
+		res.modified = modified.exists();
+		final TfstSentence sentence = SentenceCache.get(text_tfst, n);
+		if (sentence != null) {
+			res.text = sentence.getText();
+			res.tokenInfo = sentence.getTokens();
+			/* Box bounds are computed from the tokens of the sentence */
+			TokensInfo.setLocalTokensInfo(res.tokenInfo, res.text);
+			res.graph = res.modified ? loadGraph(modified, res)
+					: SentenceGraphBuilder.build(sentence);
+		} else {
+			Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(text_tfst)
+					.sentence(n);
+			cmd = cmd.font(
+					ConfigManager.getManager().getInputFont(null).getName())
+					.fontSize(
+							ConfigManager.getManager().getInputFontSize(null));
+			runTfst2Grf(cmd);
+			res.text = readSentenceText();
+			res.tokenInfo = TokensInfo.readTokensInfo(sentence_tok);
+			TokensInfo.setLocalTokensInfo(res.tokenInfo, res.text);
+			res.graph = loadGraph(res.modified ? modified : sentence_grf, res);
 		}
-		final int z = n;
-		if (isAcurrentElagLoadingThread) {
-			return false;
+		if (request != loadingRequest) {
+			return null;
 		}
-		isAcurrentElagLoadingThread = true;
-		elaggraph.empty();
-		if (!elag_tfst.exists()) { // if fst file does not exist exit
-			isAcurrentElagLoadingThread = false;
-			return false;
+		if (res.graph != null) {
+			res.lines = TfstTableModel.computeLines(res.graph.getBoxes(),
+					TokensInfo.getTokens());
+		}
+		if (request != loadingRequest || !elag_tfst.exists()) {
+			return res;
+		}
+		final TfstSentence elagSentence = SentenceCache.get(elag_tfst, n);
+		if (elagSentence != null) {
+			res.elagGraph = SentenceGraphBuilder.build(elagSentence);
+		} else {
+			runTfst2Grf(new Tfst2GrfCommand().automaton(elag_tfst)
+					.sentence(n).output("currelagsentence")
+					.font(ConfigManager.getManager().getInputFont(null).getName())
+					.fontSize(ConfigManager.getManager().getInputFontSize(null)));
+			res.elagGraph = loadGraph(elagsentence_grf, res);
+		}
+		return res;
+	}
+
+	/**
+	 * Loads a graph without showing any message, since we are not on the
+	 * EDT. A failure is recorded in res, and reported by showSentence.
+	 */
+	private static GraphIO loadGraph(File grf, LoadedSentence res) {
+		final GraphIO g = GraphIO.loadGraph(grf, true, false);
+		if (g == null) {
+			res.errors.add(grf);
 		}
-		final Tfst2GrfCommand cmd = new Tfst2GrfCommand().automaton(elag_tfst)
-				.sentence(z).output("currelagsentence")
-				.font(ConfigManager.getManager().getInputFont(null).getName())
-				.fontSize(ConfigManager.getManager().getInputFontSize(null));
+		return g;
+	}
+
+	private static void runTfst2Grf(Tfst2GrfCommand cmd) {
 		Console.addCommand(cmd.getCommandLine(), false, Log.getCurrentLogID());
 		try {
-			final Process p = Runtime.getRuntime().exec(
-					cmd.getCommandArguments(true));
+			final Process p = ProcessFactory.exec(cmd
+					.getCommandArguments(true));
 			final BufferedInputStream in = new BufferedInputStream(
 					p.getInputStream());
 			final BufferedInputStream err = new BufferedInputStream(
@@ -746,12 +844,52 @@ public class TextAutomatonFrame extends TfstFrame {
 			p.waitFor();
 		} catch (final IOException e1) {
 			e1.printStackTrace();
-		} catch (final InterruptedException e) {
-			e.printStackTrace();
+		} catch (final InterruptedException e1) {
+			e1.printStackTrace();
 		}
-		loadElagSentenceGraph(elagsentence_grf);
-		isAcurrentElagLoadingThread = false;
-		return true;
+	}
+
+	/**
+	 * Shows a sentence read by the background thread, unless a more recent
+	 * request has been made in the meantime. Must be called on the EDT.
+	 */
+	void showSentence(int request, LoadedSentence s) {
+		if (request != loadingRequest) {
+			return;
+		}
+		loadingIndicator.setVisible(false);
+		if (s != null && !s.errors.isEmpty()) {
+			final StringBuilder b = new StringBuilder("Cannot load:");
+			for (final File f : s.errors) {
+				b.append('\n').append(f.getAbsolutePath());
+			}
+			JOptionPane.showMessageDialog(null, b.toString(), "Error",
+					JOptionPane.ERROR_MESSAGE);
+		}
+		if (s != null && s.text != null) {
+			sentenceTextArea.setFont(ConfigManager.getManager().getTextFont(
+					null));
+			sentenceTextArea.setText(s.text);
+			TokensInfo.setTokensInfo(s.tokenInfo, s.text);
+			if (s.graph != null) {
+				loadSentenceGraph(s.graph, s.n, s.lines);
+				if (s.modified) {
+					setModified(true);
+				}
+			}
+			if (s.elagGraph != null) {
+				loadElagSentenceGraph(s.elagGraph);
+			}
+			prefetchAround(s.n);
+		}
+		isAcurrentLoadingThread = false;
+	}
+
+	@Override
+	public void dispose() {
+		/* Pending and running loads are given up */
+		sentenceLoader.shutdownNow();
+		super.dispose();
 	}
 
 	public void changeAntialiasingValue() {
@@ -771,9 +909,6 @@ public class TextAutomatonFrame extends TfstFrame {
 			if (s == null || s.equals("")) {
 				return "";
 			}
-			sentenceTextArea.setFont(ConfigManager.getManager().getTextFont(
-					null));
-			sentenceTextArea.setText(s);
 			br.close();
 		} catch (final IOException e) {
 			e.printStackTrace();
@@ -781,15 +916,24 @@ public class TextAutomatonFrame extends TfstFrame {
 		return s;
 	}
 
-	boolean loadSentenceGraph(File file,int sentence) {
-		setModified(false);
-		final GraphIO g = GraphIO.loadGraph(file, true, true);
-		if (g == null) {
-			return false;
+	/**
+	 * Warms the sentence cache with the neighbours of the sentence #n, in the
+	 * text automaton and in its ELAG twin, since both are shown together.
+	 */
+	private void prefetchAround(int n) {
+		if (elag_tfst.exists()) {
+			SentenceCache.prefetch(n, PREFETCH_RADIUS, text_tfst, elag_tfst);
+		} else {
+			SentenceCache.prefetch(n, PREFETCH_RADIUS, text_tfst);
 		}
+	}
+
+	boolean loadSentenceGraph(GraphIO g, int sentence,
+			ArrayList<TokenTags> lines) {
+		setModified(false);
 		textfield.setFont(g.getInfo().getInput().getFont());
 		graphicalZone.setup(g,sentence);
-		tfstTableModel.init(g.getBoxes());
+		tfstTableModel.setLines(lines);
 		final Timer t = new Timer(300, new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
@@ -805,11 +949,8 @@ public class TextAutomatonFrame extends TfstFrame {
 		return true;
 	}
 
-	boolean loadElagSentenceGraph(File file) {
+	boolean loadElagSentenceGraph(GraphIO g) {
 		setModified(false);
-		final GraphIO g = GraphIO.loadGraph(file, true, true);
-		if (g == null)
-			return false;
 		elaggraph.setup(g,-1);
 		return true;
 	}
@@ -928,6 +1069,8 @@ public class TextAutomatonFrame extends TfstFrame {
 				"text-elag.tind");
 		old_tfst_tind.delete();
 		new_tfst_tind.renameTo(old_tfst_tind);
+		SentenceCache.invalidate(text_tfst);
+		SentenceCache.invalidate(elag_tfst);
 		loadCurrSentence();
 	}
 
@@ -345,7 +345,6 @@ public class TextDicFrame extends TabbableInternalFrame {
 		dlc.reset();
 		err.reset();
 		setVisible(false);
-		System.gc();
 	}
 
 	@Override
@@ -139,7 +139,6 @@ public class TokensFrame extends TabbableInternalFrame {
 	void hideFrame() {
 		text.reset();
 		setVisible(false);
-		System.gc();
 	}
 
 	@Override
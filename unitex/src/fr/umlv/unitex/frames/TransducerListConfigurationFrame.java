@@ -13,6 +13,8 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.LineNumberReader;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -677,6 +679,11 @@ public class TransducerListConfigurationFrame extends JInternalFrame implements
 			
 			MultiCommands commands = new MultiCommands();
 			String ErrorList = "";
+			/*
+			 * A graph may appear several times in the list, and two commands
+			 * compiling it at the same time would write the same files
+			 */
+			final Set<File> compiled = new HashSet<File>();
 			
 			for (int i = 0; i < dtm.getRowCount(); i++) {
 				final TransducerListTableModel model = (TransducerListTableModel) table.getModel();
@@ -697,8 +704,11 @@ public class TransducerListConfigurationFrame extends JInternalFrame implements
 					} else {
 
 						graphFile = getGrfFromFst2(graphFile);
+						if (!compiled.add(getCanonicalFile(graphFile))) {
+							continue;
+						}
 
-						commands.addCommand(new Grf2Fst2Command()
+						commands.addParallelCommand(new Grf2Fst2Command()
 								.grf(graphFile)
 								.enableLoopAndRecursionDetection(true)
 								.alphabetTokenization(f_alphabet)
@@ -867,6 +877,14 @@ public class TransducerListConfigurationFrame extends JInternalFrame implements
 		final File grf = new File(nameWithExtension);
 		return grf;
 	}
+
+	private static File getCanonicalFile(File f) {
+		try {
+			return f.getCanonicalFile();
+		} catch (IOException e) {
+			return f.getAbsoluteFile();
+		}
+	}
 	
 	
 
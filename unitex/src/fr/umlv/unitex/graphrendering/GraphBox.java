@@ -32,6 +32,7 @@ import fr.umlv.unitex.exceptions.MissingGraphNameException;
 import fr.umlv.unitex.exceptions.NoClosingQuoteException;
 import fr.umlv.unitex.exceptions.NoClosingRoundBracketException;
 import fr.umlv.unitex.exceptions.NoClosingSupException;
+import fr.umlv.unitex.graphtools.BoxTokenizer;
 
 /**
  * This class describes a box of a graph.
@@ -58,138 +59,14 @@ public class GraphBox extends GenericGraphBox {
 	/*
 	 * The following methods are used to manipulate the box text
 	 */
-	private int test_transduction(char s[], int i) {
-		int compteur;
-		if (s[i] != '/')
-			return 0;
-		i--;
-		compteur = 0;
-		while (i >= 0 && s[i] == '\\') {
-			compteur++;
-			i--;
-		}
-		if ((compteur % 2) != 0)
-			return 0;
-		return 1;
-	}
-
-	private static boolean isAPlusChar(char c) {
-		return (c == '+' || c == '\uff0b');
-	}
-
 	private void tokenizeTextWithoutTransduction(String s)
 			throws BackSlashAtEndOfLineException, MissingGraphNameException,
 			NoClosingQuoteException, NoClosingSupException,
 			NoClosingRoundBracketException {
-		final int L = s.length();
-		int i = 0;
-		String tmp;
-		char ligne[] = new char[10000];
-		ligne = s.toCharArray();
-		while (i < L) {
-			tmp = "";
-			if (ligne[i] == ':') {
-				// case of a sub graph call
-				i++;
-				while ((i < L) && !isAPlusChar(ligne[i]) /* (ligne[i]!='+') */
-				) {
-					if (ligne[i] == '\\') {
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						if (i >= L) {
-							final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-							throw e;
-						}
-					}
-					tmp = tmp.concat(String.valueOf(ligne[i++]));
-				}
-				if (tmp.length() == 0) {
-					final MissingGraphNameException e = new MissingGraphNameException();
-					throw e;
-				}
-				// if we had a + separator char (even a japanese one), we put a
-				// standard + instead
-				if (i < L)
-					ligne[i] = '+';
-				i++;
-				n_lines++;
-				lines.add(tmp);
-				greyed.add(Boolean.TRUE);
-			} else {
-				// all other cases
-				while ((i < L) && !isAPlusChar(ligne[i]) /* (ligne[i]!='+') */
-				) {
-					if (ligne[i] == '"') {
-						// case of a quote expression
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						while ((i < L) && ligne[i] != '"') {
-							if (ligne[i] == '\\') {
-								tmp = tmp.concat(String.valueOf(ligne[i++]));
-								if (i >= L) {
-									final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-									throw e;
-								}
-							}
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-						}
-						if (i >= L) {
-							final NoClosingQuoteException e = new NoClosingQuoteException();
-							throw e;
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					} else if (ligne[i] == '<') {
-						// case of a <...> expression
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						while ((i < L) && ligne[i] != '>') {
-							if (ligne[i] == '\\') {
-								tmp = tmp.concat(String.valueOf(ligne[i++]));
-								if (i >= L) {
-									final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-									throw e;
-								}
-							}
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-						}
-						if (i >= L) {
-							final NoClosingSupException e = new NoClosingSupException();
-							throw e;
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					} else if (ligne[i] == '{') {
-						// case of a {...} expression
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-						while ((i < L) && ligne[i] != '}') {
-							if (ligne[i] == '\\') {
-								tmp = tmp.concat(String.valueOf(ligne[i++]));
-								if (i >= L) {
-									final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-									throw e;
-								}
-							}
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-						}
-						if (i >= L) {
-							final NoClosingRoundBracketException e = new NoClosingRoundBracketException();
-							throw e;
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					} else {
-						if (ligne[i] == '\\') {
-							tmp = tmp.concat(String.valueOf(ligne[i++]));
-							if (i >= L) {
-								final BackSlashAtEndOfLineException e = new BackSlashAtEndOfLineException();
-								throw e;
-							}
-						}
-						tmp = tmp.concat(String.valueOf(ligne[i++]));
-					}
-				}
-				if (i < L)
-					ligne[i] = '+';
-				n_lines++;
-				lines.add(tmp);
-				greyed.add(Boolean.FALSE);
-				i++;
-			}
+		try {
+			BoxTokenizer.tokenizeLines(s, lines, greyed);
+		} finally {
+			n_lines = lines.size();
 		}
 	}
 
@@ -224,9 +101,8 @@ public class GraphBox extends GenericGraphBox {
 			throw new IllegalStateException(
 					"The graph contains an unexpected empty box that is not the final state");
 		}
-		String tmp = "";
-		int i = 0, L;
-		L = content.length();
+		String tmp;
+		final int L = content.length();
 		variable = false;
 		contextMark = false;
                 genericGrfMark = false;
@@ -338,13 +214,13 @@ public class GraphBox extends GenericGraphBox {
 			X_out = X + Width + 2;
 			return;
 		}
-		while ((i != L) && (test_transduction(line, i) == 0))
-			tmp = tmp.concat(String.valueOf(line[i++]));
-		transduction = "";
-		if (i != L) {
-			i++;
-			while (i != L)
-				transduction = transduction.concat(String.valueOf(line[i++]));
+		final int slash = BoxTokenizer.getTransductionStart(content);
+		if (slash == -1) {
+			tmp = content;
+			transduction = "";
+		} else {
+			tmp = content.substring(0, slash);
+			transduction = content.substring(slash + 1);
 		}
 		n_lines = 0;
 		lines.clear();
@@ -383,40 +259,7 @@ public class GraphBox extends GenericGraphBox {
 	 */
 	public static boolean tokenizeCommentBox(String line,
 			ArrayList<String> lines) {
-		if (lines != null)
-			lines.clear();
-		if (line == null || !line.startsWith("/") || line.equals("/")
-				|| line.startsWith("/+"))
-			return false;
-		final int l = line.length();
-		final StringBuilder builder = new StringBuilder();
-		int i = 1;
-		while (i < l) {
-			builder.setLength(0);
-			while (i < l && line.charAt(i) != '+') {
-				if (line.charAt(i) == '\\') {
-					if (i + 1 == l) {
-						/* A \ at the end of the content is an error */
-						if (lines != null)
-							lines.clear();
-						return false;
-					}
-					i++;
-				}
-				builder.append(line.charAt(i));
-				i++;
-			}
-			if (i + 1 == l && line.charAt(i) == '+') {
-				/* A + at the end of the content is an error */
-				if (lines != null)
-					lines.clear();
-				return false;
-			}
-			i++;
-			if (lines != null)
-				lines.add(builder.toString());
-		}
-		return true;
+		return BoxTokenizer.tokenizeCommentBox(line, lines);
 	}
 
 	private int strcmp(String a, String b) {
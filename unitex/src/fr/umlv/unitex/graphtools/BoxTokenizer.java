@@ -0,0 +1,267 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.util.List;
+
+import fr.umlv.unitex.exceptions.BackSlashAtEndOfLineException;
+import fr.umlv.unitex.exceptions.MissingGraphNameException;
+import fr.umlv.unitex.exceptions.NoClosingQuoteException;
+import fr.umlv.unitex.exceptions.NoClosingRoundBracketException;
+import fr.umlv.unitex.exceptions.NoClosingSupException;
+
+/**
+ * This class cuts the content of a graph box into lines, the way boxes
+ * display them. It does not depend on anything graphical, so that graphs can
+ * be analyzed without a display.
+ */
+public class BoxTokenizer {
+	private BoxTokenizer() {
+		/* */
+	}
+
+	private static boolean isAPlusChar(char c) {
+		return (c == '+' || c == '＋');
+	}
+
+	/**
+	 * Cuts the content of a box into lines and returns its output. Lines are
+	 * added to the given list, and for each line, greyed tells if it is a
+	 * subgraph call. Comment boxes are not handled here.
+	 * 
+	 * @return the output of the box, or "" if there is none
+	 */
+	public static String tokenize(String content, List<String> lines,
+			List<Boolean> greyed) {
+		final int L = content.length();
+		if (content.charAt(0) == '$'
+				&& (content.charAt(L - 1) == '(' || content.charAt(L - 1) == ')')) {
+			/* Case of $a( or $a) */
+			lines.add(String.valueOf(content.charAt(L - 1)));
+			greyed.add(Boolean.FALSE);
+			final boolean outputVariable = (content.charAt(1) == '|');
+			return content.substring(1 + (outputVariable ? 1 : 0), L - 1);
+		}
+		if (content.equals("$[") || content.equals("$![")
+				|| content.equals("$]") || content.equals("$*")
+				|| content.equals("$<") || content.equals("$>")) {
+			/* Case of context marks and of morphological mode marks */
+			lines.add(content.substring(1));
+			greyed.add(Boolean.FALSE);
+			return "";
+		}
+		if (content.equals("$G") || content.startsWith("$G/")) {
+			lines.add(content.substring(1, 2));
+			greyed.add(Boolean.FALSE);
+			if (content.length() > 3 && content.charAt(2) == '/') {
+				return content.substring(3);
+			}
+			return "";
+		}
+		final int slash = getTransductionStart(content);
+		final String text = (slash == -1) ? content : content.substring(0,
+				slash);
+		final String transduction = (slash == -1) ? "" : content
+				.substring(slash + 1);
+		if (!text.equals("<E>")) {
+			try {
+				tokenizeLines(text, lines, greyed);
+			} catch (final BackSlashAtEndOfLineException e) {
+				/* Boxes keep the lines read before the error */
+			} catch (final MissingGraphNameException e) {
+				/* */
+			} catch (final NoClosingQuoteException e) {
+				/* */
+			} catch (final NoClosingRoundBracketException e) {
+				/* */
+			} catch (final NoClosingSupException e) {
+				/* */
+			}
+		}
+		return transduction;
+	}
+
+	/**
+	 * Returns the position of the / that starts the output of the given box
+	 * content, or -1 if there is none.
+	 */
+	public static int getTransductionStart(String s) {
+		final int L = s.length();
+		for (int i = 0; i < L; i++) {
+			if (s.charAt(i) != '/') {
+				continue;
+			}
+			int backslashes = 0;
+			for (int j = i - 1; j >= 0 && s.charAt(j) == '\\'; j--) {
+				backslashes++;
+			}
+			if ((backslashes % 2) == 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Cuts the given box text, without output, into lines separated by +
+	 * chars. Lines are added to the given list even if an exception is
+	 * thrown.
+	 */
+	public static void tokenizeLines(String s, List<String> lines,
+			List<Boolean> greyed) throws BackSlashAtEndOfLineException,
+			MissingGraphNameException, NoClosingQuoteException,
+			NoClosingSupException, NoClosingRoundBracketException {
+		final int L = s.length();
+		int i = 0;
+		final StringBuilder tmp = new StringBuilder();
+		final char ligne[] = s.toCharArray();
+		while (i < L) {
+			tmp.setLength(0);
+			if (ligne[i] == ':') {
+				// case of a sub graph call
+				i++;
+				while ((i < L) && !isAPlusChar(ligne[i])) {
+					if (ligne[i] == '\\') {
+						tmp.append(ligne[i++]);
+						if (i >= L) {
+							throw new BackSlashAtEndOfLineException();
+						}
+					}
+					tmp.append(ligne[i++]);
+				}
+				if (tmp.length() == 0) {
+					throw new MissingGraphNameException();
+				}
+				// if we had a + separator char (even a japanese one), we put a
+				// standard + instead
+				if (i < L)
+					ligne[i] = '+';
+				i++;
+				lines.add(tmp.toString());
+				greyed.add(Boolean.TRUE);
+			} else {
+				// all other cases
+				while ((i < L) && !isAPlusChar(ligne[i])) {
+					if (ligne[i] == '"') {
+						// case of a quote expression
+						i = readUntil(ligne, i, '"', tmp);
+						if (i == -1) {
+							throw new NoClosingQuoteException();
+						}
+					} else if (ligne[i] == '<') {
+						// case of a <...> expression
+						i = readUntil(ligne, i, '>', tmp);
+						if (i == -1) {
+							throw new NoClosingSupException();
+						}
+					} else if (ligne[i] == '{') {
+						// case of a {...} expression
+						i = readUntil(ligne, i, '}', tmp);
+						if (i == -1) {
+							throw new NoClosingRoundBracketException();
+						}
+					} else {
+						if (ligne[i] == '\\') {
+							tmp.append(ligne[i++]);
+							if (i >= L) {
+								throw new BackSlashAtEndOfLineException();
+							}
+						}
+						tmp.append(ligne[i++]);
+					}
+				}
+				if (i < L)
+					ligne[i] = '+';
+				lines.add(tmp.toString());
+				greyed.add(Boolean.FALSE);
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Appends to tmp the chars from the opening char at position i to the
+	 * given closing char, both included.
+	 * 
+	 * @return the position after the closing char, or -1 if there is none
+	 */
+	private static int readUntil(char[] ligne, int i, char closing,
+			StringBuilder tmp) throws BackSlashAtEndOfLineException {
+		final int L = ligne.length;
+		tmp.append(ligne[i++]);
+		while ((i < L) && ligne[i] != closing) {
+			if (ligne[i] == '\\') {
+				tmp.append(ligne[i++]);
+				if (i >= L) {
+					throw new BackSlashAtEndOfLineException();
+				}
+			}
+			tmp.append(ligne[i++]);
+		}
+		if (i >= L) {
+			return -1;
+		}
+		tmp.append(ligne[i++]);
+		return i;
+	}
+
+	/**
+	 * Tokenizes a comment box. Returns true if the given String was a valid
+	 * comment. If lines is not null, it is filled with the String to be
+	 * displayed in the box.
+	 */
+	public static boolean tokenizeCommentBox(String line, List<String> lines) {
+		if (lines != null)
+			lines.clear();
+		if (line == null || !line.startsWith("/") || line.equals("/")
+				|| line.startsWith("/+"))
+			return false;
+		final int l = line.length();
+		final StringBuilder builder = new StringBuilder();
+		int i = 1;
+		while (i < l) {
+			builder.setLength(0);
+			while (i < l && line.charAt(i) != '+') {
+				if (line.charAt(i) == '\\') {
+					if (i + 1 == l) {
+						/* A \ at the end of the content is an error */
+						if (lines != null)
+							lines.clear();
+						return false;
+					}
+					i++;
+				}
+				builder.append(line.charAt(i));
+				i++;
+			}
+			if (i + 1 == l && line.charAt(i) == '+') {
+				/* A + at the end of the content is an error */
+				if (lines != null)
+					lines.clear();
+				return false;
+			}
+			i++;
+			if (lines != null)
+				lines.add(builder.toString());
+		}
+		return true;
+	}
+}
@@ -28,7 +28,7 @@ import java.util.HashMap;
 
 import fr.umlv.unitex.config.Config;
 import fr.umlv.unitex.graphrendering.GenericGraphBox;
-import fr.umlv.unitex.io.GraphIO;
+import fr.umlv.unitex.io.GraphModel;
 
 /**
  * This class provides methods for building graph dependencies.
@@ -106,31 +106,30 @@ public class Dependancies {
 	 */
 	private static ArrayList<GraphCall> getSubgraphs(File grf,
 			boolean emitErrorMessages, boolean main, boolean whoCallsMode) {
-		GraphIO io;
+		GraphModel graph;
 		try {
-			io = GraphIO.loadGraph(grf, false, false);
-			if (io == null)
-				return null;
+			graph = GraphModel.load(grf);
 		} catch (final Exception e) {
 			return null;
 		}
+		final int nBoxes = graph.getBoxCount();
 		final ArrayList<GraphCall> subgraphs = new ArrayList<GraphCall>();
-		final boolean[] accessible = new boolean[io.getBoxes().size()];
-		final int[] coaccessible = new int[io.getBoxes().size()];
+		final boolean[] accessible = new boolean[nBoxes];
+		final int[] coaccessible = new int[nBoxes];
 		for (int i = 0; i < coaccessible.length; i++)
 			coaccessible[i] = UNTESTED;
-		markAccessibleBoxes(io.getBoxes(), accessible, 0);
-		for (int i = 0; i < io.getBoxes().size(); i++) {
-			if (isCoaccessibleBoxes(io.getBoxes(), coaccessible, i)) {
+		markAccessibleBoxes(graph, accessible, GraphModel.INITIAL);
+		for (int i = 0; i < nBoxes; i++) {
+			if (isCoaccessibleBoxes(graph, coaccessible, i)) {
 				coaccessible[i] = TESTED_TRUE;
 			} else {
 				coaccessible[i] = TESTED_FALSE;
 			}
 		}
-		for (int i = 0; i < io.getBoxes().size(); i++) {
+		for (int i = 0; i < nBoxes; i++) {
 			final boolean useful = accessible[i]
 					&& coaccessible[i] == TESTED_TRUE;
-			addSubgraphs(subgraphs, io.getBoxes().get(i), grf,
+			addSubgraphs(subgraphs, graph, i, grf,
 					emitErrorMessages, useful, main, whoCallsMode);
 		}
 		return subgraphs;
@@ -169,7 +168,7 @@ public class Dependancies {
 	 * Adds to the given list the subgraphs contained in the given box.
 	 */
 	private static void addSubgraphs(ArrayList<GraphCall> subgraphs,
-			GenericGraphBox box, File parent, boolean emitErrorMessages,
+			GraphModel graph, int box, File parent, boolean emitErrorMessages,
 			boolean useful, boolean main, boolean whoCallsMode) {
 		if (!whoCallsMode && !useful && !main) {
 			/*
@@ -178,10 +177,10 @@ public class Dependancies {
 			 */
 			return;
 		}
-		for (int i = 0; i < box.lines.size(); i++) {
-			if (box.greyed.get(i)) {
+		for (int i = 0; i < graph.getLineCount(box); i++) {
+			if (graph.isGreyed(box, i)) {
 				/* If we have a subgraph call */
-				final File f = getSubgraph(box.lines.get(i), parent,
+				final File f = getSubgraph(graph.getLine(box, i), parent,
 						emitErrorMessages);
 				if (f != null && !subgraphs.contains(f) && !f.equals(parent)) {
 					boolean there = false;
@@ -244,17 +243,13 @@ public class Dependancies {
 		return f;
 	}
 
-	private static void markAccessibleBoxes(ArrayList<GenericGraphBox> boxes,
+	private static void markAccessibleBoxes(GraphModel graph,
 			boolean[] marked, int n) {
 		if (marked[n] == true)
 			return;
 		marked[n] = true;
-		final GenericGraphBox b = boxes.get(n);
-		final ArrayList<GenericGraphBox> dest = b.getTransitions();
-		if (dest == null)
-			return;
-		for (final GenericGraphBox box : dest) {
-			markAccessibleBoxes(boxes, marked, boxes.indexOf(box));
+		for (int i = 0; i < graph.getTransitionCount(n); i++) {
+			markAccessibleBoxes(graph, marked, graph.getTransition(n, i));
 		}
 	}
 
@@ -263,8 +258,8 @@ public class Dependancies {
 	private final static int TESTED_FALSE = 2;
 	private final static int BEING_TESTED = 3;
 
-	private static boolean isCoaccessibleBoxes(
-			ArrayList<GenericGraphBox> boxes, int[] marked, int n) {
+	private static boolean isCoaccessibleBoxes(GraphModel graph,
+			int[] marked, int n) {
 		if (marked[n] == TESTED_FALSE || marked[n] == TESTED_TRUE) {
 			return marked[n] == TESTED_TRUE;
 		}
@@ -272,18 +267,12 @@ public class Dependancies {
 			return false;
 		}
 		marked[n] = BEING_TESTED;
-		final GenericGraphBox b = boxes.get(n);
-		if (b.type == GenericGraphBox.FINAL) {
+		if (n == GraphModel.FINAL) {
 			marked[n] = TESTED_TRUE;
 			return true;
 		}
-		final ArrayList<GenericGraphBox> dest = b.getTransitions();
-		if (dest == null) {
-			marked[n] = TESTED_FALSE;
-			return false;
-		}
-		for (final GenericGraphBox box : dest) {
-			if (isCoaccessibleBoxes(boxes, marked, boxes.indexOf(box))) {
+		for (int i = 0; i < graph.getTransitionCount(n); i++) {
+			if (isCoaccessibleBoxes(graph, marked, graph.getTransition(n, i))) {
 				marked[n] = UNTESTED;
 				return true;
 			}
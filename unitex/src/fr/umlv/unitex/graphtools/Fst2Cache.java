@@ -0,0 +1,256 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.graphtools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * This class tells whether a .fst2 is still up to date, that is to say
+ * whether compiling its .grf again with the same options would give the same
+ * result. For that, we save next to the .fst2 the options it was compiled
+ * with, its size and date, and the content hashes of the main graph and of all
+ * its subgraphs, as given by {@link Dependancies#getAllSubgraphs(File)}.
+ * 
+ * Checking the cache only reads the dates of the graphs. Subgraphs are only
+ * looked for again, and graphs read again, when one of them has been
+ * modified.
+ */
+public class Fst2Cache {
+	private static final String OPTIONS = "options";
+	private static final String FST2 = "fst2";
+	private static final String FILE = "file.";
+
+	private final File grf;
+	private final File fst2;
+	private final File file;
+	private final String options;
+	private final ArrayList<File> others = new ArrayList<File>();
+
+	/**
+	 * @param args
+	 *            the compile command line, without its time option
+	 */
+	public Fst2Cache(File grf, File fst2, String[] args) {
+		this.grf = grf.getAbsoluteFile();
+		this.fst2 = fst2.getAbsoluteFile();
+		this.file = new File(this.fst2.getParentFile(), ".."
+				+ fst2.getName() + ".cache");
+		final StringBuilder b = new StringBuilder();
+		for (final String arg : args) {
+			b.append(arg).append('\0');
+		}
+		this.options = b.toString();
+	}
+
+	/**
+	 * Adds a file that is not a graph but that the compilation depends on,
+	 * like the alphabet used to tokenize the graphs.
+	 */
+	public Fst2Cache addFile(File f) {
+		others.add(f.getAbsoluteFile());
+		return this;
+	}
+
+	private Properties load() {
+		final Properties p = new Properties();
+		if (!file.exists()) {
+			return p;
+		}
+		try {
+			final FileInputStream in = new FileInputStream(file);
+			try {
+				p.load(in);
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			p.clear();
+		}
+		return p;
+	}
+
+	public boolean isUpToDate() {
+		final Properties p = load();
+		if (!options.equals(p.getProperty(OPTIONS))
+				|| !getState(fst2).equals(p.getProperty(FST2))
+				|| !fst2.exists()) {
+			return false;
+		}
+		boolean modified = false;
+		for (final String key : p.stringPropertyNames()) {
+			if (key.startsWith(FILE)) {
+				final String saved = p.getProperty(key);
+				final File f = new File(key.substring(FILE.length()));
+				if (!saved.startsWith(getState(f) + "=")) {
+					modified = true;
+					break;
+				}
+			}
+		}
+		if (!modified) {
+			return true;
+		}
+		/*
+		 * A graph has been touched. If its content is the same, its subgraphs
+		 * are the same too, but we have to look for them again to know it
+		 */
+		final Properties graphs = hashGraphs(p);
+		if (graphs == null) {
+			return false;
+		}
+		for (final String key : graphs.stringPropertyNames()) {
+			if (!getHash(graphs.getProperty(key)).equals(
+					getHash(p.getProperty(key)))) {
+				return false;
+			}
+		}
+		return graphs.size() == countFiles(p);
+	}
+
+	/**
+	 * Saves the state of the .fst2, that has just been compiled.
+	 */
+	public void save() {
+		final Properties p = hashGraphs(load());
+		if (p == null || !fst2.exists()) {
+			file.delete();
+			return;
+		}
+		p.setProperty(OPTIONS, options);
+		p.setProperty(FST2, getState(fst2));
+		try {
+			final FileOutputStream out = new FileOutputStream(file);
+			try {
+				p.store(out, null);
+			} finally {
+				out.close();
+			}
+		} catch (final IOException e) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Removes the saved state, so that the .fst2 is compiled next time.
+	 */
+	public void clear() {
+		file.delete();
+	}
+
+	private static int countFiles(Properties p) {
+		int n = 0;
+		for (final String key : p.stringPropertyNames()) {
+			if (key.startsWith(FILE)) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the states and hashes of the main graph and of all its
+	 * subgraphs. Hashes are taken from old when the state of a graph has not
+	 * changed.
+	 */
+	private Properties hashGraphs(Properties old) {
+		final TreeSet<File> files = new TreeSet<File>();
+		files.add(grf);
+		files.addAll(others);
+		final ArrayList<GraphCall> calls = Dependancies.getAllSubgraphs(grf);
+		for (final GraphCall c : calls) {
+			files.add(c.getGrf().getAbsoluteFile());
+		}
+		final Properties p = new Properties();
+		try {
+			for (final File f : files) {
+				final String key = FILE + f.getPath();
+				final String state = getState(f);
+				final String saved = old.getProperty(key);
+				String value;
+				if (saved != null && saved.startsWith(state + "=")) {
+					value = saved;
+				} else {
+					value = state + "=" + hash(f);
+				}
+				p.setProperty(key, value);
+			}
+		} catch (final IOException e) {
+			return null;
+		} catch (final NoSuchAlgorithmException e) {
+			return null;
+		}
+		return p;
+	}
+
+	private static String getHash(String value) {
+		if (value == null) {
+			return "";
+		}
+		return value.substring(value.indexOf('=') + 1);
+	}
+
+	private static String getState(File f) {
+		if (!f.exists()) {
+			return "";
+		}
+		return f.length() + ":" + f.lastModified();
+	}
+
+	/**
+	 * Returns the content hash of the given file, or an empty string if the
+	 * file does not exist, since a missing subgraph is a state too.
+	 */
+	private static String hash(File f) throws IOException,
+			NoSuchAlgorithmException {
+		if (!f.exists()) {
+			return "";
+		}
+		final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		final FileInputStream in = new FileInputStream(f);
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		final StringBuilder b = new StringBuilder();
+		for (final byte x : digest.digest()) {
+			b.append(Character.forDigit((x >> 4) & 0xF, 16));
+			b.append(Character.forDigit(x & 0xF, 16));
+		}
+		return b.toString();
+	}
+}
@@ -20,15 +20,20 @@
  */
 package fr.umlv.unitex.io;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.util.Scanner;
 
 import fr.umlv.unitex.config.Preferences;
@@ -198,36 +203,114 @@ public enum Encoding {
 		return c == 0xFEFF;
 	}
 
+	/*
+	 * The number of bytes that are enough to guess the encoding of a file:
+	 * UTF8 files are checked on their first 4096 chars, at most
+	 */
+	private static final int HEAD_SIZE = 4 * 4096;
+
 	public static Encoding getEncoding(File f) {
-		if (UTF16LE.isValidEncoding(f))
-			return UTF16LE;
-		if (UTF16BE.isValidEncoding(f))
-			return UTF16BE;
-		if (UTF8.isValidEncoding(f))
-			return UTF8;
-		return null;
+		try {
+			final FileInputStream stream = new FileInputStream(f);
+			try {
+				final byte[] head = new byte[HEAD_SIZE];
+				final int n = readHead(stream, head);
+				return getEncoding(ByteBuffer.wrap(head, 0, n), f.length());
+			} finally {
+				stream.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Guesses the encoding of a file from its first bytes, like
+	 * <code>isValidEncoding</code> does, but without reading the file again.
+	 * The position of the buffer is not changed.
+	 * 
+	 * @param head
+	 *            the first bytes of the file
+	 * @param length
+	 *            the size of the file
+	 */
+	public static Encoding getEncoding(ByteBuffer head, long length) {
+		final int p = head.position();
+		if (length >= 2 && length % 2 == 0 && head.remaining() >= 2) {
+			final int a = head.get(p) & 0xFF;
+			final int b = head.get(p + 1) & 0xFF;
+			if (a == 0xFF && b == 0xFE)
+				return UTF16LE;
+			if (a == 0xFE && b == 0xFF)
+				return UTF16BE;
+		}
+		final ByteBuffer in = head.duplicate();
+		if (in.remaining() > HEAD_SIZE) {
+			in.limit(p + HEAD_SIZE);
+		}
+		final CharBuffer out = CharBuffer.allocate(in.remaining());
+		/*
+		 * The head may end in the middle of a char, which must not be seen as a
+		 * decoding error, unless it is the end of the file
+		 */
+		Charset.forName("UTF-8").newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.decode(in, out, in.limit() - p == length);
+		out.flip();
+		for (int i = 1; out.hasRemaining() && i < 4096; i++) {
+			final char c = out.get();
+			if (c == 65533) {
+				/* Decoding error */
+				return null;
+			}
+			if (c > 128) {
+				/* We stop on the first valid utf8 multi-byte char */
+				break;
+			}
+		}
+		return UTF8;
+	}
+
+	private static int readHead(InputStream stream, byte[] head)
+			throws IOException {
+		int n = 0;
+		int z;
+		while (n < head.length
+				&& (z = stream.read(head, n, head.length - n)) != -1) {
+			n += z;
+		}
+		return n;
 	}
 
 	/**
 	 * Returns a reader for the given file. For UTF16 encodings, we skip the
-	 * BOM.
+	 * BOM. The file is only opened once, its first bytes being used to guess
+	 * its encoding.
 	 */
 	public static InputStreamReader getInputStreamReader(File f) {
-		final Encoding e = getEncoding(f);
-		if (e == null)
-			return null;
 		try {
-			final InputStreamReader r = new InputStreamReader(
-					new FileInputStream(f), e.getCharset());
-			if (e == UTF16LE || e == UTF16BE) {
-				if (r.read() != 0xFEFF) {
-					/* Should not happen */
+			final BufferedInputStream stream = new BufferedInputStream(
+					new FileInputStream(f), HEAD_SIZE);
+			try {
+				stream.mark(HEAD_SIZE);
+				final byte[] head = new byte[HEAD_SIZE];
+				final int n = readHead(stream, head);
+				stream.reset();
+				final Encoding e = getEncoding(ByteBuffer.wrap(head, 0, n),
+						f.length());
+				if (e == null) {
+					stream.close();
 					return null;
 				}
+				if (e == UTF16LE || e == UTF16BE) {
+					stream.skip(2);
+				}
+				return new InputStreamReader(stream, e.getCharset());
+			} catch (final IOException e1) {
+				stream.close();
+				return null;
 			}
-			return r;
-		} catch (final UnsupportedEncodingException e1) {
-			return null;
 		} catch (final FileNotFoundException e1) {
 			return null;
 		} catch (final IOException e1) {
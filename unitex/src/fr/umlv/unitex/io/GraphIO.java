@@ -25,7 +25,6 @@ import java.awt.Font;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -88,6 +87,28 @@ public class GraphIO {
 		metadata = zone.getMetadata();
 	}
 
+	/**
+	 * Creates a sentence graph from boxes that have been built in memory, as
+	 * loadGraph(grf,true,...) would have read them from the .grf file written
+	 * by Tfst2Grf. Boxes are drawn with the given font, like Tfst2Grf's.
+	 */
+	public static GraphIO createSentenceGraph(
+			ArrayList<GenericGraphBox> boxes, int width, int height,
+			Font font, int fontSize) {
+		final GraphIO res = new GraphIO();
+		res.info.getInput().setFont(font);
+		res.info.getInput().setSize(fontSize);
+		res.info.setRightToLeft(ConfigManager.getManager()
+				.isRightToLeftForText(null)
+				|| ConfigManager.getManager()
+						.getGraphPresentationPreferences(null).isRightToLeft());
+		res.width = width;
+		res.height = height;
+		res.nBoxes = boxes.size();
+		res.boxes = boxes;
+		return res;
+	}
+
 	/**
 	 * This method loads a graph. 
 	 * If the specified graph is not found, it provides an option to create a new one with the same name.
@@ -100,7 +121,7 @@ public class GraphIO {
 			boolean emitErrorMessage) {
 		final GraphIO res = new GraphIO();
 		res.grf = grfFile;
-		InputStreamReader reader;
+		GrfReader reader;
 		if (!grfFile.exists()) {
 			if (emitErrorMessage) {
 				String[] options = { "Yes", "No" };
@@ -146,7 +167,7 @@ public class GraphIO {
 			return null;
 		}
 		try {
-			reader = Encoding.getInputStreamReader(grfFile);
+			reader = GrfReader.open(grfFile);
 			if (reader == null) {
 				if (emitErrorMessage)
 					JOptionPane.showMessageDialog(null,
@@ -155,7 +176,7 @@ public class GraphIO {
 							JOptionPane.ERROR_MESSAGE);
 				return null;
 			}
-			UnicodeIO.skipLine(reader); // ignoring #...
+			reader.skipLine(); // ignoring #...
 			res.readSize(reader);
 			res.readInputFont(reader);
 			res.readOutputFont(reader);
@@ -164,7 +185,7 @@ public class GraphIO {
 			res.readSubgraphColor(reader);
 			res.readCommentColor(reader);
 			res.readSelectedColor(reader);
-			UnicodeIO.skipLine(reader); // ignoring DBOXES
+			reader.skipLine(); // ignoring DBOXES
 			res.readDrawFrame(reader);
 			res.readDate(reader);
 			res.readFile(reader);
@@ -174,12 +195,12 @@ public class GraphIO {
 				res.info.setRightToLeft(ConfigManager.getManager()
 						.isRightToLeftForText(null));
 			}
-			UnicodeIO.skipLine(reader); // ignoring DRST
-			UnicodeIO.skipLine(reader); // ignoring FITS
-			UnicodeIO.skipLine(reader); // ignoring PORIENT
+			reader.skipLine(); // ignoring DRST
+			reader.skipLine(); // ignoring FITS
+			reader.skipLine(); // ignoring PORIENT
 			/* Reading metadata until we find the # line */
 			String line;
-			while (!(line = UnicodeIO.readLine(reader)).equals("#")) {
+			while (!(line = reader.readLine()).equals("#")) {
 				final int pos = line.indexOf("=");
 				if (pos == -1) {
 					if (emitErrorMessage)
@@ -218,7 +239,6 @@ public class GraphIO {
 				for (int i = 0; i < res.nBoxes; i++)
 					res.readGraphLine(reader, i);
 			}
-			reader.close();
 		} catch (final IllegalStateException e) {
 			if (emitErrorMessage)
 				JOptionPane.showMessageDialog(null, grfFile.getAbsolutePath()
@@ -243,49 +263,49 @@ public class GraphIO {
 		return res;
 	}
 
-	private void readSize(InputStreamReader r) throws IOException {
+	private void readSize(GrfReader r) throws IOException {
 		// skipping the chars preceeding the width and height
-		UnicodeIO.skipChars(r, 5);
+		r.skipChars(5);
 		char c;
 		// reading width
 		width = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			width = width * 10 + (c - '0');
 		if (z == -1)
 			throw new IOException("Number expected");
 		// reading height
 		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			height = height * 10 + (c - '0');
 		if (z == -1)
 			throw new IOException("Number expected");
 	}
 
-	private void readInputFont(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
-		String s = "";
+	private void readInputFont(GrfReader r) throws IOException {
+		r.skipChars(5);
+		final StringBuilder s = new StringBuilder();
 		char c;
 		int z = -1;
-		while ((z = (char) UnicodeIO.readChar(r)) != ':' && z != -1)
-			s = s + (char) z;
+		while ((z = (char) r.readChar()) != ':' && z != -1)
+			s.append((char) z);
 		if (z == -1)
 			throw new IOException("Error while reading input font information");
-		final boolean bold = ((z = UnicodeIO.readChar(r)) == 'B');
+		final boolean bold = ((z = r.readChar()) == 'B');
 		if (z != 'B' && z != ' ')
 			throw new IOException("Error while reading input font information");
 		if (z == -1)
 			throw new IOException("Error while reading input font information");
-		final boolean italic = ((z = UnicodeIO.readChar(r)) == 'I');
+		final boolean italic = ((z = r.readChar()) == 'I');
 		if (z != 'I' && z != ' ')
 			throw new IOException("Error while reading input font information");
 		if (z == -1)
 			throw new IOException("Error while reading input font information");
 		int size = 0;
 		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			size = size * 10 + (c - '0');
 		if (z == -1)
@@ -300,31 +320,31 @@ public class GraphIO {
 			style = Font.ITALIC;
 		else
 			style = Font.PLAIN;
-		info.getInput().setFont(new Font(s, style, (int) (size / 0.72)));
+		info.getInput().setFont(new Font(s.toString(), style, (int) (size / 0.72)));
 	}
 
-	private void readOutputFont(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
-		String s = "";
+	private void readOutputFont(GrfReader r) throws IOException {
+		r.skipChars(6);
+		final StringBuilder s = new StringBuilder();
 		char c;
 		int z = -1;
-		while ((z = (char) UnicodeIO.readChar(r)) != ':' && z != -1)
-			s = s + (char) z;
+		while ((z = (char) r.readChar()) != ':' && z != -1)
+			s.append((char) z);
 		if (z == -1)
 			throw new IOException("Error while reading output font information");
-		final boolean bold = ((z = UnicodeIO.readChar(r)) == 'B');
+		final boolean bold = ((z = r.readChar()) == 'B');
 		if (z != 'B' && z != ' ')
 			throw new IOException("Error while reading output font information");
 		if (z == -1)
 			throw new IOException("Error while reading output font information");
-		final boolean italic = ((z = UnicodeIO.readChar(r)) == 'I');
+		final boolean italic = ((z = r.readChar()) == 'I');
 		if (z != 'I' && z != ' ')
 			throw new IOException("Error while reading output font information");
 		if (z == -1)
 			throw new IOException("Error while reading output font information");
 		int size = 0;
 		z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			size = size * 10 + (c - '0');
 		if (z == -1)
@@ -339,15 +359,15 @@ public class GraphIO {
 			style = Font.ITALIC;
 		else
 			style = Font.PLAIN;
-		info.getOutput().setFont(new Font(s, style, (int) (size / 0.72)));
+		info.getOutput().setFont(new Font(s.toString(), style, (int) (size / 0.72)));
 	}
 
-	private void readBackgroundColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
+	private void readBackgroundColor(GrfReader r) throws IOException {
+		r.skipChars(7);
 		char c;
 		int n = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			n = n * 10 + (c - '0');
 		if (z == -1)
@@ -356,12 +376,12 @@ public class GraphIO {
 		info.setBackgroundColor(new Color(n));
 	}
 
-	private void readForegroundColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
+	private void readForegroundColor(GrfReader r) throws IOException {
+		r.skipChars(7);
 		char c;
 		int n = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			n = n * 10 + (c - '0');
 		if (z == -1)
@@ -370,12 +390,12 @@ public class GraphIO {
 		info.setForegroundColor(new Color(n));
 	}
 
-	private void readSubgraphColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
+	private void readSubgraphColor(GrfReader r) throws IOException {
+		r.skipChars(7);
 		char c;
 		int n = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			n = n * 10 + (c - '0');
 		if (z == -1)
@@ -384,12 +404,12 @@ public class GraphIO {
 		info.setSubgraphColor(new Color(n));
 	}
 
-	private void readSelectedColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
+	private void readSelectedColor(GrfReader r) throws IOException {
+		r.skipChars(7);
 		char c;
 		int n = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			n = n * 10 + (c - '0');
 		if (z == -1)
@@ -398,12 +418,12 @@ public class GraphIO {
 		info.setSelectedColor(new Color(n));
 	}
 
-	private void readCommentColor(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
+	private void readCommentColor(GrfReader r) throws IOException {
+		r.skipChars(7);
 		char c;
 		int n = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			n = n * 10 + (c - '0');
 		if (z == -1)
@@ -412,126 +432,136 @@ public class GraphIO {
 		info.setCommentColor(new Color(n));
 	}
 
-	private void readDrawFrame(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 7);
+	private void readDrawFrame(GrfReader r) throws IOException {
+		r.skipChars(7);
 		int z;
-		info.setFrame((z = UnicodeIO.readChar(r)) == 'y');
+		info.setFrame((z = r.readChar()) == 'y');
 		if (z != 'y' && z != 'n')
 			throw new IOException("Error while reading frame information");
-		if (-1 == UnicodeIO.readChar(r))
+		if (-1 == r.readChar())
 			throw new IOException("Error while reading frame information");
 	}
 
-	private void readDate(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
+	private void readDate(GrfReader r) throws IOException {
+		r.skipChars(6);
 		int z;
-		info.setDate((z = UnicodeIO.readChar(r)) == 'y');
+		info.setDate((z = r.readChar()) == 'y');
 		if (z != 'y' && z != 'n')
 			throw new IOException("Error while reading date information");
-		if (-1 == UnicodeIO.readChar(r))
+		if (-1 == r.readChar())
 			throw new IOException("Error while reading date information");
 	}
 
-	private void readFile(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 6);
+	private void readFile(GrfReader r) throws IOException {
+		r.skipChars(6);
 		int z;
-		info.setFilename((z = UnicodeIO.readChar(r)) == 'y');
+		info.setFilename((z = r.readChar()) == 'y');
 		if (z != 'y' && z != 'n')
 			throw new IOException("Error while reading file name information");
-		if (-1 == UnicodeIO.readChar(r))
+		if (-1 == r.readChar())
 			throw new IOException("Error while reading file name information");
 	}
 
-	private void readDirectory(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
+	private void readDirectory(GrfReader r) throws IOException {
+		r.skipChars(5);
 		int z;
-		info.setPathname((z = UnicodeIO.readChar(r)) == 'y');
+		info.setPathname((z = r.readChar()) == 'y');
 		if (z != 'y' && z != 'n')
 			throw new IOException("Error while reading path name information");
-		if (-1 == UnicodeIO.readChar(r))
+		if (-1 == r.readChar())
 			throw new IOException("Error while reading path name information");
 	}
 
-	private void readRightToLeft(InputStreamReader r) throws IOException {
-		UnicodeIO.skipChars(r, 5);
+	private void readRightToLeft(GrfReader r) throws IOException {
+		r.skipChars(5);
 		int z;
-		info.setRightToLeft((z = UnicodeIO.readChar(r)) == 'y');
+		info.setRightToLeft((z = r.readChar()) == 'y');
 		if (z != 'y' && z != 'n')
 			throw new IOException(
 					"Error while reading right to left information");
-		if (-1 == UnicodeIO.readChar(r))
+		if (-1 == r.readChar())
 			throw new IOException(
 					"Error while reading right to left information");
 	}
 
-	private void readBoxNumber(InputStreamReader r) throws IOException {
+	private void readBoxNumber(GrfReader r) throws IOException {
 		char c;
 		nBoxes = 0;
 		int z = -1;
-		while ((z = UnicodeIO.readChar(r)) != -1
+		while ((z = r.readChar()) != -1
 				&& UnicodeIO.isDigit((c = (char) z)))
 			nBoxes = nBoxes * 10 + (c - '0');
 		if (z == -1)
 			throw new IOException("Error while reading graph box number");
 	}
 
-	private void readGraphLine(InputStreamReader r, int n) throws IOException {
-		final GenericGraphBox g = boxes.get(n);
+	/**
+	 * Reads the quoted content of the box #n, unescaping it, and the space
+	 * that follows it.
+	 */
+	static String readBoxContent(GrfReader r, int n) throws IOException {
 		int z;
-		if ((z = UnicodeIO.readChar(r)) == 's') {
+		if ((z = r.readChar()) == 's') {
 			// is a "s" was read, then we read the " char
-			z = UnicodeIO.readChar(r);
+			z = r.readChar();
 		}
 		if (z != '"')
 			throw new IOException("Error #1 while reading graph box #" + n);
-		String s = "";
+		final StringBuilder s = new StringBuilder();
 		int c;
-		while ((c = UnicodeIO.readChar(r)) != '"') {
+		while ((c = r.readChar()) != '"') {
 			if (c == -1)
 				throw new IOException("Error #2 while reading graph box #" + n);
 			if (c == '\\') {
-				c = UnicodeIO.readChar(r);
+				c = r.readChar();
 				if (c == -1)
 					throw new IOException("Error #3 while reading graph box #"
 							+ n);
 				if (c != '\\') {
 					// case of \: \+ and \"
 					if (c == '"')
-						s = s + (char) c;
+						s.append((char) c);
 					else
-						s = s + "\\" + (char) c;
+						s.append('\\').append((char) c);
 				} else {
 					// case of \\\" that must be transformed into \"
-					c = UnicodeIO.readChar(r);
+					c = r.readChar();
 					if (c == -1)
 						throw new IOException(
 								"Error #4 while reading graph box #" + n);
 					if (c == '\\') {
 						// we are in the case \\\" -> \"
-						c = UnicodeIO.readChar(r);
+						c = r.readChar();
 						if (c == -1)
 							throw new IOException(
 									"Error #5 while reading graph box #" + n);
-						s = s + "\\" + (char) c;
+						s.append('\\').append((char) c);
 					} else {
 						// we are in the case \\a -> \\a
-						s = s + "\\\\";
+						s.append("\\\\");
 						if (c != '"')
-							s = s + (char) c;
+							s.append((char) c);
 						else
 							break;
 					}
 				}
 			} else
-				s = s + (char) c;
+				s.append((char) c);
 		}
 		// skipping the space after "
-		if (UnicodeIO.readChar(r) != ' ')
+		if (r.readChar() != ' ')
 			throw new IOException("Error #6 while reading graph box #" + n);
+		return s.toString();
+	}
+
+	private void readGraphLine(GrfReader r, int n) throws IOException {
+		final GenericGraphBox g = boxes.get(n);
+		final String s = readBoxContent(r, n);
+		int c;
 		// reading the X coordinate
 		int x = 0;
 		int neg = 1;
-		c = UnicodeIO.readChar(r);
+		c = r.readChar();
 		if (c == -1)
 			throw new IOException("Error #7 while reading graph box #" + n);
 		if (c == '-') {
@@ -542,7 +572,7 @@ public class GraphIO {
 			throw new IOException("Error #8 while reading graph box #" + n);
 		}
 		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c)) {
+		while ((c = r.readChar()) != -1 && UnicodeIO.isDigit((char) c)) {
 			x = x * 10 + ((char) c - '0');
 		}
 		if (c == -1)
@@ -551,7 +581,7 @@ public class GraphIO {
 		// reading the Y coordinate
 		int y = 0;
 		neg = 1;
-		c = UnicodeIO.readChar(r);
+		c = r.readChar();
 		if (c == -1)
 			throw new IOException("Error #10 while reading graph box #" + n);
 		if (c == '-') {
@@ -562,7 +592,7 @@ public class GraphIO {
 			throw new IOException("Error #11 while reading graph box #" + n);
 		}
 		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c)) {
+		while ((c = r.readChar()) != -1 && UnicodeIO.isDigit((char) c)) {
 			y = y * 10 + ((char) c - '0');
 		}
 		if (c == -1)
@@ -592,14 +622,14 @@ public class GraphIO {
 		}
 		int trans = 0;
 		c = -1;
-		while ((c = UnicodeIO.readChar(r)) != -1 && UnicodeIO.isDigit((char) c))
+		while ((c = r.readChar()) != -1 && UnicodeIO.isDigit((char) c))
 			trans = trans * 10 + ((char) c - '0');
 		if (c == -1)
 			throw new IOException("Error #13 while reading graph box #" + n);
 		for (int j = 0; j < trans; j++) {
 			int dest = 0;
 			c = -1;
-			while ((c = UnicodeIO.readChar(r)) != -1
+			while ((c = r.readChar()) != -1
 					&& UnicodeIO.isDigit((char) c))
 				dest = dest * 10 + ((char) c - '0');
 			if (c == -1)
@@ -607,7 +637,7 @@ public class GraphIO {
 			g.addTransitionTo(boxes.get(dest));
 		}
 		// skipping the end-of-line
-		final int foo = UnicodeIO.readChar(r);
+		final int foo = r.readChar();
 		if (foo != '\n')
 			throw new IOException("Error #15 while reading graph box #" + n);
 	}
@@ -799,47 +829,47 @@ public class GraphIO {
 		}
 	}
 
-	private void readSentenceGraphLine(InputStreamReader r, int n) {
+	private void readSentenceGraphLine(GrfReader r, int n) {
 		final TfstGraphBox g = (TfstGraphBox) boxes.get(n);
-		if (UnicodeIO.readChar(r) == 's') {
+		if (r.readChar() == 's') {
 			// is a "s" was read, then we read the " char
-			UnicodeIO.readChar(r);
+			r.readChar();
 		}
-		String s = "";
+		final StringBuilder s = new StringBuilder();
 		char c;
-		while ((c = (char) UnicodeIO.readChar(r)) != '"') {
+		while ((c = (char) r.readChar()) != '"') {
 			if (c == '\\') {
-				c = (char) UnicodeIO.readChar(r);
+				c = (char) r.readChar();
 				if (c != '\\') {
 					// case of \: \+ and \"
 					if (c == '"')
-						s = s + c;
+						s.append(c);
 					else
-						s = s + "\\" + c;
+						s.append('\\').append(c);
 				} else {
 					// case of \\\" that must must be transformed into \"
-					c = (char) UnicodeIO.readChar(r);
+					c = (char) r.readChar();
 					if (c == '\\') {
 						// we are in the case \\\" -> \"
-						c = (char) UnicodeIO.readChar(r);
-						s = s + "\\" + c;
+						c = (char) r.readChar();
+						s.append('\\').append(c);
 					} else {
 						// we are in the case \\a -> \\a
-						s = s + "\\\\" + c;
+						s.append("\\\\").append(c);
 					}
 				}
 			} else
-				s = s + c;
+				s.append(c);
 		}
 		// skipping the space after "
-		UnicodeIO.readChar(r);
+		r.readChar();
 		// reading the X coordinate
 		int x = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
+		while (UnicodeIO.isDigit((c = (char) r.readChar())))
 			x = x * 10 + (c - '0');
 		// reading the Y coordinate
 		int y = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
+		while (UnicodeIO.isDigit((c = (char) r.readChar())))
 			y = y * 10 + (c - '0');
 		if (ConfigManager.getManager().getGraphPresentationPreferences(null)
 				.isRightToLeft()
@@ -858,7 +888,7 @@ public class GraphIO {
 		g.setY_out(g.getY_in());
 		if (n != 1) {
 			// 1 is the final state, which content is <E>
-			g.setContentWithBounds(s);
+			g.setContentWithBounds(s.toString());
 			// we will need to call g.update() to size the box according to the
 			// text
 		} else {
@@ -871,16 +901,16 @@ public class GraphIO {
 			g.setX_out(g.getX_in() + 25);
 		}
 		int trans = 0;
-		while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
+		while (UnicodeIO.isDigit((c = (char) r.readChar())))
 			trans = trans * 10 + (c - '0');
 		for (int j = 0; j < trans; j++) {
 			int dest = 0;
-			while (UnicodeIO.isDigit((c = (char) UnicodeIO.readChar(r))))
+			while (UnicodeIO.isDigit((c = (char) r.readChar())))
 				dest = dest * 10 + (c - '0');
 			g.addTransitionTo(boxes.get(dest));
 		}
 		// skipping the end-of-line
-		UnicodeIO.readChar(r);
+		r.readChar();
 	}
 
 	/**
@@ -0,0 +1,290 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import fr.umlv.unitex.graphtools.BoxTokenizer;
+
+/**
+ * This class is a read-only view of a .grf file, for the code that analyzes
+ * graphs without displaying them. Unlike <code>GraphIO</code>, it does not
+ * create any graphical box: box lines are stored in flat arrays, box #i owning
+ * the lines from <code>lineStart[i]</code> to <code>lineStart[i+1]</code>,
+ * and so are transitions. Lines and outputs are interned, since the same
+ * subgraph names and tags appear in many boxes and graphs.
+ * 
+ * As in <code>GraphIO</code>, box #0 is the initial state and box #1 is the
+ * final state.
+ */
+public final class GraphModel {
+	public static final int INITIAL = 0;
+	public static final int FINAL = 1;
+
+	private final File grf;
+	private final int[] lineStart;
+	private final String[] lines;
+	private final boolean[] greyed;
+	private final String[] transductions;
+	private final boolean[] commentBoxes;
+	private final int[] transitionStart;
+	private final int[] transitions;
+
+	private GraphModel(File grf, int[] lineStart, String[] lines,
+			boolean[] greyed, String[] transductions, boolean[] commentBoxes,
+			int[] transitionStart, int[] transitions) {
+		this.grf = grf;
+		this.lineStart = lineStart;
+		this.lines = lines;
+		this.greyed = greyed;
+		this.transductions = transductions;
+		this.commentBoxes = commentBoxes;
+		this.transitionStart = transitionStart;
+		this.transitions = transitions;
+	}
+
+	/**
+	 * Loads the given graph. No message is shown to the user: errors are
+	 * reported by the exception.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read or is not a valid graph
+	 */
+	public static GraphModel load(File grfFile) throws IOException {
+		final GrfReader r = GrfReader.open(grfFile);
+		if (r == null) {
+			throw new IOException(grfFile.getAbsolutePath()
+					+ " is not a Unicode graph");
+		}
+		r.skipLine(); // ignoring #...
+		/* The presentation and the metadata are of no use here */
+		String line;
+		while (!"#".equals(line = r.readLine())) {
+			if (line == null) {
+				throw new IOException("Error while reading graph header");
+			}
+		}
+		final int nBoxes = readNumber(r, -1, false);
+		if (nBoxes < 2) {
+			throw new IOException("Error while reading graph box number");
+		}
+		final int[] lineStart = new int[nBoxes + 1];
+		final String[] transductions = new String[nBoxes];
+		final boolean[] commentBoxes = new boolean[nBoxes];
+		final int[] transitionStart = new int[nBoxes + 1];
+		final ArrayList<String> boxLines = new ArrayList<String>();
+		final ArrayList<Boolean> boxGreyed = new ArrayList<Boolean>();
+		/* Transitions are read as they are, and filtered afterwards */
+		int[] trans = new int[2 * nBoxes];
+		int nTrans = 0;
+		final ArrayList<String> tmp = new ArrayList<String>();
+		final ArrayList<Boolean> tmpGreyed = new ArrayList<Boolean>();
+		for (int n = 0; n < nBoxes; n++) {
+			final String content = GraphIO.readBoxContent(r, n);
+			/* Coordinates are of no use here */
+			readNumber(r, n, true);
+			readNumber(r, n, true);
+			lineStart[n] = boxLines.size();
+			transductions[n] = "";
+			if (n != FINAL) {
+				if (content.equals("")) {
+					throw new IOException(
+							"The graph contains an unexpected empty box that is not the final state");
+				}
+				tmp.clear();
+				tmpGreyed.clear();
+				if (BoxTokenizer.tokenizeCommentBox(content, tmp)) {
+					commentBoxes[n] = true;
+					for (int j = 0; j < tmp.size(); j++) {
+						tmpGreyed.add(Boolean.FALSE);
+					}
+				} else {
+					transductions[n] = BoxTokenizer.tokenize(content, tmp,
+							tmpGreyed).intern();
+				}
+				for (int j = 0; j < tmp.size(); j++) {
+					boxLines.add(tmp.get(j).intern());
+					boxGreyed.add(tmpGreyed.get(j));
+				}
+			}
+			final int nOut = readNumber(r, n, false);
+			transitionStart[n] = nTrans;
+			for (int j = 0; j < nOut; j++) {
+				final int dest = readNumber(r, n, false);
+				if (dest >= nBoxes) {
+					throw new IOException("Invalid transition in graph box #"
+							+ n);
+				}
+				if (nTrans == trans.length) {
+					trans = Arrays.copyOf(trans, 2 * nTrans);
+				}
+				trans[nTrans++] = dest;
+			}
+			// skipping the end-of-line
+			if (r.readChar() != '\n')
+				throw new IOException("Error while reading graph box #" + n);
+		}
+		lineStart[nBoxes] = boxLines.size();
+		transitionStart[nBoxes] = nTrans;
+		final String[] lines = boxLines.toArray(new String[boxLines.size()]);
+		final boolean[] greyed = new boolean[lines.length];
+		for (int i = 0; i < greyed.length; i++) {
+			greyed[i] = boxGreyed.get(i);
+		}
+		final int[] transitions = filterTransitions(trans, transitionStart,
+				commentBoxes);
+		return new GraphModel(grfFile, lineStart, lines, greyed, transductions,
+				commentBoxes, transitionStart, transitions);
+	}
+
+	/**
+	 * Removes the transitions that the graph editor would not create: those
+	 * that start from the final state, those from or to a comment box, and
+	 * duplicates. transitionStart is updated accordingly.
+	 */
+	private static int[] filterTransitions(int[] trans,
+			int[] transitionStart, boolean[] commentBoxes) {
+		final int nBoxes = commentBoxes.length;
+		int n = 0;
+		int start = 0;
+		for (int i = 0; i < nBoxes; i++) {
+			final int end = transitionStart[i + 1];
+			transitionStart[i] = n;
+			if (i != FINAL && !commentBoxes[i]) {
+				for (int j = start; j < end; j++) {
+					final int dest = trans[j];
+					if (commentBoxes[dest]) {
+						continue;
+					}
+					boolean duplicate = false;
+					for (int k = transitionStart[i]; k < n; k++) {
+						if (trans[k] == dest) {
+							duplicate = true;
+							break;
+						}
+					}
+					if (!duplicate) {
+						trans[n++] = dest;
+					}
+				}
+			}
+			start = end;
+		}
+		transitionStart[nBoxes] = n;
+		return Arrays.copyOf(trans, n);
+	}
+
+	/**
+	 * Reads a decimal number and the char that follows it.
+	 * 
+	 * @param n
+	 *            the number of the box being read, for error messages
+	 */
+	private static int readNumber(GrfReader r, int n, boolean signed)
+			throws IOException {
+		int c = r.readChar();
+		int neg = 1;
+		if (signed && c == '-') {
+			neg = -1;
+			c = r.readChar();
+		}
+		if (c == -1 || !UnicodeIO.isDigit((char) c)) {
+			throw new IOException("Error while reading graph box #" + n);
+		}
+		int value = 0;
+		do {
+			value = value * 10 + (c - '0');
+		} while ((c = r.readChar()) != -1 && UnicodeIO.isDigit((char) c));
+		if (c == -1) {
+			throw new IOException("Error while reading graph box #" + n);
+		}
+		return value * neg;
+	}
+
+	public File getFile() {
+		return grf;
+	}
+
+	public int getBoxCount() {
+		return transductions.length;
+	}
+
+	public int getLineCount(int box) {
+		return lineStart[box + 1] - lineStart[box];
+	}
+
+	public String getLine(int box, int i) {
+		return lines[lineStart[box] + i];
+	}
+
+	/**
+	 * Returns true if the line #i of the given box is a subgraph call.
+	 */
+	public boolean isGreyed(int box, int i) {
+		return greyed[lineStart[box] + i];
+	}
+
+	/**
+	 * Returns the index of the given line in the given box, or -1.
+	 */
+	public int indexOfLine(int box, String line) {
+		for (int i = lineStart[box]; i < lineStart[box + 1]; i++) {
+			if (lines[i].equals(line)) {
+				return i - lineStart[box];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the output of the given box, or "" if there is none.
+	 */
+	public String getTransduction(int box) {
+		return transductions[box];
+	}
+
+	public boolean isCommentBox(int box) {
+		return commentBoxes[box];
+	}
+
+	public int getTransitionCount(int box) {
+		return transitionStart[box + 1] - transitionStart[box];
+	}
+
+	/**
+	 * Returns the destination of the transition #i of the given box.
+	 */
+	public int getTransition(int box, int i) {
+		return transitions[transitionStart[box] + i];
+	}
+
+	public boolean hasTransition(int src, int dest) {
+		for (int i = transitionStart[src]; i < transitionStart[src + 1]; i++) {
+			if (transitions[i] == dest) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
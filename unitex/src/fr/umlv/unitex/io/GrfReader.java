@@ -0,0 +1,139 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class is used to read .grf files. The whole file is read and decoded
+ * at once, and then chars are taken from the buffer, so that reading a char
+ * costs neither a system call nor a decoder call. Chars are returned like
+ * <code>UnicodeIO</code> does.
+ */
+final class GrfReader {
+	private final CharBuffer chars;
+	private final int length;
+	private int pos = 0;
+
+	private GrfReader(CharBuffer chars) {
+		this.chars = chars;
+		this.length = chars.limit();
+	}
+
+	/**
+	 * Reads and decodes the given file. The encoding is guessed from its first
+	 * bytes, and the BOM is skipped for UTF16 encodings.
+	 * 
+	 * @return null if the file is not a Unicode one
+	 */
+	static GrfReader open(File f) throws IOException {
+		final FileInputStream in = new FileInputStream(f);
+		final ByteBuffer bytes;
+		try {
+			final FileChannel channel = in.getChannel();
+			final long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File too large");
+			}
+			bytes = ByteBuffer.allocate((int) size);
+			while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+				/* */
+			}
+			bytes.flip();
+		} finally {
+			in.close();
+		}
+		final Encoding e = Encoding.getEncoding(bytes, bytes.limit());
+		if (e == null) {
+			return null;
+		}
+		if (e == Encoding.UTF16LE || e == Encoding.UTF16BE) {
+			bytes.position(2);
+		}
+		return new GrfReader(Charset.forName(e.getCharset()).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE)
+				.decode(bytes));
+	}
+
+	/**
+	 * Reads a char. If it is <code>0x0D</code>, the following char is skipped
+	 * and <code>'\n'</code> is returned.
+	 * 
+	 * @return the char, or -1 at the end of the file
+	 */
+	int readChar() {
+		if (pos == length) {
+			return -1;
+		}
+		final char c = chars.get(pos++);
+		if (c == 0x0d) {
+			if (pos != length) {
+				pos++;
+			}
+			return '\n';
+		}
+		return c;
+	}
+
+	void skipChars(int n) {
+		for (int i = 0; i < n; i++) {
+			readChar();
+		}
+	}
+
+	void skipLine() {
+		int c;
+		while ((c = readChar()) != '\n' && c != -1) {
+			/* */
+		}
+	}
+
+	/**
+	 * Reads a line. The \n, if any, is not put in the result.
+	 * 
+	 * @return the line, or null at the end of file
+	 */
+	String readLine() {
+		if (pos == length) {
+			return null;
+		}
+		final int start = pos;
+		while (pos != length) {
+			final char c = chars.get(pos);
+			if (c == '\n' || c == 0x0d) {
+				break;
+			}
+			pos++;
+		}
+		/* The position of the buffer is never moved, so it is 0 */
+		final String s = chars.subSequence(start, pos).toString();
+		readChar();
+		return s;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is a read-only memory mapping of a file that may be larger than 2Gb. As
+ * a single MappedByteBuffer cannot address more than 2Gb, the file is mapped
+ * as a sequence of windows of WINDOW_SIZE bytes, addressed with long
+ * positions. Reads that cross a window boundary are split between the windows
+ * involved.
+ * 
+ * Each window also maps WINDOW_OVERLAP bytes of the next one, so that a char
+ * that starts in a window can always be decoded from this window alone.
+ * 
+ * Mappings are released by close() through MappedFileRegistry. Threads that
+ * read the file in the background must be surrounded by startReading() and
+ * stopReading(), so that the mapping is not released under their feet.
+ */
+public class MappedFile {
+	public static final long WINDOW_SIZE = 1L << 30;
+	static final int WINDOW_OVERLAP = 16;
+	private final File file;
+	private final long length;
+	private volatile MappedByteBuffer[] windows;
+	private int readers = 0;
+
+	private MappedFile(File file, long length, MappedByteBuffer[] windows) {
+		this.file = file;
+		this.length = length;
+		this.windows = windows;
+	}
+
+	/**
+	 * Maps the given file, skipping its 'offset' first bytes. Position 0 of
+	 * the returned object corresponds to the byte #offset of the file.
+	 */
+	public static MappedFile map(File f, long offset) throws IOException {
+		final FileInputStream stream = new FileInputStream(f);
+		try {
+			final FileChannel channel = stream.getChannel();
+			final long length = Math.max(0, channel.size() - offset);
+			final int n = (int) ((length + WINDOW_SIZE - 1) / WINDOW_SIZE);
+			final MappedByteBuffer[] windows = new MappedByteBuffer[n];
+			for (int i = 0; i < n; i++) {
+				final long start = i * WINDOW_SIZE;
+				final long end = Math.min(length, start + WINDOW_SIZE
+						+ WINDOW_OVERLAP);
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset
+						+ start, end - start);
+			}
+			final MappedFile mappedFile = new MappedFile(f, length, windows);
+			MappedFileRegistry.register(mappedFile);
+			return mappedFile;
+		} finally {
+			/*
+			 * Closing the channel does not invalidate the mappings, and we
+			 * don't want to keep a file descriptor for nothing
+			 */
+			stream.close();
+		}
+	}
+
+	public static MappedFile map(File f) throws IOException {
+		return map(f, 0);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	private MappedByteBuffer window(long pos) {
+		final MappedByteBuffer[] w = windows;
+		if (w == null) {
+			throw new IllegalStateException("Mapped file has been closed: "
+					+ file);
+		}
+		return w[(int) (pos / WINDOW_SIZE)];
+	}
+
+	public byte get(long pos) {
+		return window(pos).get((int) (pos % WINDOW_SIZE));
+	}
+
+	/**
+	 * Copies len bytes starting at pos into dst.
+	 */
+	public void get(long pos, byte[] dst, int offset, int len) {
+		while (len > 0) {
+			final ByteBuffer b = window(pos).duplicate();
+			final int start = (int) (pos % WINDOW_SIZE);
+			final int n = (int) Math.min(len, WINDOW_SIZE - start);
+			b.position(start);
+			b.get(dst, offset, n);
+			pos += n;
+			offset += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Returns a new buffer positioned at pos. It is a view on the window that
+	 * contains pos, so it can only be used until getWindowEnd(pos), plus the
+	 * few bytes needed to finish decoding a char.
+	 */
+	public ByteBuffer getBufferAt(long pos) {
+		final ByteBuffer b = window(pos).duplicate();
+		b.position((int) (pos % WINDOW_SIZE));
+		return b;
+	}
+
+	/**
+	 * Returns the position of the first byte that does not belong to the
+	 * window containing pos.
+	 */
+	public long getWindowEnd(long pos) {
+		return Math.min(length, (pos / WINDOW_SIZE + 1) * WINDOW_SIZE);
+	}
+
+	/**
+	 * Returns a buffer whose content is the len bytes starting at pos. If
+	 * these bytes are all in the same window, the result is a view on the
+	 * mapping; otherwise, it is a copy.
+	 */
+	public ByteBuffer slice(long pos, int len) {
+		final int start = (int) (pos % WINDOW_SIZE);
+		if (start + (long) len <= WINDOW_SIZE + WINDOW_OVERLAP
+				&& pos + len <= length) {
+			final ByteBuffer b = window(pos).duplicate();
+			b.limit(start + len);
+			b.position(start);
+			return b.slice();
+		}
+		final byte[] tmp = new byte[len];
+		get(pos, tmp, 0, len);
+		return ByteBuffer.wrap(tmp);
+	}
+
+	/**
+	 * Declares that the current thread is going to read this file in the
+	 * background.
+	 * 
+	 * @return false if the file has already been closed
+	 */
+	public synchronized boolean startReading() {
+		if (windows == null) {
+			return false;
+		}
+		readers++;
+		return true;
+	}
+
+	public synchronized void stopReading() {
+		readers--;
+		notifyAll();
+	}
+
+	/**
+	 * Makes the file unreadable and returns its windows, once all background
+	 * readers have stopped. If they are still reading after timeout ms,
+	 * returns null.
+	 */
+	synchronized MappedByteBuffer[] detach(long timeout) {
+		final MappedByteBuffer[] w = windows;
+		if (w == null) {
+			/* Already closed */
+			return null;
+		}
+		windows = null;
+		final long end = System.currentTimeMillis() + timeout;
+		long remaining = timeout;
+		while (readers > 0 && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			remaining = end - System.currentTimeMillis();
+		}
+		return (readers > 0) ? null : w;
+	}
+
+	/**
+	 * Releases the mapping. Any further read will fail.
+	 */
+	public void close() {
+		MappedFileRegistry.release(this);
+	}
+}
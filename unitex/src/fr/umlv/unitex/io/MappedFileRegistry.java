@@ -0,0 +1,142 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class keeps track of all the files mapped with MappedFile, and releases
+ * their mappings explicitly when they are closed. Otherwise, a mapping is only
+ * released when the buffer is garbage collected, which means that the file
+ * cannot be deleted or overwritten on Windows until then.
+ * 
+ * There is no public API to unmap a buffer, so we use the cleaner of the JVM
+ * when it is accessible: Unsafe.invokeCleaner on Java 9+, or the cleaner of
+ * the direct buffer on Java 7/8. If none is available, buffers are simply left
+ * to the garbage collector.
+ */
+public class MappedFileRegistry {
+	/**
+	 * Maximum time we wait for background readers of a file before unmapping
+	 * it.
+	 */
+	static final long RELEASE_TIMEOUT = 2000;
+	/*
+	 * Weak keys, so that a mapped file that is forgotten without being closed
+	 * can still be garbage collected.
+	 */
+	private static final Map<MappedFile, File> mappedFiles = Collections
+			.synchronizedMap(new WeakHashMap<MappedFile, File>());
+	private static Object unsafe;
+	private static Method invokeCleaner;
+	private static Method getCleaner;
+	private static Method clean;
+	static {
+		try {
+			/* Java 9+ */
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+					ByteBuffer.class);
+			final Field f = unsafeClass.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+		} catch (final Exception e) {
+			invokeCleaner = null;
+			try {
+				/* Java 7/8 */
+				getCleaner = Class.forName("sun.nio.ch.DirectBuffer")
+						.getMethod("cleaner");
+				clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			} catch (final Exception e2) {
+				getCleaner = null;
+				clean = null;
+			}
+		}
+	}
+
+	private MappedFileRegistry() {
+		/* No instance */
+	}
+
+	static void register(MappedFile f) {
+		mappedFiles.put(f, f.getFile());
+	}
+
+	/**
+	 * Releases the mapping of the given file. If some background readers are
+	 * still working on it, we wait for them at most RELEASE_TIMEOUT ms. If they
+	 * have not finished by then, we don't take the risk of unmapping memory
+	 * that is being read, and the buffers are left to the garbage collector.
+	 */
+	static void release(MappedFile f) {
+		mappedFiles.remove(f);
+		final MappedByteBuffer[] windows = f.detach(RELEASE_TIMEOUT);
+		if (windows == null) {
+			return;
+		}
+		for (final MappedByteBuffer b : windows) {
+			unmap(b);
+		}
+	}
+
+	/**
+	 * Returns true if mappings can be explicitly released on this JVM.
+	 */
+	public static boolean canUnmap() {
+		return invokeCleaner != null || getCleaner != null;
+	}
+
+	/**
+	 * Returns the list of the files that are currently mapped.
+	 */
+	public static ArrayList<File> getMappedFiles() {
+		synchronized (mappedFiles) {
+			return new ArrayList<File>(mappedFiles.values());
+		}
+	}
+
+	private static void unmap(MappedByteBuffer b) {
+		try {
+			if (invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, b);
+			} else if (getCleaner != null) {
+				final Object cleaner = getCleaner.invoke(b);
+				if (cleaner != null) {
+					clean.invoke(cleaner);
+				}
+			}
+		} catch (final Exception e) {
+			/*
+			 * Should not happen, but if it does, the buffer will be released
+			 * by the garbage collector
+			 */
+			e.printStackTrace();
+		}
+	}
+}
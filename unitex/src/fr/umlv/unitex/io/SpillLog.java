@@ -0,0 +1,276 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class stores on disk the old elements of a long list, like the lines
+ * of the console, so that they don't have to be kept in memory. Elements are
+ * appended by batches to segment files of SEGMENT_SIZE elements. When there
+ * are more than maxSegments segments, the oldest one is deleted, so that the
+ * disk usage is bounded too.
+ * 
+ * Elements are read back by pages of PAGE_SIZE elements, and the last read
+ * pages are cached, so that scrolling through old elements only reads the
+ * disk once per page. As a page is always decoded from its start, a segment
+ * only keeps in memory the offsets of its pages, not the ones of all its
+ * elements.
+ * 
+ * Segment files are deleted as soon as they are dropped or the log is
+ * cleared, so the owner of a log must clear it once it is not used anymore.
+ * The files of the logs that are still in use are deleted when the JVM
+ * exits.
+ */
+public class SpillLog<T> {
+	/**
+	 * This interface describes how to write and read back an element.
+	 */
+	public interface Codec<T> {
+		void write(DataOutput out, T t) throws IOException;
+
+		T read(DataInput in) throws IOException;
+	}
+
+	static final int SEGMENT_SIZE = 1 << 16;
+	static final int PAGE_SIZE = 256;
+	static final int CACHED_PAGES = 4;
+	private final Codec<T> codec;
+	private final int maxSegments;
+	private final ArrayList<Segment> segments = new ArrayList<Segment>();
+	private int size = 0;
+	/*
+	 * Cached pages, identified by their first element. A page can only be
+	 * cached in slot (first / PAGE_SIZE) % CACHED_PAGES.
+	 */
+	private final int[] cachedPageStarts = new int[CACHED_PAGES];
+	private final Object[][] cachedPages = new Object[CACHED_PAGES][];
+
+	/* The segment files that exist, to be deleted when the JVM exits */
+	static final Set<File> files = new HashSet<File>();
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				synchronized (files) {
+					for (final File f : files) {
+						f.delete();
+					}
+				}
+			}
+		});
+	}
+
+	public SpillLog(Codec<T> codec, int maxSegments) {
+		this.codec = codec;
+		this.maxSegments = maxSegments;
+	}
+
+	/**
+	 * Returns the number of elements in the log.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Appends elements to the log. If the log becomes too big, its oldest
+	 * elements are removed, which shifts the indices of all the others.
+	 * 
+	 * @return the number of elements that have been removed from the
+	 *         beginning of the log
+	 */
+	public int append(List<T> elements) {
+		int done = 0;
+		while (done < elements.size()) {
+			Segment last = segments.isEmpty() ? null : segments.get(segments
+					.size() - 1);
+			if (last == null || last.count == SEGMENT_SIZE) {
+				try {
+					last = new Segment();
+				} catch (final IOException e) {
+					/* If we cannot write the log, old elements are lost */
+					e.printStackTrace();
+					return dropAll() + elements.size() - done;
+				}
+				segments.add(last);
+			}
+			final int n = Math.min(elements.size() - done, SEGMENT_SIZE
+					- last.count);
+			try {
+				last.append(elements.subList(done, done + n));
+			} catch (final IOException e) {
+				e.printStackTrace();
+				return dropAll() + elements.size() - done;
+			}
+			size += n;
+			done += n;
+		}
+		int removed = 0;
+		while (segments.size() > maxSegments) {
+			final Segment s = segments.remove(0);
+			removed += s.count;
+			s.delete();
+		}
+		if (removed != 0) {
+			size -= removed;
+			clearCache();
+		}
+		return removed;
+	}
+
+	private int dropAll() {
+		final int n = size;
+		clear();
+		return n;
+	}
+
+	/**
+	 * Returns the element #i, or null if it cannot be read.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException(i + " is not in [0;" + size
+					+ "[");
+		}
+		final int first = i - i % PAGE_SIZE;
+		final int slot = (first / PAGE_SIZE) % CACHED_PAGES;
+		if (cachedPages[slot] == null || cachedPageStarts[slot] != first) {
+			/* Segments are made of whole pages */
+			final Segment s = segments.get(first / SEGMENT_SIZE);
+			final int start = first % SEGMENT_SIZE;
+			try {
+				cachedPages[slot] = s.read(start,
+						Math.min(start + PAGE_SIZE, s.count));
+			} catch (final IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+			cachedPageStarts[slot] = first;
+		}
+		return (T) cachedPages[slot][i - first];
+	}
+
+	/**
+	 * Removes all the elements, and deletes the files of the log.
+	 */
+	public void clear() {
+		for (final Segment s : segments) {
+			s.delete();
+		}
+		segments.clear();
+		size = 0;
+		clearCache();
+	}
+
+	private void clearCache() {
+		for (int i = 0; i < CACHED_PAGES; i++) {
+			cachedPages[i] = null;
+		}
+	}
+
+	/**
+	 * A segment file, with the offsets of its pages.
+	 */
+	class Segment {
+		private final File file;
+		private final RandomAccessFile raf;
+		private final long[] pageOffsets = new long[SEGMENT_SIZE / PAGE_SIZE];
+		private long length = 0;
+		int count = 0;
+
+		Segment() throws IOException {
+			file = File.createTempFile("unitex-log", ".bin");
+			synchronized (files) {
+				files.add(file);
+			}
+			raf = new RandomAccessFile(file, "rw");
+		}
+
+		void append(List<T> elements) throws IOException {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			final long base = length;
+			final int oldCount = count;
+			for (final T t : elements) {
+				if (count % PAGE_SIZE == 0) {
+					pageOffsets[count / PAGE_SIZE] = base + out.size();
+				}
+				codec.write(out, t);
+				count++;
+			}
+			try {
+				raf.seek(base);
+				raf.write(bytes.toByteArray());
+			} catch (final IOException e) {
+				count = oldCount;
+				throw e;
+			}
+			length = base + out.size();
+		}
+
+		/**
+		 * Reads the elements from #from to #to excluded, from must be the
+		 * first element of a page, and to the first one of the next page or
+		 * the number of elements of the segment.
+		 */
+		Object[] read(int from, int to) throws IOException {
+			final long start = pageOffsets[from / PAGE_SIZE];
+			final long end = (to == count) ? length : pageOffsets[to
+					/ PAGE_SIZE];
+			final byte[] bytes = new byte[(int) (end - start)];
+			raf.seek(start);
+			raf.readFully(bytes);
+			final DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(bytes));
+			final Object[] page = new Object[to - from];
+			for (int i = 0; i < page.length; i++) {
+				page[i] = codec.read(in);
+			}
+			return page;
+		}
+
+		void delete() {
+			try {
+				raf.close();
+			} catch (final IOException e) {
+				/* Nothing to do */
+			}
+			file.delete();
+			synchronized (files) {
+				files.remove(file);
+			}
+		}
+	}
+}
@@ -71,13 +71,13 @@ public class UnicodeIO {
 	 */
 	public static String readLine(InputStreamReader r) {
 		int c;
-		String s = "";
+		final StringBuilder s = new StringBuilder();
 		while ((c = readChar(r)) != '\n' && c != -1) {
-			s = s + (char) c;
+			s.append((char) c);
 		}
-		if (c == -1 && s.equals(""))
+		if (c == -1 && s.length() == 0)
 			return null;
-		return s;
+		return s.toString();
 	}
 
 	/**
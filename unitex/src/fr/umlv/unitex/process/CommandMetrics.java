@@ -0,0 +1,127 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+/**
+ * The resources used by one command: its wall time, the CPU time of its
+ * process, the peak of its resident memory and the number of bytes it has
+ * read and written. A value that could not be measured is -1.
+ * 
+ * The values of a program are sampled by a ProcessSampler, so they may be
+ * lower than the real ones, which isLowerBound tells.
+ */
+public class CommandMetrics {
+	private final String program;
+	private final String commandLine;
+	private final long start;
+	private final long wallMillis;
+	private final long cpuMillis;
+	private final long peakRssKb;
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final boolean success;
+	private final boolean lowerBound;
+
+	public CommandMetrics(String program, String commandLine, long start,
+			long wallMillis, long cpuMillis, long peakRssKb, long bytesRead,
+			long bytesWritten, boolean success) {
+		this(program, commandLine, start, wallMillis, cpuMillis, peakRssKb,
+				bytesRead, bytesWritten, success, false);
+	}
+
+	public CommandMetrics(String program, String commandLine, long start,
+			long wallMillis, long cpuMillis, long peakRssKb, long bytesRead,
+			long bytesWritten, boolean success, boolean lowerBound) {
+		this.program = program;
+		this.commandLine = commandLine;
+		this.start = start;
+		this.wallMillis = wallMillis;
+		this.cpuMillis = cpuMillis;
+		this.peakRssKb = peakRssKb;
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.success = success;
+		this.lowerBound = lowerBound;
+	}
+
+	/**
+	 * The name of the program, like Locate, or of the method command, like
+	 * mkdir. This is what we call the stage of the command.
+	 */
+	public String getProgram() {
+		return program;
+	}
+
+	public String getCommandLine() {
+		return commandLine;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getWallMillis() {
+		return wallMillis;
+	}
+
+	/**
+	 * For a program, this is computed from the clock ticks of
+	 * /proc/&lt;pid&gt;/stat, assuming ProcessSampler.TICKS_PER_SECOND ticks
+	 * per second, which is 100 on the usual Linux kernels.
+	 */
+	public long getCpuMillis() {
+		return cpuMillis;
+	}
+
+	public long getPeakRssKb() {
+		return peakRssKb;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * Returns true if the CPU time, the peak memory and the bytes read and
+	 * written were taken from the last sample of the process. What the
+	 * process did after that sample is not counted, so the real values may
+	 * be higher.
+	 */
+	public boolean isLowerBound() {
+		return lowerBound;
+	}
+
+	@Override
+	public String toString() {
+		return program + ": " + wallMillis + " ms, cpu " + cpuMillis
+				+ " ms, rss " + peakRssKb + " kB, in " + bytesRead
+				+ " bytes, out " + bytesWritten + " bytes"
+				+ (lowerBound ? " (at least)" : "");
+	}
+}
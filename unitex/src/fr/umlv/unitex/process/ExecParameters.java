@@ -21,6 +21,14 @@
 package fr.umlv.unitex.process;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import fr.umlv.unitex.process.commands.CommandBuilder;
 import fr.umlv.unitex.process.commands.MultiCommands;
@@ -33,17 +41,177 @@ import fr.umlv.unitex.process.list.ProcessOutputList;
 public class ExecParameters {
 
 	/**
-	 * If not null, this represents the current running process. This field is
-	 * used to know which is the current process from within an Executor object
+	 * The processes that are currently running. There may be several of them
+	 * when commands of a same step run in parallel. This is used by an
+	 * Executor object to kill them on cancel.
 	 */
-	private Process process;
+	private final List<Process> processes = new ArrayList<Process>();
+	/* The processes we have killed, and among them, the ones that timed out */
+	private final Set<Process> killed = new HashSet<Process>();
+	private final Set<Process> timedOut = new HashSet<Process>();
+	private final Map<Process, TimerTask> deadlines = new HashMap<Process, TimerTask>();
+	private Timer timer;
 
-	public Process getProcess() {
-		return process;
+	/**
+	 * The maximum durations, in milliseconds, of a command and of the whole
+	 * commands. 0, the default, means no limit. They are given in seconds by
+	 * the system properties unitex.command.timeout and
+	 * unitex.pipeline.timeout, like -Dunitex.command.timeout=600, so that a
+	 * build machine can set them for all the commands it runs.
+	 */
+	private final long commandTimeout = getDefaultTimeout("unitex.command.timeout");
+	private final long pipelineTimeout = getDefaultTimeout("unitex.pipeline.timeout");
+
+	private static long getDefaultTimeout(String property) {
+		try {
+			return Long.parseLong(System.getProperty(property, "0")) * 1000;
+		} catch (final NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	public long getCommandTimeout() {
+		return commandTimeout;
+	}
+
+	public long getPipelineTimeout() {
+		return pipelineTimeout;
+	}
+
+	public void addProcess(Process process) {
+		addProcess(process, commandTimeout);
+	}
+
+	/**
+	 * Adds a running process, that will be killed if it is still running
+	 * after the given number of milliseconds, unless it is 0.
+	 */
+	private void addProcess(final Process process, long timeout) {
+		synchronized (processes) {
+			processes.add(process);
+			if (timeout > 0) {
+				final TimerTask task = new TimerTask() {
+					@Override
+					public void run() {
+						synchronized (processes) {
+							if (!processes.contains(process)) {
+								return;
+							}
+							timedOut.add(process);
+						}
+						kill(process);
+					}
+				};
+				deadlines.put(process, task);
+				schedule(task, timeout);
+			}
+		}
+	}
+
+	public void removeProcess(Process process) {
+		synchronized (processes) {
+			processes.remove(process);
+			killed.remove(process);
+			timedOut.remove(process);
+			final TimerTask task = deadlines.remove(process);
+			if (task != null) {
+				task.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given process has been killed, because of a cancel
+	 * or a timeout.
+	 */
+	public boolean wasKilled(Process process) {
+		synchronized (processes) {
+			return killed.contains(process);
+		}
+	}
+
+	/**
+	 * Returns true if the given process has been killed because it has run
+	 * for too long.
+	 */
+	public boolean hasTimedOut(Process process) {
+		synchronized (processes) {
+			return timedOut.contains(process);
+		}
 	}
 
-	public void setProcess(Process process) {
-		this.process = process;
+	private void kill(Process process) {
+		synchronized (processes) {
+			killed.add(process);
+		}
+		ProcessTreeKiller.killLater(process);
+	}
+
+	/**
+	 * Kills all the running processes, with their children.
+	 * 
+	 * @return false if there was no running process
+	 */
+	public boolean destroyProcesses() {
+		final Process[] running;
+		synchronized (processes) {
+			if (processes.isEmpty()) {
+				return false;
+			}
+			running = processes.toArray(new Process[processes.size()]);
+		}
+		for (final Process p : running) {
+			kill(p);
+		}
+		return true;
+	}
+
+	synchronized void schedule(TimerTask task, long delay) {
+		if (timer == null) {
+			timer = new Timer("Unitex deadlines", true);
+		}
+		timer.schedule(task, delay);
+	}
+
+	/**
+	 * Cancels all the deadlines. This is done once all the commands are over.
+	 */
+	synchronized void cancelDeadlines() {
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+	/**
+	 * The commands whose outputs must be given to the lists once they are
+	 * complete, because other commands share the lists at the same time.
+	 */
+	private final Set<CommandBuilder> bufferedOutputs = new HashSet<CommandBuilder>();
+
+	public void setBufferedOutput(CommandBuilder command, boolean buffered) {
+		synchronized (bufferedOutputs) {
+			if (buffered) {
+				bufferedOutputs.add(command);
+			} else {
+				bufferedOutputs.remove(command);
+			}
+		}
+	}
+
+	public boolean hasBufferedOutput(CommandBuilder command) {
+		synchronized (bufferedOutputs) {
+			return bufferedOutputs.contains(command);
+		}
+	}
+
+	/**
+	 * The metrics of the commands, that are added as soon as they are done.
+	 */
+	private final RunMetrics metrics = new RunMetrics();
+
+	public RunMetrics getMetrics() {
+		return metrics;
 	}
 
 	public boolean isStopOnProblem() {
@@ -81,7 +249,7 @@ public class ExecParameters {
 	private final boolean stopOnProblem;
 
 	/**
-	 * The commands to be executed, one by one
+	 * The commands to be executed, step by step
 	 */
 	private final MultiCommands commands;
 
@@ -22,6 +22,18 @@ package fr.umlv.unitex.process;
 
 import java.awt.EventQueue;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.exceptions.UnitexUncaughtExceptionHandler;
@@ -30,16 +42,29 @@ import fr.umlv.unitex.process.commands.MultiCommands;
 
 /**
  * This object launches a thread that will process all the given commands.
+ * Commands are run step by step, as defined by the MultiCommands. When a step
+ * contains several lanes, they are run in parallel by a pool of at most
+ * MAX_PARALLEL_COMMANDS threads, the commands of a lane being run in order.
+ * The output of a command that runs in parallel with other ones is shown in
+ * one block when it is over, with the name of its program before each line.
+ * 
+ * When a command fails, the remaining ones are skipped, except the final ones.
+ * 
+ * If the parameters give a pipeline timeout, the commands are canceled when
+ * it is over, as if the user had clicked on "Cancel".
  * 
  * @author paumier
  * 
  */
 public class Executor extends Thread {
-
+	static final int MAX_PARALLEL_COMMANDS = Runtime.getRuntime()
+			.availableProcessors();
 	private final ExecParameters parameters;
-	private boolean success = true;
-	private boolean finished = false;
-	ConsoleEntry entry = null;
+	private volatile boolean success = true;
+	private volatile boolean finished = false;
+	/* The console entries of the commands that are running */
+	final List<ConsoleEntry> entries = new ArrayList<ConsoleEntry>();
+	private ExecutorService pool;
 
 	public Executor(ExecParameters parameters) {
 		this.parameters = parameters;
@@ -54,41 +79,46 @@ public class Executor extends Thread {
 	@Override
 	public void run() {
 		final MultiCommands commands = parameters.getCommands();
-		CommandBuilder command;
-		for (int i = 0; success && i < commands.numberOfCommands(); i++) {
-			if ((command = commands.getCommand(i)) != null) {
-				entry = null;
-				if (parameters.isTraceIntoConsole()) {
-					entry = command.logIntoConsole();
+		final int n = commands.numberOfCommands();
+		parameters.getMetrics().started(getLabel(commands));
+		if (parameters.getPipelineTimeout() > 0) {
+			final long timeout = parameters.getPipelineTimeout();
+			parameters.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					Executor.this.cancel("*** COMMANDS STOPPED AFTER "
+							+ timeout / 1000 + " SECONDS ***");
 				}
-				final ToDoBeforeSingleCommand toDoBefore = command
-						.getWhatToDoBefore();
-				if (toDoBefore != null)
-					toDoBefore.toDo(entry);
-
-				final boolean commandSuccessful = command.executeCommand(
-						parameters, entry);
-				if (!commandSuccessful) {
-					success = false;
+			}, timeout);
+		}
+		try {
+			int first = 0;
+			while (first < n) {
+				int end = first + 1;
+				while (end < n
+						&& commands.getStep(end) == commands.getStep(first)) {
+					end++;
 				}
-				if (entry != null
-						&& command.getType() == CommandBuilder.PROGRAM) {
-					while (!entry.isNormalStreamEnded()
-							|| !entry.isErrorStreamEnded()) {
-						/*
-						 * We wait for the end of the stdout and stderr reading
-						 * threads
-						 */
-						// System.err.println("stdout ended: "+entry.isNormalStreamEnded());
-						// System.err.println("stderr ended: "+entry.isErrorStreamEnded());
+				if (end - first == 1) {
+					final CommandBuilder command = commands.getCommand(first);
+					/* After a failure, only final commands are run */
+					if (command != null && (success || commands.isFinal(first))
+							&& !commands.mustSkip(first)) {
+						runCommand(command, logIntoConsole(command),
+								commands.isFinal(first));
 					}
+				} else {
+					runInParallel(commands, first, end);
 				}
-				final ToDoAfterSingleCommand toDoAfter = command
-						.getWhatToDoOnceCompleted();
-				if (toDoAfter != null)
-					toDoAfter.toDo(commandSuccessful, entry);
-				entry = null;
+				first = end;
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
 			}
+			parameters.cancelDeadlines();
+			parameters.getMetrics().ended(success);
+			MetricsHistory.add(parameters.getMetrics());
 		}
 		final ToDo DO = parameters.getDO();
 		if (DO != null) {
@@ -97,24 +127,180 @@ public class Executor extends Thread {
 		finished = true;
 	}
 
+	/**
+	 * Returns the names of the programs of the given commands, in the order of
+	 * their first use.
+	 */
+	private static String getLabel(MultiCommands commands) {
+		final Set<String> names = new LinkedHashSet<String>();
+		for (int i = 0; i < commands.numberOfCommands(); i++) {
+			final CommandBuilder c = commands.getCommand(i);
+			if (c != null && c.getType() == CommandBuilder.PROGRAM) {
+				names.add(c.getProgramName());
+			}
+		}
+		final StringBuilder b = new StringBuilder();
+		for (final String s : names) {
+			if (b.length() != 0) {
+				b.append(' ');
+			}
+			b.append(s);
+		}
+		return b.toString();
+	}
+
+	private ConsoleEntry logIntoConsole(CommandBuilder command) {
+		if (parameters.isTraceIntoConsole()) {
+			return command.logIntoConsole();
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the commands #first to #end-1, that belong to the same step, and
+	 * waits for all of them. After a failure, only final commands are run.
+	 */
+	private void runInParallel(final MultiCommands commands, int first,
+			int end) {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(MAX_PARALLEL_COMMANDS);
+		}
+		/*
+		 * We add all the commands to the console first, so that they appear in
+		 * the same order as if they were run one by one
+		 */
+		final Map<Integer, List<Integer>> lanes = new LinkedHashMap<Integer, List<Integer>>();
+		final Map<Integer, ConsoleEntry> consoleEntries = new HashMap<Integer, ConsoleEntry>();
+		for (int i = first; i < end; i++) {
+			final CommandBuilder command = commands.getCommand(i);
+			if (command == null || (!success && !commands.isFinal(i))
+					|| commands.mustSkip(i)) {
+				continue;
+			}
+			List<Integer> lane = lanes.get(commands.getLane(i));
+			if (lane == null) {
+				lane = new ArrayList<Integer>();
+				lanes.put(commands.getLane(i), lane);
+			}
+			lane.add(i);
+			consoleEntries.put(i, logIntoConsole(command));
+		}
+		final boolean buffered = lanes.size() > 1;
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (final List<Integer> lane : lanes.values()) {
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (final Integer i : lane) {
+						final CommandBuilder command = commands.getCommand(i);
+						parameters.setBufferedOutput(command, buffered);
+						try {
+							runCommand(command, consoleEntries.get(i),
+									commands.isFinal(i));
+						} finally {
+							parameters.setBufferedOutput(command, false);
+						}
+					}
+				}
+			}));
+		}
+		try {
+			for (final Future<?> f : futures) {
+				f.get();
+			}
+		} catch (final InterruptedException e) {
+			/* The commands have been canceled */
+			success = false;
+		} catch (final ExecutionException e) {
+			success = false;
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * Runs the given command, unless a previous command has failed and the
+	 * command is not a final one.
+	 */
+	private void runCommand(CommandBuilder command, ConsoleEntry entry,
+			boolean isFinal) {
+		if (!success && !isFinal) {
+			/* A previous command of the same step has failed */
+			return;
+		}
+		if (entry != null) {
+			synchronized (entries) {
+				entries.add(entry);
+			}
+		}
+		final ToDoBeforeSingleCommand toDoBefore = command
+				.getWhatToDoBefore();
+		if (toDoBefore != null)
+			toDoBefore.toDo(entry);
+		final boolean commandSuccessful = command.executeCommand(parameters,
+				entry);
+		if (!commandSuccessful) {
+			success = false;
+		}
+		if (entry != null && command.getType() == CommandBuilder.PROGRAM) {
+			/*
+			 * We wait for the end of the stdout and stderr reading threads
+			 */
+			try {
+				entry.waitForStreamsEnded();
+			} catch (final InterruptedException e) {
+				/* The command has been canceled */
+				success = false;
+			}
+		}
+		final ToDoAfterSingleCommand toDoAfter = command
+				.getWhatToDoOnceCompleted();
+		if (toDoAfter != null)
+			toDoAfter.toDo(commandSuccessful, entry);
+		if (entry != null) {
+			synchronized (entries) {
+				entries.remove(entry);
+			}
+		}
+	}
+
 	public boolean getSuccess() {
 		return success;
 	}
 
 	@Override
 	public void interrupt() {
-		final Process p = parameters.getProcess();
-		if (p != null) {
-			p.destroy();
-			if (entry != null) {
+		cancel("*** COMMAND CANCELED BY USER ***");
+	}
+
+	/**
+	 * Kills the running processes, with the given message in their console
+	 * entries, and skips the remaining commands.
+	 */
+	void cancel(final String message) {
+		if (finished) {
+			return;
+		}
+		if (parameters.destroyProcesses()) {
+			final ConsoleEntry[] running;
+			synchronized (entries) {
+				running = entries.toArray(new ConsoleEntry[entries.size()]);
+			}
+			for (final ConsoleEntry entry : running) {
 				try {
 					if (EventQueue.isDispatchThread()) {
-						entry.addErrorMessage("*** COMMAND CANCELED BY USER ***");
+						entry.addErrorMessage(message);
 					} else
 						EventQueue.invokeAndWait(new Runnable() {
 							@Override
 							public void run() {
-								entry.addErrorMessage("*** COMMAND CANCELED BY USER ***");
+								entry.addErrorMessage(message);
 							}
 						});
 				} catch (final InterruptedException e) {
@@ -75,8 +75,7 @@ public class Launcher {
 	 */
 	public static int execWithoutTracing(CommandBuilder b) {
 		try {
-			final Process p = Runtime.getRuntime().exec(
-					b.getCommandArguments(true));
+			final Process p = ProcessFactory.exec(b.getCommandArguments(true));
 			final BufferedInputStream in = new BufferedInputStream(
 					p.getInputStream());
 			final BufferedInputStream err = new BufferedInputStream(
@@ -102,8 +101,8 @@ public class Launcher {
 
 	public static int execAsExternalCommand(CommandBuilder cmd) {
 		try {
-			final Process p = Runtime.getRuntime().exec(
-					cmd.getCommandArguments(true));
+			final Process p = ProcessFactory
+					.exec(cmd.getCommandArguments(true));
 			new EatStreamThread(p.getErrorStream(), System.err).start();
 			new EatStreamThread(p.getInputStream(), System.out).start();
 
@@ -0,0 +1,62 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The metrics of the last runs, oldest first. Only the MAX_RUNS last ones are
+ * kept.
+ */
+public class MetricsHistory {
+	public static final int MAX_RUNS = 200;
+	private static final LinkedList<RunMetrics> runs = new LinkedList<RunMetrics>();
+
+	private MetricsHistory() {
+		/* */
+	}
+
+	static void add(RunMetrics run) {
+		if (run.getCommands().isEmpty()) {
+			return;
+		}
+		synchronized (runs) {
+			runs.add(run);
+			if (runs.size() > MAX_RUNS) {
+				runs.removeFirst();
+			}
+		}
+	}
+
+	public static List<RunMetrics> getRuns() {
+		synchronized (runs) {
+			return new ArrayList<RunMetrics>(runs);
+		}
+	}
+
+	public static void clear() {
+		synchronized (runs) {
+			runs.clear();
+		}
+	}
+}
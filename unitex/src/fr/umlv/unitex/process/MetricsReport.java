@@ -0,0 +1,153 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class exports metrics of runs as CSV, with one line per command, or as
+ * JSON, with the commands and the stages of each run.
+ * 
+ * The cpu_ms of a program is computed from the clock ticks of its
+ * /proc/&lt;pid&gt;/stat file, assuming ProcessSampler.TICKS_PER_SECOND (100)
+ * ticks per second. When lower_bound is true, cpu_ms, peak_rss_kb,
+ * bytes_read and bytes_written come from the last sample of the process, so
+ * the real values may be higher.
+ */
+public class MetricsReport {
+	private static final String CSV_HEADER = "run,run_start,program,start,wall_ms,cpu_ms,peak_rss_kb,bytes_read,bytes_written,lower_bound,success,command";
+
+	private MetricsReport() {
+		/* */
+	}
+
+	/**
+	 * Saves the given runs in f, as JSON if its name ends with .json, and as
+	 * CSV otherwise.
+	 */
+	public static void save(File f, List<RunMetrics> runs) throws IOException {
+		final Writer w = new OutputStreamWriter(new FileOutputStream(f),
+				"UTF-8");
+		try {
+			if (f.getName().toLowerCase().endsWith(".json")) {
+				writeJson(w, runs);
+			} else {
+				writeCsv(w, runs);
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	public static void writeCsv(Writer w, List<RunMetrics> runs)
+			throws IOException {
+		w.write(CSV_HEADER);
+		w.write('\n');
+		int n = 0;
+		for (final RunMetrics run : runs) {
+			n++;
+			for (final CommandMetrics m : run.getCommands()) {
+				w.write(n + "," + date(run.getStart()) + ","
+						+ csv(m.getProgram()) + "," + date(m.getStart()) + ","
+						+ m.getWallMillis() + "," + m.getCpuMillis() + ","
+						+ m.getPeakRssKb() + "," + m.getBytesRead() + ","
+						+ m.getBytesWritten() + "," + m.isLowerBound() + ","
+						+ m.isSuccess() + ","
+						+ csv(m.getCommandLine()) + "\n");
+			}
+		}
+	}
+
+	public static void writeJson(Writer w, List<RunMetrics> runs)
+			throws IOException {
+		w.write("[");
+		boolean firstRun = true;
+		for (final RunMetrics run : runs) {
+			w.write(firstRun ? "\n" : ",\n");
+			firstRun = false;
+			w.write("  {\"label\": " + json(run.getLabel()) + ", \"start\": "
+					+ json(date(run.getStart())) + ", \"wall_ms\": "
+					+ run.getWallMillis() + ", \"success\": "
+					+ run.isSuccess() + ",\n   \"stages\": {");
+			boolean first = true;
+			for (final Map.Entry<String, CommandMetrics> e : run.getStages()
+					.entrySet()) {
+				w.write(first ? "\n" : ",\n");
+				first = false;
+				w.write("    " + json(e.getKey()) + ": {" + values(e.getValue())
+						+ "}");
+			}
+			w.write("},\n   \"commands\": [");
+			first = true;
+			for (final CommandMetrics m : run.getCommands()) {
+				w.write(first ? "\n" : ",\n");
+				first = false;
+				w.write("    {\"program\": " + json(m.getProgram())
+						+ ", \"start\": " + json(date(m.getStart())) + ", "
+						+ values(m) + ", \"command\": "
+						+ json(m.getCommandLine()) + "}");
+			}
+			w.write("]}");
+		}
+		w.write("\n]\n");
+	}
+
+	private static String values(CommandMetrics m) {
+		return "\"wall_ms\": " + m.getWallMillis() + ", \"cpu_ms\": "
+				+ m.getCpuMillis() + ", \"peak_rss_kb\": " + m.getPeakRssKb()
+				+ ", \"bytes_read\": " + m.getBytesRead()
+				+ ", \"bytes_written\": " + m.getBytesWritten()
+				+ ", \"lower_bound\": " + m.isLowerBound()
+				+ ", \"success\": " + m.isSuccess();
+	}
+
+	private static String date(long time) {
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+				.format(new Date(time));
+	}
+
+	private static String csv(String s) {
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String json(String s) {
+		final StringBuilder b = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				b.append('\\').append(c);
+			} else if (c < ' ') {
+				b.append(String.format("\\u%04x", (int) c));
+			} else {
+				b.append(c);
+			}
+		}
+		return b.append('"').toString();
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class starts the processes of the Unitex programs. All of them are
+ * created here, so that there is a single place to change if they are to be
+ * run in another way.
+ */
+public class ProcessFactory {
+
+	private ProcessFactory() {
+		/* No instance */
+	}
+
+	/**
+	 * Runs the given command line in the given directory, or in the current
+	 * one if dir is null, like Runtime.exec does.
+	 */
+	public static Process exec(String[] cmd, File dir) throws IOException {
+		return Runtime.getRuntime().exec(cmd, null, dir);
+	}
+
+	public static Process exec(String[] cmd) throws IOException {
+		return exec(cmd, null);
+	}
+}
@@ -20,14 +20,20 @@
  */
 package fr.umlv.unitex.process;
 
-import java.io.BufferedReader;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.console.Couple;
@@ -37,13 +43,34 @@ import fr.umlv.unitex.process.list.ProcessOutputList;
  * This class is used to monitor stdout and stderr messages of external
  * processes.
  * 
+ * The stream is read as fast as the process writes, so that the process never
+ * waits for the GUI. Lines are stored, and then given to the list by batches,
+ * at most once every FLUSH_DELAY milliseconds.
+ * 
+ * When a prefix is given, as for commands that run at the same time and share
+ * the same list, lines are only given to the list once the stream is ended,
+ * each one starting with the prefix, so that the outputs of the commands
+ * don't interleave and their progress lines don't replace each other.
+ * 
  * @author Sébastien Paumier
  */
 public class ProcessInfoThread extends Thread {
+	static final int FLUSH_DELAY = 50;
 	final ProcessOutputList list;
-	private BufferedReader stream;
+	private Reader stream;
 	final ConsoleEntry entry;
 	boolean readingErrorStream;
+	/* If not null, the output is given to the list once it is complete */
+	private final String prefix;
+
+	/*
+	 * The lines that have been read but not yet given to the list, and
+	 * whether a flush is already planned on the EDT
+	 */
+	private final List<Line> pending = new ArrayList<Line>();
+	private boolean flushPlanned = false;
+	long lastFlush = 0;
+	private Timer flushTimer;
 
 	/**
 	 * Creates a new <code>ProcessInfoThread</code>
@@ -55,111 +82,193 @@ public class ProcessInfoThread extends Thread {
 	 */
 	public ProcessInfoThread(ProcessOutputList list, InputStream s,
 			ConsoleEntry entry, boolean errorStream) {
+		this(list, s, entry, errorStream, null);
+	}
+
+	/**
+	 * Creates a new <code>ProcessInfoThread</code> that gives all the lines to
+	 * the list at the end of the stream, with the given prefix, unless it is
+	 * null.
+	 */
+	public ProcessInfoThread(ProcessOutputList list, InputStream s,
+			ConsoleEntry entry, boolean errorStream, String prefix) {
 		this.list = list;
 		this.entry = entry;
 		this.readingErrorStream = errorStream;
+		this.prefix = prefix;
 		try {
-			stream = new BufferedReader(new InputStreamReader(s, "UTF8"));
+			stream = new InputStreamReader(s, "UTF8");
 		} catch (final UnsupportedEncodingException e) {
 			e.printStackTrace();
 		}
 	}
 
-	private char nextChar = '\0';
+	/**
+	 * A line of output. If fullReturn is false, the line was ended by a single
+	 * \r, and so it must be replaced by the next one.
+	 */
+	static class Line {
+		final String s;
+		final boolean fullReturn;
 
-	String myReadLine(BufferedReader reader) {
-		int c;
-		String result = "";
-		if (nextChar != '\0') {
-			result = "" + nextChar;
-			nextChar = '\0';
+		Line(String s, boolean fullReturn) {
+			this.s = s;
+			this.fullReturn = fullReturn;
 		}
+	}
+
+	/**
+	 * Runs the monitoring thread
+	 */
+	@Override
+	public void run() {
+		final CharBuffer buffer = CharBuffer.allocate(8192);
+		final StringBuilder line = new StringBuilder();
+		/* true if the last char read was a \r */
+		boolean afterCR = false;
 		try {
-			while ((c = reader.read()) != -1) {
-				char ch = (char) c;
-				if (ch == '\r') {
-					result = result + ch;
-					if ((c = reader.read()) != -1) {
-						ch = (char) c;
-						if (ch == '\n') {
-							/* If we have a \r\n sequence, we return it */
-							result = result + ch;
-							return result;
+			while (stream.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					final char c = buffer.get();
+					if (afterCR) {
+						afterCR = false;
+						if (c == '\n') {
+							/* \r\n is a full new line */
+							addLine(line, true);
+							continue;
 						}
-						/* Otherwise, we stock the character */
-						nextChar = ch;
+						/* A single \r means that the line must be replaced */
+						addLine(line, false);
+					}
+					if (c == '\r') {
+						afterCR = true;
+					} else if (c == '\n') {
+						addLine(line, true);
+					} else {
+						line.append(c);
 					}
-					return result;
-				} else if (ch == '\n') {
-					/* If we have a single \n, we return it */
-					result = result + ch;
-					nextChar = '\0';
-					return result;
-				} else {
-					nextChar = '\0';
-					result = result + ch;
+				}
+				buffer.clear();
+				if (prefix == null) {
+					planFlush();
 				}
 			}
 		} catch (final IOException e) {
 			e.printStackTrace();
-			return null;
 		}
-		if ("".equals(result)) {
-			return null;
+		if (afterCR) {
+			addLine(line, false);
+		} else if (line.length() != 0) {
+			addLine(line, true);
+		}
+		/*
+		 * We give the last lines to the list before saying that the stream is
+		 * ended, because the command may be followed by things that use its
+		 * output
+		 */
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					flush();
+				}
+			});
+		} catch (final InterruptedException e) {
+			/* */
+		} catch (final InvocationTargetException e) {
+			/* */
+		}
+		if (entry != null) {
+			if (readingErrorStream) {
+				entry.setErrorStreamEnded(true);
+			} else {
+				entry.setNormalStreamEnded(true);
+			}
+		}
+	}
+
+	private void addLine(StringBuilder line, boolean fullReturn) {
+		final Line l = new Line(line.toString(), fullReturn);
+		line.setLength(0);
+		synchronized (pending) {
+			final int last = pending.size() - 1;
+			if (last >= 0 && !pending.get(last).fullReturn
+					&& (!fullReturn || l.s.length() != 0)) {
+				/*
+				 * The list would replace the last line with this one anyway.
+				 * We don't do it for an empty full line, because it means that
+				 * the replaceable line must be kept.
+				 */
+				pending.set(last, l);
+			} else {
+				pending.add(l);
+			}
 		}
-		return result;
 	}
 
 	/**
-	 * Runs the monitoring thread
+	 * Asks the EDT to give pending lines to the list, unless it has already
+	 * been asked to.
 	 */
-	@Override
-	public void run() {
-		String s;
-		boolean fullReturn;
-		while ((s = myReadLine(stream)) != null) {
-			if (!s.equals("")) {
-				if (s.endsWith("\r\n")) {
-					s = s.substring(0, s.length() - 2);
-					fullReturn = true;
-				} else if (s.endsWith("\r")) {
-					fullReturn = false;
-					s = s.substring(0, s.length() - 1);
-				} else if (s.endsWith("\n")) {
-					fullReturn = true;
-					s = s.substring(0, s.length() - 1);
-				} else {
-					fullReturn = true;
+	private void planFlush() {
+		synchronized (pending) {
+			if (flushPlanned || pending.isEmpty()) {
+				return;
+			}
+			flushPlanned = true;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				final long delay = lastFlush + FLUSH_DELAY
+						- System.currentTimeMillis();
+				if (delay <= 0) {
+					flush();
+					return;
 				}
-				final String s2 = s;
-				final boolean ret = fullReturn;
-				try {
-					SwingUtilities.invokeAndWait(new Runnable() {
+				/* The last flush is too recent, so we wait a bit */
+				if (flushTimer == null) {
+					flushTimer = new Timer(FLUSH_DELAY, new ActionListener() {
 						@Override
-						public void run() {
-							if (ret) {
-								list.addLine(new Couple(s2, false));
-							} else {
-								list.addReplacableLine(new Couple(s2, false));
-							}
-							if (entry != null && readingErrorStream) {
-								entry.addErrorMessage(s2);
-							}
+						public void actionPerformed(ActionEvent e) {
+							flush();
 						}
 					});
-				} catch (final InterruptedException e) {
-					/* */
-				} catch (final InvocationTargetException e) {
-					/* */
+					flushTimer.setRepeats(false);
 				}
+				flushTimer.setInitialDelay((int) delay);
+				flushTimer.restart();
 			}
+		});
+	}
+
+	/**
+	 * Gives all the pending lines to the list. Must be called on the EDT.
+	 */
+	void flush() {
+		Line[] lines;
+		synchronized (pending) {
+			lines = pending.toArray(new Line[pending.size()]);
+			pending.clear();
+			flushPlanned = false;
 		}
-		if (entry != null) {
-			if (readingErrorStream) {
-				entry.setErrorStreamEnded(true);
-			} else {
-				entry.setNormalStreamEnded(true);
+		lastFlush = System.currentTimeMillis();
+		final Couple[] couples = new Couple[lines.length];
+		final boolean[] replacable = new boolean[lines.length];
+		for (int i = 0; i < lines.length; i++) {
+			couples[i] = new Couple((prefix == null || lines[i].s.length() == 0)
+					? lines[i].s : prefix + lines[i].s, false);
+			/*
+			 * When the output is shown at once, its last line must not be
+			 * replaced by the output of another command
+			 */
+			replacable[i] = !lines[i].fullReturn
+					&& (prefix == null || i != lines.length - 1);
+			if (entry != null && readingErrorStream) {
+				entry.addErrorMessage(lines[i].s);
 			}
 		}
+		list.addLines(couples, replacable);
 	}
 }
@@ -0,0 +1,205 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * This thread samples the resources used by a running process, by reading its
+ * files in /proc every SAMPLE_DELAY milliseconds. It only works on Linux:
+ * elsewhere, nothing is sampled and the metrics only contain the wall time.
+ * 
+ * The first sample is taken as soon as the process is started. Once a
+ * process has ended, its files are gone, so the metrics come from the last
+ * sample and are marked as lower bounds.
+ */
+public class ProcessSampler extends Thread {
+	static final int SAMPLE_DELAY = 20;
+	/*
+	 * Clock ticks per second of /proc/<pid>/stat, which is 100 on the usual
+	 * kernels. The CPU times of the metrics are converted with it.
+	 */
+	static final int TICKS_PER_SECOND = 100;
+
+	private final long start = System.currentTimeMillis();
+	private final File dir;
+	/* CPU ticks, bytes read and bytes written */
+	private final long[] last = new long[] { -1, -1, -1 };
+	private long peakRssKb = -1;
+	private volatile boolean stopped = false;
+
+	private ProcessSampler(File dir) {
+		this.dir = dir;
+		setDaemon(true);
+	}
+
+	/**
+	 * Starts to sample the given process, which has just been started.
+	 */
+	public static ProcessSampler start(Process p) {
+		final int pid = getPid(p);
+		File dir = null;
+		if (pid != -1) {
+			dir = new File("/proc", String.valueOf(pid));
+			if (!dir.isDirectory()) {
+				dir = null;
+			}
+		}
+		final ProcessSampler sampler = new ProcessSampler(dir);
+		if (dir != null) {
+			sampler.start();
+		}
+		return sampler;
+	}
+
+	static int getPid(Process p) {
+		try {
+			/* Since Java 9 */
+			final Method m = Process.class.getMethod("pid");
+			return ((Number) m.invoke(p)).intValue();
+		} catch (final Exception e) {
+			/* We try the private field of older JVMs */
+		}
+		try {
+			final Field f = p.getClass().getDeclaredField("pid");
+			f.setAccessible(true);
+			return f.getInt(p);
+		} catch (final Exception e) {
+			return -1;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (!stopped) {
+			if (!dir.isDirectory()) {
+				/* The process has ended */
+				return;
+			}
+			sample();
+			try {
+				Thread.sleep(SAMPLE_DELAY);
+			} catch (final InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private synchronized void sample() {
+		try {
+			readProcFiles();
+		} catch (final NumberFormatException e) {
+			/* We keep the values of the previous sample */
+		} catch (final IndexOutOfBoundsException e) {
+			/* Idem */
+		}
+	}
+
+	private void readProcFiles() {
+		final String stat = readLine(new File(dir, "stat"), null);
+		if (stat != null) {
+			/* The name of the program, between (), may contain spaces */
+			final String[] fields = stat.substring(stat.lastIndexOf(')') + 2)
+					.split(" ");
+			/* utime, stime, cutime and cstime are the fields #14 to #17 */
+			long ticks = 0;
+			for (int i = 11; i <= 14 && i < fields.length; i++) {
+				ticks += Long.parseLong(fields[i]);
+			}
+			last[0] = ticks;
+		}
+		final String rchar = readLine(new File(dir, "io"), "rchar:");
+		final String wchar = readLine(new File(dir, "io"), "wchar:");
+		if (rchar != null && wchar != null) {
+			last[1] = Long.parseLong(rchar);
+			last[2] = Long.parseLong(wchar);
+		}
+		final long rss = getRssKb();
+		if (rss > peakRssKb) {
+			peakRssKb = rss;
+		}
+	}
+
+	/**
+	 * Returns the peak memory of the process.
+	 */
+	private long getRssKb() {
+		final String s = readLine(new File(dir, "status"), "VmHWM:");
+		if (s == null) {
+			return -1;
+		}
+		return Long.parseLong(s.substring(0, s.indexOf(' ')));
+	}
+
+	/**
+	 * Returns the first line of the given file or, if prefix is not null, the
+	 * value of the first line that starts with prefix, trimmed. Returns null
+	 * if there is no such line or if the file cannot be read, because the
+	 * process has ended for instance.
+	 */
+	private static String readLine(File f, String prefix) {
+		try {
+			final BufferedReader r = new BufferedReader(new InputStreamReader(
+					new FileInputStream(f), "UTF-8"));
+			try {
+				String line;
+				while ((line = r.readLine()) != null) {
+					if (prefix == null) {
+						return line;
+					}
+					if (line.startsWith(prefix)) {
+						return line.substring(prefix.length()).trim();
+					}
+				}
+				return null;
+			} finally {
+				r.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		} catch (final RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stops the sampling and returns the metrics of the command.
+	 */
+	public synchronized CommandMetrics stop(String program, String commandLine,
+			boolean success) {
+		stopped = true;
+		final boolean sampled = last[0] != -1 || last[1] != -1
+				|| peakRssKb != -1;
+		final long wall = System.currentTimeMillis() - start;
+		final long cpu = (last[0] == -1) ? -1 : last[0] * 1000
+				/ TICKS_PER_SECOND;
+		final long read = last[1];
+		final long written = last[2];
+		return new CommandMetrics(program, commandLine, start, wall, cpu,
+				peakRssKb, read, written, success, sampled);
+	}
+}
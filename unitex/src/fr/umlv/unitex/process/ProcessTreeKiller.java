@@ -0,0 +1,228 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.umlv.unitex.config.Config;
+
+/**
+ * This class stops a process and all the processes it has spawned. They are
+ * first asked to stop, and the ones that are still alive after GRACE_DELAY
+ * milliseconds are killed.
+ * 
+ * On Linux, descendants are looked for in /proc, and they are sent SIGTERM
+ * and then SIGKILL. On Windows, this is done by "taskkill /T" and then
+ * "taskkill /T /F". Elsewhere, like on Mac OS, we just destroy the process, so
+ * that its children may keep running.
+ */
+public class ProcessTreeKiller {
+	static final int GRACE_DELAY = 2000;
+	private static final int POLL_DELAY = 50;
+	private static final File PROC = new File("/proc");
+
+	private ProcessTreeKiller() {
+		/* */
+	}
+
+	/**
+	 * Stops the given process and its descendants in a new thread, so that
+	 * the caller, which may be the EDT, does not wait for the grace delay.
+	 */
+	public static void killLater(final Process p) {
+		final Thread t = new Thread() {
+			@Override
+			public void run() {
+				kill(p);
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Stops the given process and its descendants, and returns when they have
+	 * been killed.
+	 */
+	public static void kill(Process p) {
+		final int pid = ProcessSampler.getPid(p);
+		if (pid == -1) {
+			p.destroy();
+			return;
+		}
+		if (!PROC.isDirectory()) {
+			if (Config.getCurrentSystem() == Config.WINDOWS_SYSTEM) {
+				killWindowsTree(p, pid);
+			} else {
+				p.destroy();
+			}
+			return;
+		}
+		final Set<Integer> tree = getTree(pid);
+		signal("-TERM", tree);
+		waitForEnd(p);
+		if (isAlive(p)) {
+			/* Children may have been spawned in the meantime */
+			tree.addAll(getTree(pid));
+		}
+		final List<Integer> alive = new ArrayList<Integer>();
+		for (final Integer i : tree) {
+			if (new File(PROC, i.toString()).exists()) {
+				alive.add(i);
+			}
+		}
+		signal("-KILL", alive);
+		p.destroy();
+	}
+
+	/**
+	 * Asks the process tree to stop, and then forces it to if the process is
+	 * still alive after the grace delay. /T must be given both times, since
+	 * the tree cannot be found any more once the process is dead.
+	 */
+	private static void killWindowsTree(Process p, int pid) {
+		final String id = String.valueOf(pid);
+		run(new String[] { "taskkill", "/PID", id, "/T" });
+		waitForEnd(p);
+		if (isAlive(p)) {
+			run(new String[] { "taskkill", "/PID", id, "/T", "/F" });
+		}
+		p.destroy();
+	}
+
+	/**
+	 * Waits at most GRACE_DELAY milliseconds for the end of the process.
+	 */
+	private static void waitForEnd(Process p) {
+		final long end = System.currentTimeMillis() + GRACE_DELAY;
+		while (isAlive(p) && System.currentTimeMillis() < end) {
+			try {
+				Thread.sleep(POLL_DELAY);
+			} catch (final InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	private static boolean isAlive(Process p) {
+		try {
+			p.exitValue();
+			return false;
+		} catch (final IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the given pid and the pids of all its descendants.
+	 */
+	private static Set<Integer> getTree(int pid) {
+		final Map<Integer, List<Integer>> children = new HashMap<Integer, List<Integer>>();
+		final String[] names = PROC.list();
+		if (names != null) {
+			for (final String name : names) {
+				if (name.length() == 0 || !Character.isDigit(name.charAt(0))) {
+					continue;
+				}
+				final int parent = getParent(name);
+				if (parent == -1) {
+					continue;
+				}
+				List<Integer> l = children.get(parent);
+				if (l == null) {
+					l = new ArrayList<Integer>();
+					children.put(parent, l);
+				}
+				l.add(Integer.valueOf(name));
+			}
+		}
+		final Set<Integer> tree = new LinkedHashSet<Integer>();
+		final List<Integer> todo = new ArrayList<Integer>();
+		todo.add(pid);
+		while (!todo.isEmpty()) {
+			final Integer i = todo.remove(todo.size() - 1);
+			if (tree.add(i) && children.containsKey(i)) {
+				todo.addAll(children.get(i));
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Returns the parent pid of the given process, or -1 if it cannot be read.
+	 */
+	private static int getParent(String pid) {
+		try {
+			final BufferedReader r = new BufferedReader(new InputStreamReader(
+					new FileInputStream(new File(new File(PROC, pid), "stat")),
+					"UTF-8"));
+			try {
+				final String s = r.readLine();
+				/* The ppid is the second field after the name, between () */
+				final String[] fields = s.substring(s.lastIndexOf(')') + 2)
+						.split(" ");
+				return Integer.parseInt(fields[1]);
+			} finally {
+				r.close();
+			}
+		} catch (final IOException e) {
+			return -1;
+		} catch (final RuntimeException e) {
+			return -1;
+		}
+	}
+
+	private static void signal(String signal, Iterable<Integer> pids) {
+		final List<String> cmd = new ArrayList<String>();
+		cmd.add("kill");
+		cmd.add(signal);
+		for (final Integer i : pids) {
+			cmd.add(i.toString());
+		}
+		if (cmd.size() == 2) {
+			return;
+		}
+		run(cmd.toArray(new String[cmd.size()]));
+	}
+
+	private static void run(String[] cmd) {
+		try {
+			final Process p = Runtime.getRuntime().exec(cmd);
+			new EatStreamThread(p.getInputStream()).start();
+			new EatStreamThread(p.getErrorStream()).start();
+			p.waitFor();
+		} catch (final IOException e) {
+			/* Nothing we can do */
+		} catch (final InterruptedException e) {
+			/* Idem */
+		}
+	}
+}
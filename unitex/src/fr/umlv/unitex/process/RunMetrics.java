@@ -0,0 +1,116 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The metrics of the commands run by one Executor. Commands of a same step may
+ * run in parallel, so they can be added from several threads.
+ */
+public class RunMetrics {
+	private final List<CommandMetrics> commands = new ArrayList<CommandMetrics>();
+	private String label = "";
+	private long start;
+	private long end;
+	private boolean success;
+
+	void started(String s) {
+		label = s;
+		start = System.currentTimeMillis();
+	}
+
+	void ended(boolean b) {
+		end = System.currentTimeMillis();
+		success = b;
+	}
+
+	public void add(CommandMetrics m) {
+		synchronized (commands) {
+			commands.add(m);
+		}
+	}
+
+	public List<CommandMetrics> getCommands() {
+		synchronized (commands) {
+			return new ArrayList<CommandMetrics>(commands);
+		}
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getWallMillis() {
+		return end - start;
+	}
+
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * Returns the metrics of the run summed by stage, in the order of the
+	 * first command of each stage. Peak memories are not summed: we keep the
+	 * highest one. A sum is -1 if the value is unknown for all the commands
+	 * of the stage.
+	 */
+	public Map<String, CommandMetrics> getStages() {
+		final Map<String, CommandMetrics> stages = new LinkedHashMap<String, CommandMetrics>();
+		for (final CommandMetrics m : getCommands()) {
+			final CommandMetrics old = stages.get(m.getProgram());
+			if (old == null) {
+				stages.put(m.getProgram(), new CommandMetrics(m.getProgram(),
+						m.getProgram(), m.getStart(), m.getWallMillis(), m
+								.getCpuMillis(), m.getPeakRssKb(), m
+								.getBytesRead(), m.getBytesWritten(), m
+								.isSuccess(), m.isLowerBound()));
+				continue;
+			}
+			stages.put(m.getProgram(), new CommandMetrics(m.getProgram(), m
+					.getProgram(), old.getStart(), old.getWallMillis()
+					+ m.getWallMillis(), sum(old.getCpuMillis(), m
+					.getCpuMillis()), Math.max(old.getPeakRssKb(), m
+					.getPeakRssKb()), sum(old.getBytesRead(), m.getBytesRead()),
+					sum(old.getBytesWritten(), m.getBytesWritten()), old
+							.isSuccess() && m.isSuccess(), old.isLowerBound()
+							|| m.isLowerBound()));
+		}
+		return stages;
+	}
+
+	private static long sum(long a, long b) {
+		if (a == -1) {
+			return b;
+		}
+		if (b == -1) {
+			return a;
+		}
+		return a + b;
+	}
+}
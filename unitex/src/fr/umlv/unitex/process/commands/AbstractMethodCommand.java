@@ -20,6 +20,8 @@
  */
 package fr.umlv.unitex.process.commands;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.lang.reflect.InvocationTargetException;
 
 import javax.swing.SwingUtilities;
@@ -27,6 +29,7 @@ import javax.swing.SwingUtilities;
 import fr.umlv.unitex.console.Console;
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.process.CommandMetrics;
 import fr.umlv.unitex.process.ExecParameters;
 
 public abstract class AbstractMethodCommand extends CommandBuilder {
@@ -71,7 +74,17 @@ public abstract class AbstractMethodCommand extends CommandBuilder {
 	@Override
 	public boolean executeCommand(final ExecParameters p,
 			final ConsoleEntry entry) {
+		/* The method runs in the current thread, so we measure its CPU time */
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		final boolean cpu = bean.isCurrentThreadCpuTimeSupported();
+		final long cpuStart = cpu ? bean.getCurrentThreadCpuTime() : -1;
+		final long start = System.currentTimeMillis();
 		final boolean ret = execute();
+		p.getMetrics().add(
+				new CommandMetrics(getProgramName(), getCommandLine(), start,
+						System.currentTimeMillis() - start,
+						cpu ? (bean.getCurrentThreadCpuTime() - cpuStart) / 1000000
+								: -1, -1, -1, -1, ret));
 		if (ret || !p.isStopOnProblem())
 			return true;
 		if (p.getStderr() == null)
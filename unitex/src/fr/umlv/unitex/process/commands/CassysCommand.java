@@ -3,6 +3,8 @@ package fr.umlv.unitex.process.commands;
 import java.io.File;
 import java.util.ArrayList;
 
+import fr.umlv.unitex.files.FileUtil;
+
 public class CassysCommand extends CommandBuilder {
 	public CassysCommand() {
 		super("Cassys");
@@ -15,6 +17,8 @@ public class CassysCommand extends CommandBuilder {
 	}
 
 	public CassysCommand targetText(File s) {
+		partialOutput(new File(FileUtil.getFileNameWithoutExtension(s)
+				+ "_csc.*"));
 		protectElement("-t" + s.getAbsolutePath());
 		return this;
 	}
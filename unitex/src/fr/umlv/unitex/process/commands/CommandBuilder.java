@@ -23,6 +23,7 @@ package fr.umlv.unitex.process.commands;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.regex.PatternSyntaxException;
 
 import javax.swing.SwingUtilities;
 
@@ -30,10 +31,13 @@ import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.console.Console;
 import fr.umlv.unitex.console.ConsoleEntry;
 import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.files.FileUtil;
 import fr.umlv.unitex.process.EatStreamThread;
 import fr.umlv.unitex.process.ExecParameters;
 import fr.umlv.unitex.process.Log;
+import fr.umlv.unitex.process.ProcessFactory;
 import fr.umlv.unitex.process.ProcessInfoThread;
+import fr.umlv.unitex.process.ProcessSampler;
 import fr.umlv.unitex.process.ToDoAfterSingleCommand;
 import fr.umlv.unitex.process.ToDoBeforeSingleCommand;
 
@@ -140,6 +144,17 @@ public abstract class CommandBuilder implements AbstractCommand {
 		return res;
 	}
 
+	/**
+	 * Returns the name of the program, without its path.
+	 */
+	public String getProgramName() {
+		if (programNamePosition >= list.size()) {
+			return "";
+		}
+		final String s = list.get(programNamePosition);
+		return new File(s.replace("\"", "")).getName();
+	}
+
 	public String getSimplifiedCommandLine() {
 		String res = "";
 		for (int i = programNamePosition; i < list.size(); i++) {
@@ -206,6 +221,63 @@ public abstract class CommandBuilder implements AbstractCommand {
 		return retValue == 0;
 	}
 
+	/**
+	 * The files that may be left half written if the command is killed, as
+	 * patterns for FileUtil.removeFile.
+	 */
+	private final ArrayList<File> partialOutputs = new ArrayList<File>();
+
+	public void partialOutput(File pattern) {
+		partialOutputs.add(pattern);
+	}
+
+	/**
+	 * Called when the process of the command has ended, whether it is a
+	 * success or not.
+	 */
+	protected void processEnded(@SuppressWarnings("unused") int retValue) {
+		/* Nothing to do by default */
+	}
+
+	private void removePartialOutputs() {
+		for (final File f : partialOutputs) {
+			try {
+				FileUtil.removeFile(f);
+			} catch (final PatternSyntaxException e) {
+				/* The file name is not a valid pattern */
+				f.delete();
+			}
+		}
+	}
+
+	private void reportTimeout(final ExecParameters parameters,
+			final ConsoleEntry entry, String program) {
+		final String message = "The program " + program
+				+ " has been stopped because it was running for too long\n";
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (entry != null) {
+					entry.addErrorMessage("*** COMMAND STOPPED AFTER TIMEOUT ***");
+				}
+				if (parameters.getStderr() != null) {
+					parameters.getStderr().addLine(new Couple(message, true));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the prefix of the output lines of the command, or null if they
+	 * can be shown as soon as they are read.
+	 */
+	private String getOutputPrefix(ExecParameters parameters) {
+		if (!parameters.hasBufferedOutput(this)) {
+			return null;
+		}
+		return "[" + getProgramName() + "] ";
+	}
+
 	/**
 	 * Executes the command, dealing with its outputs.
 	 */
@@ -218,41 +290,73 @@ public abstract class CommandBuilder implements AbstractCommand {
 		final String[] comm = getCommandArguments(true);
 		try {
 			/* We create the process */
-			parameters.setProcess(Runtime.getRuntime().exec(comm, null,
-					parameters.getWorkingDirectory()));
-			p = parameters.getProcess();
+			p = ProcessFactory.exec(comm, parameters.getWorkingDirectory());
+			final ProcessSampler sampler = ProcessSampler.start(p);
+			parameters.addProcess(p);
 			if (parameters.getStdout() == null) {
 				/* If needed, we just consume the output stream */
 				new EatStreamThread(p.getInputStream()).start();
-				entry.setNormalStreamEnded(true);
+				if (entry != null) {
+					entry.setNormalStreamEnded(true);
+				}
 			} else {
 				new ProcessInfoThread(parameters.getStdout(),
-						p.getInputStream(), entry, false).start();
+						p.getInputStream(), entry, false,
+						getOutputPrefix(parameters)).start();
 			}
 			if (parameters.getStderr() == null) {
 				/* If needed, we just consume the error stream */
 				new EatStreamThread(p.getErrorStream()).start();
-				entry.setErrorStreamEnded(true);
+				if (entry != null) {
+					entry.setErrorStreamEnded(true);
+				}
 			} else {
 				new ProcessInfoThread(parameters.getStderr(),
-						p.getErrorStream(), entry, true).start();
+						p.getErrorStream(), entry, true,
+						getOutputPrefix(parameters)).start();
 			}
 			/* Now, we just wait for the end of the process */
 			try {
 				p.waitFor();
+				final boolean killed = parameters.wasKilled(p);
+				final boolean timedOut = parameters.hasTimedOut(p);
+				parameters.getMetrics().add(
+						sampler.stop(getProgramName(), getSimplifiedCommandLine(),
+								!killed && isCommandSuccessful(p.exitValue())));
+				processEnded(p.exitValue());
+				if (killed) {
+					removePartialOutputs();
+				}
 				if (parameters.isStopOnProblem()) {
 					/* iff we need to report a problem */
 					if (!currentCommand.isCommandSuccessful(p.exitValue())) {
 						problem = true;
 					}
 				}
-				parameters.setProcess(null);
+				parameters.removeProcess(p);
+				if (timedOut) {
+					/* A command that has run for too long is always a failure */
+					reportTimeout(parameters, entry, comm[0]);
+					return false;
+				}
 				return !problem;
 			} catch (final java.lang.InterruptedException e) {
 				/*
 				 * If the process is interrupted for any reason, like a click on
 				 * a "Cancel" button
 				 */
+				parameters.getMetrics().add(
+						sampler.stop(getProgramName(),
+								getSimplifiedCommandLine(), false));
+				if (parameters.wasKilled(p)) {
+					/* The process is being killed, so this should not be long */
+					try {
+						p.waitFor();
+						removePartialOutputs();
+					} catch (final InterruptedException e2) {
+						/* We leave the files as they are */
+					}
+				}
 				if (parameters.isStopOnProblem()) {
 					try {
 						SwingUtilities.invokeAndWait(new Runnable() {
@@ -271,11 +375,16 @@ public abstract class CommandBuilder implements AbstractCommand {
 					}
 					problem = true;
 				}
-				parameters.setProcess(null);
+				parameters.removeProcess(p);
 				return problem;
 			}
 		} catch (final java.io.IOException e) {
 			/* If the process could not be created */
+			if (entry != null) {
+				/* There is no stream to wait for */
+				entry.setNormalStreamEnded(true);
+				entry.setErrorStreamEnded(true);
+			}
 			final String programName = comm[0];
 			SwingUtilities.invokeLater(new Runnable() {
 				@Override
@@ -288,7 +397,6 @@ public abstract class CommandBuilder implements AbstractCommand {
 			if (parameters.isStopOnProblem()) {
 				problem = true;
 			}
-			parameters.setProcess(null);
 			return !problem;
 		}
 	}
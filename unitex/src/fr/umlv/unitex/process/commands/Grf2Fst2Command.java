@@ -23,23 +23,46 @@ package fr.umlv.unitex.process.commands;
 import java.io.File;
 import java.util.ArrayList;
 
+import javax.swing.SwingUtilities;
+
 import fr.umlv.unitex.config.ConfigManager;
 import fr.umlv.unitex.config.NamedRepository;
+import fr.umlv.unitex.console.ConsoleEntry;
+import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.graphtools.Fst2Cache;
+import fr.umlv.unitex.process.ExecParameters;
 
 /**
+ * The graph is not compiled again if its .fst2 is up to date, according to
+ * {@link Fst2Cache}.
+ * 
  * @author Sébastien Paumier
  */
 public class Grf2Fst2Command extends CommandBuilder {
+	private File grf;
+	private File fst2;
+	private File alphabet;
+	private Fst2Cache cache;
+
 	public Grf2Fst2Command() {
 		super("Grf2Fst2");
 	}
 
 	public Grf2Fst2Command grf(File s) {
+		grf = s;
 		protectElement(s.getAbsolutePath());
 		ultraSimplifiedList.add(s.getName());
 		return this;
 	}
 
+	/**
+	 * Returns the graph to compile, or null if it has not been given.
+	 */
+	public File getGrf() {
+		return grf;
+	}
+
 	public Grf2Fst2Command enableLoopAndRecursionDetection(boolean b) {
 		element(b ? "-y" : "-n");
 		return this;
@@ -53,6 +76,7 @@ public class Grf2Fst2Command extends CommandBuilder {
 	public Grf2Fst2Command alphabetTokenization(File f) {
 		if (f == null)
 			return this;
+		alphabet = f;
 		protectElement("--alphabet=" + f.getAbsolutePath());
 		return this;
 	}
@@ -122,6 +146,8 @@ public class Grf2Fst2Command extends CommandBuilder {
 	}
 
 	public Grf2Fst2Command output(File fst2) {
+		this.fst2 = fst2;
+		partialOutput(fst2);
 		element("-o");
 		protectElement(fst2.getAbsolutePath());
 		return this;
@@ -148,4 +174,61 @@ public class Grf2Fst2Command extends CommandBuilder {
         return this;
     }
 
+	private Fst2Cache createCache() {
+		if (grf == null) {
+			return null;
+		}
+		File f = fst2;
+		if (f == null) {
+			f = new File(FileUtil.getFileNameWithoutExtension(grf) + ".fst2");
+		}
+		final ArrayList<String> args = new ArrayList<String>();
+		for (final String arg : getCommandArguments(true)) {
+			if (!arg.startsWith("--time=")) {
+				args.add(arg);
+			}
+		}
+		final Fst2Cache c = new Fst2Cache(grf, f, args.toArray(new String[args
+				.size()]));
+		if (alphabet != null) {
+			c.addFile(alphabet);
+		}
+		return c;
+	}
+
+	@Override
+	public boolean executeCommand(final ExecParameters parameters,
+			ConsoleEntry entry) {
+		cache = createCache();
+		if (cache == null || !cache.isUpToDate()) {
+			if (cache != null) {
+				/* If the compilation fails, it will be done again next time */
+				cache.clear();
+			}
+			return super.executeCommand(parameters, entry);
+		}
+		if (entry != null) {
+			/* There is no stream to wait for */
+			entry.setNormalStreamEnded(true);
+			entry.setErrorStreamEnded(true);
+		}
+		if (parameters.getStdout() != null) {
+			final String message = "Graph " + grf.getName()
+					+ " has not changed since its last compilation\n";
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					parameters.getStdout().addLine(new Couple(message, false));
+				}
+			});
+		}
+		return true;
+	}
+
+	@Override
+	protected void processEnded(int retValue) {
+		if (cache != null && isCommandSuccessful(retValue)) {
+			cache.save();
+		}
+	}
 }
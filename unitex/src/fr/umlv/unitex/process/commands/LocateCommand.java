@@ -24,6 +24,7 @@ import java.io.File;
 import java.util.ArrayList;
 
 import fr.umlv.unitex.config.InjectedVariable;
+import fr.umlv.unitex.files.FileUtil;
 
 /**
  * @author Sébastien Paumier
@@ -35,6 +36,9 @@ public class LocateCommand extends CommandBuilder {
 	}
 
 	public LocateCommand snt(File s) {
+		final File sntDir = FileUtil.getSntDir(s);
+		partialOutput(new File(sntDir, "concord.ind"));
+		partialOutput(new File(sntDir, "concord.n"));
 		protectElement("-t" + s.getAbsolutePath());
 		ultraSimplifiedList.add(s.getName());
 		return this;
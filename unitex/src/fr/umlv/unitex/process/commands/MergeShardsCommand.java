@@ -0,0 +1,73 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process.commands;
+
+import java.io.File;
+
+import fr.umlv.unitex.text.CorpusShards;
+
+/**
+ * This command merges the results of the preprocessing and of the Locate
+ * operations applied to the shards of a text into the snt of the text.
+ */
+public class MergeShardsCommand extends AbstractMethodCommand {
+
+	private File snt;
+	private File[] shardSnts;
+	private int limit = -1;
+	private File alphabet;
+
+	public MergeShardsCommand() {
+		super("merge");
+	}
+
+	public MergeShardsCommand merge(File s, File[] shards) {
+		this.snt = s;
+		this.shardSnts = shards;
+		protectElement(snt.getAbsolutePath());
+		for (final File f : shards) {
+			protectElement(f.getAbsolutePath());
+		}
+		return this;
+	}
+
+	/**
+	 * Keeps only the first n matches, like Locate would do on the whole text.
+	 */
+	public MergeShardsCommand limit(int n) {
+		this.limit = n;
+		return this;
+	}
+
+	/**
+	 * Tells which tokens are simple forms in the statistics of the text.
+	 */
+	public MergeShardsCommand alphabet(File f) {
+		this.alphabet = f;
+		return this;
+	}
+
+	@Override
+	public boolean execute() {
+		return CorpusShards.merge(snt, shardSnts, limit, alphabet);
+	}
+
+}
@@ -25,14 +25,46 @@ import java.util.ArrayList;
 /**
  * This class provides facilities for build process command lines.
  * 
+ * Commands are grouped into steps. A command added with addCommand is a step
+ * by itself, and consecutive commands added with addParallelCommand form a
+ * single step. The commands of a step don't depend on each other, so they may
+ * be run at the same time, but a step only starts once all the commands of
+ * the previous steps are done. A whole MultiCommands can also be added to a
+ * parallel step with addParallelCommands: its commands form a lane, in which
+ * they are run one after the other, while the other lanes of the step run.
+ * 
+ * When a command fails or is canceled, the following ones are skipped, except
+ * the ones added with addFinalCommand, that are meant to clean up. Commands
+ * added with a Condition are skipped if it holds when their step starts.
+ * 
  * @author Sébastien Paumier
  * 
  */
 public class MultiCommands {
+	/**
+	 * A test made just before some commands are run, so that it can depend
+	 * on what the previous commands have done.
+	 */
+	public interface Condition {
+		boolean holds();
+	}
+
 	private final ArrayList<CommandBuilder> list;
+	private final ArrayList<Integer> steps;
+	private final ArrayList<Integer> lanes;
+	private final ArrayList<Boolean> finals;
+	private final ArrayList<Condition> skips;
+	private int numberOfSteps = 0;
+	private int numberOfLanes = 0;
+	/* true if the last step accepts more parallel commands */
+	private boolean parallelStepOpen = false;
 
 	public MultiCommands() {
 		list = new ArrayList<CommandBuilder>();
+		steps = new ArrayList<Integer>();
+		lanes = new ArrayList<Integer>();
+		finals = new ArrayList<Boolean>();
+		skips = new ArrayList<Condition>();
 	}
 
 	public MultiCommands(CommandBuilder builder) {
@@ -44,6 +76,62 @@ public class MultiCommands {
 		if (builder == null)
 			return;
 		list.add(builder);
+		steps.add(numberOfSteps++);
+		lanes.add(numberOfLanes++);
+		finals.add(false);
+		skips.add(null);
+		parallelStepOpen = false;
+	}
+
+	/**
+	 * Adds a command that is run even if a previous command has failed or has
+	 * been canceled. It is a step by itself.
+	 */
+	public void addFinalCommand(CommandBuilder builder) {
+		if (builder == null)
+			return;
+		addCommand(builder);
+		finals.set(finals.size() - 1, true);
+	}
+
+	/**
+	 * Adds a command that doesn't depend on the other commands of the current
+	 * parallel step, which is created if needed.
+	 */
+	public void addParallelCommand(CommandBuilder builder) {
+		if (builder == null)
+			return;
+		if (!parallelStepOpen) {
+			numberOfSteps++;
+			parallelStepOpen = true;
+		}
+		list.add(builder);
+		steps.add(numberOfSteps - 1);
+		lanes.add(numberOfLanes++);
+		finals.add(false);
+		skips.add(null);
+	}
+
+	/**
+	 * Adds the given commands to the current parallel step, which is created
+	 * if needed. They will be run one after the other, in the order of cmds,
+	 * but they don't depend on the other commands of the step.
+	 */
+	public void addParallelCommands(MultiCommands cmds) {
+		if (cmds == null || cmds.numberOfCommands() == 0)
+			return;
+		if (!parallelStepOpen) {
+			numberOfSteps++;
+			parallelStepOpen = true;
+		}
+		for (int i = 0; i < cmds.numberOfCommands(); i++) {
+			list.add(cmds.getCommand(i));
+			steps.add(numberOfSteps - 1);
+			lanes.add(numberOfLanes);
+			finals.add(cmds.isFinal(i));
+			skips.add(cmds.skips.get(i));
+		}
+		numberOfLanes++;
 	}
 
 	public void addCommand(MultiCommands cmds) {
@@ -51,6 +139,33 @@ public class MultiCommands {
 			return;
 		for (int i = 0; i < cmds.numberOfCommands(); i++) {
 			list.add(cmds.getCommand(i));
+			steps.add(numberOfSteps + cmds.getStep(i));
+			lanes.add(numberOfLanes + cmds.getLane(i));
+			finals.add(cmds.isFinal(i));
+			skips.add(cmds.skips.get(i));
+		}
+		numberOfSteps += cmds.numberOfSteps;
+		numberOfLanes += cmds.numberOfLanes;
+		parallelStepOpen = false;
+	}
+
+	/**
+	 * Adds the given commands like addCommand, but each of them is skipped if
+	 * the given condition holds when its step starts.
+	 */
+	public void addCommand(MultiCommands cmds, final Condition skip) {
+		if (cmds == null)
+			return;
+		final int first = list.size();
+		addCommand(cmds);
+		for (int i = first; i < list.size(); i++) {
+			final Condition old = skips.get(i);
+			skips.set(i, (old == null) ? skip : new Condition() {
+				@Override
+				public boolean holds() {
+					return skip.holds() || old.holds();
+				}
+			});
 		}
 	}
 
@@ -58,6 +173,38 @@ public class MultiCommands {
 		return list.get(n);
 	}
 
+	/**
+	 * Returns the step of the command #n. Steps are numbered from 0, in the
+	 * order of the commands.
+	 */
+	public int getStep(int n) {
+		return steps.get(n);
+	}
+
+	/**
+	 * Returns the lane of the command #n. Commands of the same step and of the
+	 * same lane must be run one after the other.
+	 */
+	public int getLane(int n) {
+		return lanes.get(n);
+	}
+
+	/**
+	 * Tells whether the command #n must be run even after a failure.
+	 */
+	public boolean isFinal(int n) {
+		return finals.get(n);
+	}
+
+	/**
+	 * Tells whether the command #n must be skipped. This must be called when
+	 * its step starts.
+	 */
+	public boolean mustSkip(int n) {
+		final Condition skip = skips.get(n);
+		return skip != null && skip.holds();
+	}
+
 	public int numberOfCommands() {
 		return list.size();
 	}
@@ -0,0 +1,72 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.process.commands;
+
+import java.io.File;
+
+import fr.umlv.unitex.text.CorpusShards;
+
+/**
+ * This command writes the shards of a text, as computed by
+ * CorpusShards.getShardBounds. As shards are cut at sentence boundaries, the
+ * text may give fewer shards than asked for: the commands of the shards that
+ * have not been written must then be skipped, with the condition given by
+ * {@link #isMissing(int)}.
+ */
+public class SplitCorpusCommand extends AbstractMethodCommand {
+
+	private File txt;
+	private File[] shards;
+	/* The number of shards written, known once the command has been run */
+	private volatile int written = -1;
+
+	public SplitCorpusCommand() {
+		super("split");
+	}
+
+	public SplitCorpusCommand split(File t, File[] s) {
+		this.txt = t;
+		this.shards = s;
+		protectElement(txt.getAbsolutePath());
+		element(String.valueOf(shards.length));
+		return this;
+	}
+
+	/**
+	 * Returns a condition that holds if the shard #n has not been written.
+	 * It must only be tested once this command has been run.
+	 */
+	public MultiCommands.Condition isMissing(final int n) {
+		return new MultiCommands.Condition() {
+			@Override
+			public boolean holds() {
+				return n >= written;
+			}
+		};
+	}
+
+	@Override
+	public boolean execute() {
+		written = CorpusShards.split(txt, shards);
+		return written != -1;
+	}
+
+}
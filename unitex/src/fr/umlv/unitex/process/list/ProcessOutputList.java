@@ -34,7 +34,7 @@ import fr.umlv.unitex.console.Couple;
  * @author paumier
  * 
  */
-public class ProcessOutputList extends JList {
+public class ProcessOutputList extends JList<Couple> {
 
 	private boolean autoscroll;
 
@@ -48,7 +48,7 @@ public class ProcessOutputList extends JList {
 		this.autoscroll = autoscroll;
 		setCellRenderer(new DefaultListCellRenderer() {
 			@Override
-			public Component getListCellRendererComponent(JList list,
+			public Component getListCellRendererComponent(JList<?> list,
 					Object value, int index, boolean isSelected,
 					boolean cellHasFocus) {
 				final Couple c = (Couple) value;
@@ -68,7 +68,7 @@ public class ProcessOutputList extends JList {
 	}
 
 	@Override
-	public void setModel(ListModel model) {
+	public void setModel(ListModel<Couple> model) {
 		throw new UnsupportedOperationException(
 				"Cannot set model on a ProcessOutputList");
 	}
@@ -89,6 +89,24 @@ public class ProcessOutputList extends JList {
 		}
 	}
 
+	/**
+	 * Adds several lines at once, and makes the last one visible. Line #i is
+	 * added as a replacable line if replacable[i] is true.
+	 */
+	public void addLines(Couple[] lines, boolean[] replacable) {
+		final ProcessOutputListModel model = getModel();
+		for (int i = 0; i < lines.length; i++) {
+			if (replacable[i]) {
+				model.addReplacableLine(lines[i]);
+			} else {
+				model.addLine(lines[i]);
+			}
+		}
+		if (autoscroll && lines.length != 0) {
+			ensureIndexIsVisible(model.getSize() - 1);
+		}
+	}
+
 	public void empty() {
 		getModel().removeAllElements();
 	}
@@ -20,36 +20,120 @@
  */
 package fr.umlv.unitex.process.list;
 
-import javax.swing.DefaultListModel;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.swing.AbstractListModel;
 
 import fr.umlv.unitex.console.Couple;
+import fr.umlv.unitex.io.SpillLog;
 
 /**
  * This class provides a list model with a method to replace the last element.
  * It is used for console message: when a message is just ended by \r, we
  * interprete it as a line that must erase the previous one.
  * 
+ * Only the last maxLines lines are kept in memory, in a ring buffer. Older
+ * lines are moved by batches to a SpillLog, from which they are read back
+ * when they are displayed again.
+ * 
  * @author Sébastien Paumier
  */
-public class ProcessOutputListModel extends DefaultListModel {
+public class ProcessOutputListModel extends AbstractListModel<Couple> {
+	public static final int DEFAULT_MAX_LINES = 10000;
+	/* At most 16 segments of 65536 lines are kept on disk */
+	static final int MAX_SPILL_SEGMENTS = 16;
+	static final SpillLog.Codec<Couple> CODEC = new SpillLog.Codec<Couple>() {
+		@Override
+		public void write(DataOutput out, Couple c) throws IOException {
+			out.writeBoolean(c.isSystemMessage());
+			final byte[] bytes = c.getString().getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
 
+		@Override
+		public Couple read(DataInput in) throws IOException {
+			final boolean systemMessage = in.readBoolean();
+			final byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new Couple(new String(bytes, "UTF-8"), systemMessage);
+		}
+	};
+	private final Couple[] lines;
+	/* Index in lines of the oldest line in memory, and number of such lines */
+	private int head = 0;
+	private int count = 0;
+	private SpillLog<Couple> spilled;
 	boolean lastLineReplacable = false;
 
+	public ProcessOutputListModel(int maxLines) {
+		if (maxLines < 4) {
+			throw new IllegalArgumentException("Invalid line number: "
+					+ maxLines);
+		}
+		lines = new Couple[maxLines];
+	}
+
+	public ProcessOutputListModel() {
+		this(DEFAULT_MAX_LINES);
+	}
+
+	private int spilledSize() {
+		return (spilled == null) ? 0 : spilled.size();
+	}
+
+	@Override
+	public int getSize() {
+		return spilledSize() + count;
+	}
+
+	public int size() {
+		return getSize();
+	}
+
+	@Override
+	public Couple getElementAt(int index) {
+		return get(index);
+	}
+
+	public Couple get(int index) {
+		final int n = spilledSize();
+		if (index < n) {
+			return spilled.get(index);
+		}
+		if (index - n >= count) {
+			throw new ArrayIndexOutOfBoundsException(index + " >= "
+					+ getSize());
+		}
+		return lines[(head + index - n) % lines.length];
+	}
+
+	public void removeAllElements() {
+		final int size = getSize();
+		if (spilled != null) {
+			spilled.clear();
+		}
+		Arrays.fill(lines, null);
+		head = 0;
+		count = 0;
+		lastLineReplacable = false;
+		if (size > 0) {
+			fireIntervalRemoved(this, 0, size - 1);
+		}
+	}
+
 	void addReplacableLine(Couple c) {
 		if (lastLineReplacable) {
 			replaceLastLine(c);
 		} else {
-			super.addElement(c);
+			append(c);
 		}
 		lastLineReplacable = true;
 	}
 
-	@Override
-	public void addElement(Object obj) {
-		throw new UnsupportedOperationException(
-				"You should not invoke this method. Please use addLine and replaceLastLine from ProcessOutputList");
-	}
-
 	void addLine(Couple c) {
 		if (c.getString().equals("")) {
 			/*
@@ -61,25 +145,58 @@ public class ProcessOutputListModel extends DefaultListModel {
 			if (lastLineReplacable) {
 				lastLineReplacable = false;
 			} else {
-				super.addElement(c);
+				append(c);
 			}
 			return;
 		}
 		if (lastLineReplacable) {
 			replaceLastLine(c);
 		} else {
-			super.addElement(c);
+			append(c);
 		}
 		lastLineReplacable = false;
 	}
 
+	private void append(Couple c) {
+		if (count == lines.length) {
+			spillOldLines();
+		}
+		lines[(head + count) % lines.length] = c;
+		count++;
+		final int index = getSize() - 1;
+		fireIntervalAdded(this, index, index);
+	}
+
+	/**
+	 * Moves the oldest quarter of the lines in memory to the spill log. This
+	 * doesn't change the indices of lines, unless the log has to forget its
+	 * oldest lines.
+	 */
+	private void spillOldLines() {
+		if (spilled == null) {
+			spilled = new SpillLog<Couple>(CODEC, MAX_SPILL_SEGMENTS);
+		}
+		final int n = lines.length / 4;
+		final Couple[] old = new Couple[n];
+		for (int i = 0; i < n; i++) {
+			old[i] = lines[(head + i) % lines.length];
+			lines[(head + i) % lines.length] = null;
+		}
+		head = (head + n) % lines.length;
+		count -= n;
+		final int removed = spilled.append(Arrays.asList(old));
+		if (removed > 0) {
+			fireIntervalRemoved(this, 0, removed - 1);
+		}
+	}
+
 	private void replaceLastLine(Couple c) {
-		final int size = size();
-		if (size == 0) {
-			super.addElement(c);
+		if (count == 0) {
+			append(c);
 		} else {
-			set(size - 1, c);
-			fireContentsChanged(this, size - 1, size - 1);
+			lines[(head + count - 1) % lines.length] = c;
+			final int index = getSize() - 1;
+			fireContentsChanged(this, index, index);
 		}
 	}
 }
@@ -0,0 +1,988 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class splits a text into shards that can be preprocessed and searched
+ * at the same time, and then merges the _snt directories of the shards into
+ * the one of the whole text, as if the text had been processed in one piece.
+ *
+ * Shards are only cut at the start of a sentence, that is to say just after
+ * a {S} sentence delimiter or an empty line, and the separators that follow
+ * it. Each shard is then made of whole sentences. As Locate does not look for
+ * matches across sentences, no match can cross the boundary between two
+ * shards, and Sentence.grf and Replace.grf see the same sentence ends as in
+ * the whole text. If no sentence boundary is found near the place where a cut
+ * should be made, no cut is made there, and the text of the two shards goes
+ * into a single one, so that a text may give fewer shards than asked for.
+ *
+ * The text.cod of the text is the concatenation of the ones of the shards,
+ * once token numbers have been translated, and a match at position p in
+ * shard #i is at position p+offset(i) in the text, where offset(i) is the
+ * number of tokens of the shards before #i.
+ */
+public class CorpusShards {
+	/** Shards smaller than this are not worth a process */
+	public static final long MIN_SHARD_SIZE = 1 << 20;
+	/** The number of bytes we look at to find where to cut a shard */
+	private static final int SEARCH_SIZE = 1 << 20;
+	private static final int BUFFER_SIZE = 1 << 16;
+	/* The files that are just appended to each other */
+	private static final String[] CONCATENATED_FILES = { "dlf", "dlc", "err",
+			"tags_err" };
+	/* The files whose positions must be shifted */
+	private static final String[] INDEX_FILES = { "concord.ind", "tags.ind" };
+	private static final String NEW_LINE = "\n";
+	private static final String SENTENCE_DELIMITER = "{S}";
+
+	private CorpusShards() {
+		/* No instance */
+	}
+
+	public static File getShardDir(File txt) {
+		return new File(SntUtil.getSntDir(txt), "shards");
+	}
+
+	public static File getShard(File txt, int n) {
+		return new File(getShardDir(txt), "shard" + n + ".txt");
+	}
+
+	/**
+	 * Returns the number of shards a text should be cut into, at most n, so
+	 * that none of them is smaller than MIN_SHARD_SIZE. Only the size of the
+	 * file is used, so this can be called before the text is read.
+	 */
+	public static int getShardCount(File txt, int n) {
+		return (int) Math.max(1, Math.min(n, txt.length() / MIN_SHARD_SIZE));
+	}
+
+	/**
+	 * Chooses where to cut the given text to get at most n shards of roughly
+	 * the same size. This only reads the text around the cuts. When there is
+	 * no sentence boundary there, the cut is not made, so that there may be
+	 * less than n shards.
+	 *
+	 * @return the bounds in bytes of the shards, shard #i being between
+	 *         bounds[i] and bounds[i+1], or null if the text cannot be read
+	 */
+	public static long[] getShardBounds(File txt, int n) {
+		final Encoding encoding = Encoding.getEncoding(txt);
+		if (encoding == null) {
+			return null;
+		}
+		try {
+			final FileInputStream stream = new FileInputStream(txt);
+			try {
+				final FileChannel in = stream.getChannel();
+				final long length = in.size();
+				final int bom = getBomLength(in, encoding);
+				final List<Long> bounds = new ArrayList<Long>();
+				bounds.add((long) bom);
+				for (int i = 1; i < n; i++) {
+					final long target = bom + (length - bom) * i / n;
+					final long previous = bounds.get(bounds.size() - 1);
+					final long cut = findCut(in, encoding, bom,
+							Math.max(target, previous + 1), length);
+					if (cut == -1) {
+						/* This shard and the next one are merged */
+						continue;
+					}
+					bounds.add(cut);
+				}
+				bounds.add(length);
+				final long[] res = new long[bounds.size()];
+				for (int i = 0; i < res.length; i++) {
+					res[i] = bounds.get(i);
+				}
+				return res;
+			} finally {
+				stream.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	private static boolean isSeparator(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	/**
+	 * Returns the position of the first sentence start in the SEARCH_SIZE
+	 * bytes that follow the given position. A sentence starts after a {S}
+	 * sentence delimiter or an empty line, once the separators that follow
+	 * have been skipped, since Normalize replaces them by a single separator.
+	 *
+	 * @return the position, or -1 if there is no sentence start in the
+	 *         searched area
+	 */
+	private static long findCut(FileChannel in, Encoding encoding, int bom,
+			long from, long length) throws IOException {
+		final int unit = (encoding == Encoding.UTF8) ? 1 : 2;
+		from = from - ((from - bom) % unit);
+		final long end = Math.min(length, from + SEARCH_SIZE);
+		final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		/* The number of chars of {S} that we have just read */
+		int delimiter = 0;
+		boolean afterDelimiter = false;
+		int newLines = 0;
+		long pos = from;
+		while (pos < end) {
+			buffer.clear();
+			buffer.limit((int) Math.min(BUFFER_SIZE, end - pos));
+			while (buffer.hasRemaining()) {
+				if (in.read(buffer, pos + buffer.position()) == -1) {
+					break;
+				}
+			}
+			buffer.flip();
+			final int size = buffer.limit() - (buffer.limit() % unit);
+			if (size == 0) {
+				break;
+			}
+			for (int i = 0; i < size; i += unit) {
+				final int c = getUnit(buffer, i, encoding);
+				if (isSeparator(c)) {
+					if (c == '\n') {
+						newLines++;
+					}
+					delimiter = 0;
+					continue;
+				}
+				if ((afterDelimiter || newLines >= 2) && pos + i > from) {
+					return pos + i;
+				}
+				afterDelimiter = false;
+				newLines = 0;
+				if (c == SENTENCE_DELIMITER.charAt(delimiter)) {
+					delimiter++;
+					if (delimiter == SENTENCE_DELIMITER.length()) {
+						afterDelimiter = true;
+						delimiter = 0;
+					}
+				} else {
+					delimiter = (c == SENTENCE_DELIMITER.charAt(0)) ? 1 : 0;
+				}
+			}
+			pos += size;
+		}
+		return -1;
+	}
+
+	private static int getUnit(ByteBuffer buffer, int i, Encoding encoding) {
+		final int b = buffer.get(i) & 0xFF;
+		if (encoding == Encoding.UTF8) {
+			return b;
+		}
+		final int b2 = buffer.get(i + 1) & 0xFF;
+		if (encoding == Encoding.UTF16LE) {
+			return b2 << 8 | b;
+		}
+		return b << 8 | b2;
+	}
+
+	private static int getBomLength(FileChannel in, Encoding encoding)
+			throws IOException {
+		if (encoding != Encoding.UTF8) {
+			return 2;
+		}
+		final ByteBuffer buffer = ByteBuffer.allocate(3);
+		while (buffer.hasRemaining()) {
+			if (in.read(buffer, buffer.position()) == -1) {
+				return 0;
+			}
+		}
+		if ((buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB
+				&& (buffer.get(2) & 0xFF) == 0xBF) {
+			return 3;
+		}
+		return 0;
+	}
+
+	private static int getBomLength(File f) throws IOException {
+		final Encoding encoding = Encoding.getEncoding(f);
+		if (encoding == null) {
+			return 0;
+		}
+		final FileInputStream stream = new FileInputStream(f);
+		try {
+			return getBomLength(stream.getChannel(), encoding);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Cuts the given text into at most as many shards as given. Each shard
+	 * starts with the BOM of the text, if any. If the text gives fewer shards,
+	 * only the first ones are written, and the other ones are removed, as well
+	 * as their snt files, so that {@link #merge} ignores them.
+	 *
+	 * @return the number of shards written, or -1 if an error occurred
+	 */
+	public static int split(File txt, File[] shards) {
+		final long[] bounds = getShardBounds(txt, shards.length);
+		if (bounds == null) {
+			return -1;
+		}
+		final int n = bounds.length - 1;
+		for (int i = n; i < shards.length; i++) {
+			shards[i].delete();
+			SntUtil.getSnt(shards[i]).delete();
+		}
+		return split(txt, bounds, shards) ? n : -1;
+	}
+
+	private static boolean split(File txt, long[] bounds, File[] shards) {
+		try {
+			final FileInputStream stream = new FileInputStream(txt);
+			try {
+				final FileChannel in = stream.getChannel();
+				for (int i = 0; i < bounds.length - 1; i++) {
+					shards[i].getParentFile().mkdirs();
+					final FileOutputStream out = new FileOutputStream(
+							shards[i]);
+					try {
+						final FileChannel channel = out.getChannel();
+						transfer(in, 0, bounds[0], channel);
+						transfer(in, bounds[i], bounds[i + 1], channel);
+					} finally {
+						out.close();
+					}
+				}
+			} finally {
+				stream.close();
+			}
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	private static void transfer(FileChannel in, long start, long end,
+			FileChannel out) throws IOException {
+		while (start < end) {
+			start += in.transferTo(start, end - start, out);
+		}
+	}
+
+	/**
+	 * Merges the _snt directories of the given shards into the one of the
+	 * given .snt file, and the shards themselves into the .snt file. The
+	 * dictionary files are only appended to each other, so they must be
+	 * sorted afterwards. If limit is not -1, only the first limit matches are
+	 * kept, like Locate would do on the whole text.
+	 *
+	 * Shards whose .snt file does not exist are the ones that {@link #split}
+	 * has not written, and they are ignored.
+	 *
+	 * Token frequencies and the figures of stats.n are counted again in the
+	 * merged text.cod, the alphabet telling which tokens are simple forms. If
+	 * it is null, letters are the ones of Java. The figures of concord.n are
+	 * counted again in the merged concord.ind. snt_offsets.pos is removed,
+	 * since the offsets of the shards cannot be put together.
+	 */
+	public static boolean merge(File snt, File[] allShardSnts, int limit,
+			File alphabet) {
+		final List<File> written = new ArrayList<File>();
+		for (final File f : allShardSnts) {
+			if (f.exists()) {
+				written.add(f);
+			}
+		}
+		final File[] shardSnts = written.toArray(new File[written.size()]);
+		final File sntDir = SntUtil.getSntDir(snt);
+		final File[] shardDirs = new File[shardSnts.length];
+		for (int i = 0; i < shardSnts.length; i++) {
+			shardDirs[i] = SntUtil.getSntDir(shardSnts[i]);
+		}
+		try {
+			concatenate(shardSnts, snt);
+			final List<String> tokens = new ArrayList<String>();
+			final int[][] translations = mergeTokens(shardDirs, sntDir, tokens);
+			final long[] counts = new long[tokens.size()];
+			final int[] offsets = mergeTextCod(shardDirs, sntDir,
+					translations, counts);
+			shiftPositions(shardDirs, sntDir, "enter.pos", offsets);
+			writeFrequencies(shardDirs, sntDir, "tok_by_freq.txt", tokens,
+					counts, true);
+			writeFrequencies(shardDirs, sntDir, "tok_by_alph.txt", tokens,
+					counts, false);
+			writeSummary(shardDirs, sntDir, "stats.n", getStatistics(tokens,
+					counts, loadLetters(alphabet)));
+			for (final String name : CONCATENATED_FILES) {
+				final File[] files = getExistingFiles(shardDirs, name);
+				if (files != null) {
+					concatenate(files, new File(sntDir, name));
+				}
+			}
+			int matches = -1;
+			for (final String name : INDEX_FILES) {
+				final int n = mergeIndex(shardDirs, sntDir, name, offsets,
+						"concord.ind".equals(name) ? limit : -1);
+				if ("concord.ind".equals(name)) {
+					matches = n;
+				}
+			}
+			if (matches != -1) {
+				final long units = countUnits(new File(sntDir, "concord.ind"));
+				final int size = offsets[shardDirs.length];
+				writeSummary(shardDirs, sntDir, "concord.n", getLocateInfo(
+						matches, units, size));
+			}
+			new File(sntDir, "snt_offsets.pos").delete();
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the files of the given name in the given directories, or null
+	 * if there is none. Missing files are considered as empty.
+	 */
+	private static File[] getExistingFiles(File[] dirs, String name) {
+		final File[] files = new File[dirs.length];
+		boolean found = false;
+		for (int i = 0; i < dirs.length; i++) {
+			files[i] = new File(dirs[i], name);
+			if (files[i].exists()) {
+				found = true;
+			}
+		}
+		return found ? files : null;
+	}
+
+	/**
+	 * Appends the given text files into dest, keeping only the BOM of the
+	 * first one.
+	 */
+	private static void concatenate(File[] files, File dest)
+			throws IOException {
+		final FileOutputStream out = new FileOutputStream(dest);
+		try {
+			final FileChannel channel = out.getChannel();
+			boolean first = true;
+			for (final File f : files) {
+				if (!f.exists()) {
+					continue;
+				}
+				final int bom = first ? 0 : getBomLength(f);
+				first = false;
+				final FileInputStream stream = new FileInputStream(f);
+				try {
+					final FileChannel in = stream.getChannel();
+					transfer(in, bom, in.size(), channel);
+				} finally {
+					stream.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Builds the tokens.txt of the whole text. Tokens are numbered in the
+	 * order of their first occurrence, so that the ones of the first shard
+	 * keep their numbers. The tokens of the text are added to the given list.
+	 *
+	 * @return for each shard, the new numbers of its tokens
+	 */
+	private static int[][] mergeTokens(File[] shardDirs, File sntDir,
+			List<String> tokens) throws IOException {
+		final Map<String, Integer> numbers = new HashMap<String, Integer>();
+		final int[][] translations = new int[shardDirs.length][];
+		TextFile format = null;
+		for (int i = 0; i < shardDirs.length; i++) {
+			final TextFile f = TextFile.read(new File(shardDirs[i],
+					"tokens.txt"));
+			if (format == null) {
+				format = f;
+			}
+			final List<String> shardTokens = getTokens(f.lines);
+			translations[i] = new int[shardTokens.size()];
+			for (int j = 0; j < translations[i].length; j++) {
+				final String token = shardTokens.get(j);
+				Integer number = numbers.get(token);
+				if (number == null) {
+					number = tokens.size();
+					numbers.put(token, number);
+					tokens.add(token);
+				}
+				translations[i][j] = number;
+			}
+		}
+		final Writer w = format.createWriter(new File(sntDir, "tokens.txt"));
+		try {
+			w.write(tokens.size() + format.eol);
+			for (final String token : tokens) {
+				/* The new line token is written as is */
+				w.write((NEW_LINE.equals(token) ? format.eol : token)
+						+ format.eol);
+			}
+		} finally {
+			w.close();
+		}
+		return translations;
+	}
+
+	/**
+	 * Returns the tokens of a tokens.txt file, given by its lines. The first
+	 * line is the number of tokens, and then each token is followed by a new
+	 * line. No token is empty, so an empty line can only be the new line
+	 * token, which is then followed by a second empty line.
+	 */
+	private static List<String> getTokens(List<String> lines) throws IOException {
+		if (lines.isEmpty()) {
+			throw new IOException("Empty token list");
+		}
+		final int n;
+		try {
+			n = Integer.parseInt(lines.get(0).trim());
+		} catch (final NumberFormatException e) {
+			throw new IOException("Invalid token number: " + lines.get(0));
+		}
+		final List<String> tokens = new ArrayList<String>(n);
+		boolean newLine = false;
+		for (int i = 1; i < lines.size(); i++) {
+			final String token = lines.get(i);
+			if (token.length() != 0) {
+				tokens.add(token);
+				continue;
+			}
+			if (newLine || i + 1 == lines.size()
+					|| lines.get(i + 1).length() != 0) {
+				throw new IOException("Unexpected empty line in token list");
+			}
+			newLine = true;
+			tokens.add(NEW_LINE);
+			i++;
+		}
+		if (tokens.size() != n) {
+			throw new IOException("Found " + tokens.size()
+					+ " tokens instead of " + n);
+		}
+		return tokens;
+	}
+
+	/**
+	 * Builds the text.cod of the whole text, which is made of little endian
+	 * ints, like the ones of the shards. The occurrences of each token are
+	 * counted in counts.
+	 *
+	 * @return for each shard, the number of tokens of the previous shards
+	 */
+	private static int[] mergeTextCod(File[] shardDirs, File sntDir,
+			int[][] translations, long[] counts) throws IOException {
+		final int[] offsets = new int[shardDirs.length + 1];
+		final FileOutputStream out = new FileOutputStream(new File(sntDir,
+				"text.cod"));
+		try {
+			final FileChannel channel = out.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < shardDirs.length; i++) {
+				final FileInputStream stream = new FileInputStream(new File(
+						shardDirs[i], "text.cod"));
+				int n = 0;
+				try {
+					final FileChannel in = stream.getChannel();
+					while (in.read(buffer) != -1) {
+						buffer.flip();
+						final int end = buffer.limit() & ~3;
+						for (int pos = 0; pos < end; pos += 4) {
+							final int token = translations[i][buffer
+									.getInt(pos)];
+							buffer.putInt(pos, token);
+							counts[token]++;
+						}
+						n += end / 4;
+						write(buffer, end, channel);
+					}
+				} finally {
+					stream.close();
+				}
+				offsets[i + 1] = offsets[i] + n;
+			}
+		} finally {
+			out.close();
+		}
+		return offsets;
+	}
+
+	/**
+	 * Writes the first end bytes of the given flipped buffer, and keeps the
+	 * other ones, which belong to an int that has not been fully read yet.
+	 */
+	private static void write(ByteBuffer buffer, int end, FileChannel out)
+			throws IOException {
+		final ByteBuffer data = buffer.duplicate();
+		data.limit(end);
+		while (data.hasRemaining()) {
+			out.write(data);
+		}
+		buffer.position(end);
+		buffer.compact();
+	}
+
+	/**
+	 * Merges binary files made of little endian positions in text.cod.
+	 */
+	private static void shiftPositions(File[] shardDirs, File sntDir,
+			String name, int[] offsets) throws IOException {
+		final File[] files = getExistingFiles(shardDirs, name);
+		if (files == null) {
+			return;
+		}
+		final FileOutputStream out = new FileOutputStream(new File(sntDir,
+				name));
+		try {
+			final FileChannel channel = out.getChannel();
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < files.length; i++) {
+				if (!files[i].exists()) {
+					continue;
+				}
+				final FileInputStream stream = new FileInputStream(files[i]);
+				try {
+					final FileChannel in = stream.getChannel();
+					while (in.read(buffer) != -1) {
+						buffer.flip();
+						final int end = buffer.limit() & ~3;
+						for (int pos = 0; pos < end; pos += 4) {
+							buffer.putInt(pos, buffer.getInt(pos) + offsets[i]);
+						}
+						write(buffer, end, channel);
+					}
+				} finally {
+					stream.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes a token list made of lines like "token\tfrequency" or
+	 * "frequency\ttoken", as the ones of the shards, with the frequencies
+	 * counted in the text. The list is sorted by decreasing frequency, or in
+	 * char order, tokens being in the order of their numbers otherwise.
+	 */
+	private static void writeFrequencies(File[] shardDirs, File sntDir,
+			String name, final List<String> tokens, final long[] counts,
+			boolean byFrequency) throws IOException {
+		final File[] files = getExistingFiles(shardDirs, name);
+		if (files == null) {
+			return;
+		}
+		TextFile format = null;
+		for (int i = 0; format == null; i++) {
+			if (files[i].exists()) {
+				format = TextFile.read(files[i]);
+			}
+		}
+		final boolean frequencyFirst = isFrequencyFirst(format.lines);
+		final List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] != 0) {
+				order.add(i);
+			}
+		}
+		if (byFrequency) {
+			Collections.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					final long d = counts[b] - counts[a];
+					return (d < 0) ? -1 : ((d > 0) ? 1 : a - b);
+				}
+			});
+		} else {
+			Collections.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					final int d = tokens.get(a).compareTo(tokens.get(b));
+					return (d != 0) ? d : a - b;
+				}
+			});
+		}
+		final Writer w = format.createWriter(new File(sntDir, name));
+		try {
+			for (final Integer i : order) {
+				final String token = tokens.get(i);
+				final String t = NEW_LINE.equals(token) ? format.eol : token;
+				w.write((frequencyFirst ? counts[i] + "\t" + t : t + "\t"
+						+ counts[i])
+						+ format.eol);
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * Tells whether the given lines are like "frequency\ttoken". Tokens may be
+	 * numbers, so we look for a line where only one side is a number.
+	 */
+	private static boolean isFrequencyFirst(List<String> lines) {
+		for (final String line : lines) {
+			final int first = line.indexOf('\t');
+			if (first == -1) {
+				continue;
+			}
+			final boolean before = isNumber(line.substring(0, first));
+			final boolean after = isNumber(line.substring(line
+					.lastIndexOf('\t') + 1));
+			if (before != after) {
+				return before;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNumber(String s) {
+		return s.length() != 0 && skipDigits(s, 0) == s.length();
+	}
+
+	/**
+	 * Merges the .ind files of the given name, shifting the token positions of
+	 * each shard. The header is the one of the first shard that has such a
+	 * file.
+	 *
+	 * @return the number of matches, or -1 if there is no such file
+	 */
+	private static int mergeIndex(File[] shardDirs, File sntDir, String name,
+			int[] offsets, int limit) throws IOException {
+		final File[] files = getExistingFiles(shardDirs, name);
+		if (files == null) {
+			return -1;
+		}
+		int matches = 0;
+		Writer w = null;
+		String eol = null;
+		try {
+			for (int i = 0; i < files.length; i++) {
+				if (!files[i].exists()) {
+					continue;
+				}
+				final TextFile format = TextFile.open(files[i]);
+				final BufferedReader reader = format.reader;
+				try {
+					final boolean first = (w == null);
+					if (first) {
+						eol = format.eol;
+						w = format.createWriter(new File(sntDir, name));
+					}
+					String line;
+					boolean header = true;
+					while ((line = reader.readLine()) != null) {
+						if (line.startsWith("#")) {
+							if (header && first) {
+								w.write(line + eol);
+							}
+							continue;
+						}
+						header = false;
+						if (limit != -1 && matches >= limit) {
+							break;
+						}
+						w.write(shift(line, offsets[i]) + eol);
+						matches++;
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			if (w != null) {
+				w.close();
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Shifts the start and end positions of a match line like
+	 * "12.0.0 14.2.0 output".
+	 */
+	private static String shift(String line, int offset) {
+		final int i = skipDigits(line, 0);
+		final int space = line.indexOf(' ', i);
+		if (i == 0 || space == -1) {
+			return line;
+		}
+		final int j = skipDigits(line, space + 1);
+		if (j == space + 1) {
+			return line;
+		}
+		final int start = Integer.parseInt(line.substring(0, i)) + offset;
+		final int end = Integer.parseInt(line.substring(space + 1, j))
+				+ offset;
+		return start + line.substring(i, space + 1) + end + line.substring(j);
+	}
+
+	/**
+	 * Returns the number of tokens covered by the matches of the given
+	 * concord.ind, like the "recognized units" of Locate.
+	 */
+	private static long countUnits(File ind) throws IOException {
+		final TextFile format = TextFile.open(ind);
+		final BufferedReader reader = format.reader;
+		long units = 0;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int i = skipDigits(line, 0);
+				final int space = line.indexOf(' ', i);
+				if (line.startsWith("#") || i == 0 || space == -1) {
+					continue;
+				}
+				final int j = skipDigits(line, space + 1);
+				if (j == space + 1) {
+					continue;
+				}
+				units += Integer.parseInt(line.substring(space + 1, j))
+						- Integer.parseInt(line.substring(0, i)) + 1;
+			}
+		} finally {
+			reader.close();
+		}
+		return units;
+	}
+
+	/**
+	 * Returns the lines of concord.n, as written by Locate, for a text of the
+	 * given number of tokens.
+	 */
+	private static String[] getLocateInfo(int matches, long units, int size) {
+		final String m = matches + " match" + ((matches == 1) ? "" : "es");
+		final String u = units + " recognized units";
+		if (size == 0) {
+			return new String[] { m, u };
+		}
+		return new String[] {
+				m,
+				u,
+				"(" + String.format(Locale.ROOT, "%2.3f", units * 100.0 / size)
+						+ "% of the text is covered)" };
+	}
+
+	private static int skipDigits(String s, int i) {
+		while (i < s.length() && Character.isDigit(s.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the line of stats.n, as written by Tokenize, for the given
+	 * tokens and numbers of occurrences. Simple forms are the tokens that
+	 * start with a letter, and digits the ones that start with 0-9.
+	 */
+	private static String getStatistics(List<String> tokens, long[] counts,
+			BitSet letters) {
+		long sentences = 0;
+		long total = 0;
+		long words = 0;
+		long digits = 0;
+		int differentWords = 0;
+		int differentDigits = 0;
+		for (int i = 0; i < counts.length; i++) {
+			final String token = tokens.get(i);
+			total += counts[i];
+			final char c = token.charAt(0);
+			if (SENTENCE_DELIMITER.equals(token)) {
+				sentences += counts[i];
+			} else if (c >= '0' && c <= '9') {
+				digits += counts[i];
+				differentDigits++;
+			} else if ((letters == null) ? Character.isLetter(c) : letters
+					.get(c)) {
+				words += counts[i];
+				differentWords++;
+			}
+		}
+		return sentences + " sentence delimiter" + plural(sentences) + ", "
+				+ total + " (" + tokens.size() + " diff) token"
+				+ plural(total) + ", " + words + " (" + differentWords
+				+ ") simple form" + plural(words) + ", " + digits + " ("
+				+ differentDigits + ") digit" + plural(digits);
+	}
+
+	private static String plural(long n) {
+		return (n > 1) ? "s" : "";
+	}
+
+	/**
+	 * Returns the letters of the given alphabet file, or null if there is
+	 * none. Each line of the file contains a letter and its variants, or a #
+	 * followed by the first and the last letters of a range.
+	 */
+	private static BitSet loadLetters(File alphabet) {
+		if (alphabet == null) {
+			return null;
+		}
+		final String content = Encoding.getContent(alphabet);
+		if (content == null) {
+			return null;
+		}
+		final BitSet letters = new BitSet(65536);
+		for (final String line : content.split("\r?\n")) {
+			if (line.length() == 3 && line.charAt(0) == '#') {
+				letters.set(line.charAt(1), line.charAt(2) + 1);
+				continue;
+			}
+			for (int i = 0; i < line.length(); i++) {
+				letters.set(line.charAt(i));
+			}
+		}
+		return letters;
+	}
+
+	/**
+	 * Writes a small file of statistics like stats.n or concord.n, with the
+	 * encoding and the new lines of the ones of the shards.
+	 */
+	private static void writeSummary(File[] shardDirs, File sntDir,
+			String name, String... lines) throws IOException {
+		final File[] files = getExistingFiles(shardDirs, name);
+		if (files == null) {
+			return;
+		}
+		TextFile format = null;
+		for (int i = 0; format == null; i++) {
+			if (files[i].exists()) {
+				format = TextFile.open(files[i]);
+				format.reader.close();
+			}
+		}
+		final Writer w = format.createWriter(new File(sntDir, name));
+		try {
+			for (final String line : lines) {
+				w.write(line + format.eol);
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * The lines of a text file produced by a Unitex program, with its
+	 * encoding, so that we can write merged files the same way.
+	 */
+	private static class TextFile {
+		Encoding encoding;
+		boolean utf8Bom;
+		String eol = "\n";
+		BufferedReader reader;
+		List<String> lines;
+
+		static TextFile open(File f) throws IOException {
+			final TextFile t = new TextFile();
+			t.encoding = Encoding.getEncoding(f);
+			if (t.encoding == null) {
+				t.encoding = Encoding.UTF8;
+			}
+			final int bom = getBomLength(f);
+			t.utf8Bom = (t.encoding == Encoding.UTF8 && bom != 0);
+			/* We look for the first new line to know how lines end */
+			final FileInputStream stream = new FileInputStream(f);
+			final InputStreamReader r = new InputStreamReader(stream,
+					t.encoding.getCharset());
+			try {
+				long skipped = 0;
+				while (skipped < bom) {
+					skipped += stream.skip(bom - skipped);
+				}
+				int c;
+				int previous = -1;
+				while ((c = r.read()) != -1) {
+					if (c == '\n') {
+						t.eol = (previous == '\r') ? "\r\n" : "\n";
+						break;
+					}
+					previous = c;
+				}
+			} finally {
+				r.close();
+			}
+			final FileInputStream in = new FileInputStream(f);
+			long skipped = 0;
+			while (skipped < bom) {
+				skipped += in.skip(bom - skipped);
+			}
+			t.reader = new BufferedReader(new InputStreamReader(in,
+					t.encoding.getCharset()), BUFFER_SIZE);
+			return t;
+		}
+
+		static TextFile read(File f) throws IOException {
+			final TextFile t = open(f);
+			t.lines = new ArrayList<String>();
+			try {
+				String line;
+				while ((line = t.reader.readLine()) != null) {
+					t.lines.add(line);
+				}
+			} finally {
+				t.reader.close();
+			}
+			return t;
+		}
+
+		Writer createWriter(File f) throws IOException {
+			final Writer w = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(f), encoding.getCharset()),
+					BUFFER_SIZE);
+			if (encoding != Encoding.UTF8 || utf8Bom) {
+				w.write(0xFEFF);
+			}
+			return w;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import fr.umlv.unitex.io.Encoding;
+
+/**
+ * This class decodes the lines of a mapped file with a CharsetDecoder, into a
+ * char buffer that belongs to the current thread, so that decoding a line
+ * allocates nothing, unless it is longer than all the previous ones.
+ */
+final class LineDecoder {
+	private static final ThreadLocal<LineDecoder> decoders = new ThreadLocal<LineDecoder>() {
+		@Override
+		protected LineDecoder initialValue() {
+			return new LineDecoder();
+		}
+	};
+	private final CharsetDecoder[] charsetDecoders = new CharsetDecoder[Encoding
+			.values().length];
+	private CharBuffer chars = CharBuffer.allocate(4096);
+
+	private LineDecoder() {
+	}
+
+	/**
+	 * Decodes the given bytes and returns the resulting chars, without the
+	 * '\r' and '\n' ones. The returned buffer belongs to the current thread:
+	 * it is only valid until the next call to this method from this thread.
+	 */
+	static CharBuffer decode(ByteBuffer bytes, Encoding encoding) {
+		return decoders.get().decodeLine(bytes, encoding);
+	}
+
+	private CharBuffer decodeLine(ByteBuffer bytes, Encoding encoding) {
+		CharsetDecoder decoder = charsetDecoders[encoding.ordinal()];
+		if (decoder == null) {
+			/* Like Encoding.readChar, we use '?' for malformed sequences */
+			decoder = Charset.forName(encoding.getCharset()).newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.replaceWith("?");
+			charsetDecoders[encoding.ordinal()] = decoder;
+		}
+		/* No encoding gives more chars than bytes */
+		if (chars.capacity() < bytes.remaining()) {
+			chars = CharBuffer.allocate(Math.max(bytes.remaining(),
+					2 * chars.capacity()));
+		}
+		chars.clear();
+		decoder.reset();
+		decoder.decode(bytes, chars, true);
+		decoder.flush(chars);
+		final char[] array = chars.array();
+		final int n = chars.position();
+		int length = 0;
+		for (int i = 0; i < n; i++) {
+			final char c = array[i];
+			if (c != '\r' && c != '\n') {
+				array[length++] = c;
+			}
+		}
+		chars.position(0);
+		chars.limit(length);
+		return chars;
+	}
+}
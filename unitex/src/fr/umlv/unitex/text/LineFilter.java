@@ -0,0 +1,144 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class adds to a line index only the lines of a mapped file that match
+ * a pattern. Each line is decoded once into the char buffer of the current
+ * thread, checked against a literal that any match must contain, and then
+ * matched with a reused Matcher. The lines of big batches are matched in
+ * parallel.
+ */
+final class LineFilter {
+	static final int CHUNK_SIZE = 1 << 10;
+	private final MappedFile data;
+	private final Encoding encoding;
+	private final Pattern pattern;
+	private final String literal;
+	private final Matcher matcher;
+	private boolean[] keep = new boolean[LineScanner.BATCH_SIZE];
+	private long lastEndInBytes = 0;
+	private long lastEndInChars = 0;
+
+	LineFilter(MappedFile data, Encoding encoding, Pattern pattern) {
+		this.data = data;
+		this.encoding = encoding;
+		this.pattern = pattern;
+		this.literal = (pattern.flags() == 0) ? LineSearch
+				.getRequiredLiteral(pattern.pattern()) : null;
+		this.matcher = pattern.matcher("");
+	}
+
+	/**
+	 * Adds to index the matching lines among the n next ones, given by their
+	 * ends like in a LineSink.
+	 */
+	void addMatchingLines(long[] nextInBytes, long[] nextInChars, int n,
+			LineIndex index) {
+		if (keep.length < n) {
+			keep = new boolean[n];
+		}
+		final long startInBytes = lastEndInBytes;
+		if (n > CHUNK_SIZE) {
+			ParallelLineScanner.pool.invoke(new MatchTask(startInBytes,
+					nextInBytes, 0, n));
+		} else {
+			match(startInBytes, nextInBytes, 0, n, matcher);
+		}
+		for (int i = 0; i < n; i++) {
+			if (keep[i]) {
+				index.addLine((i == 0) ? lastEndInBytes : nextInBytes[i - 1],
+						(i == 0) ? lastEndInChars : nextInChars[i - 1],
+						nextInBytes[i], nextInChars[i]);
+			}
+		}
+		if (n > 0) {
+			lastEndInBytes = nextInBytes[n - 1];
+			lastEndInChars = nextInChars[n - 1];
+		}
+	}
+
+	/**
+	 * Adds to index the last line of the file if it has no new line and if it
+	 * matches.
+	 */
+	void addLastLine(long length, long totalChars, LineIndex index) {
+		if (lastEndInBytes < length) {
+			final long[] next = { length };
+			match(lastEndInBytes, next, 0, 1, matcher);
+			if (keep[0]) {
+				index.addLine(lastEndInBytes, lastEndInChars, length,
+						totalChars);
+			}
+		}
+	}
+
+	/**
+	 * Sets keep[i] for the lines #from to #to-1 of a batch. Line #0 starts at
+	 * startInBytes, and line #i at nextInBytes[i-1].
+	 */
+	void match(long startInBytes, long[] nextInBytes, int from, int to,
+			Matcher m) {
+		for (int i = from; i < to; i++) {
+			final long start = (i == 0) ? startInBytes : nextInBytes[i - 1];
+			final CharSequence line = LineDecoder.decode(
+					data.slice(start, (int) (nextInBytes[i] - start)),
+					encoding);
+			keep[i] = (literal == null || LineSearch.contains(line, literal))
+					&& m.reset(line).matches();
+		}
+	}
+
+	@SuppressWarnings("synthetic-access")
+	class MatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final long startInBytes;
+		private final long[] nextInBytes;
+		private final int from;
+		private final int to;
+
+		MatchTask(long startInBytes, long[] nextInBytes, int from, int to) {
+			this.startInBytes = startInBytes;
+			this.nextInBytes = nextInBytes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CHUNK_SIZE) {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new MatchTask(startInBytes, nextInBytes, from,
+						middle), new MatchTask(startInBytes, nextInBytes,
+						middle, to));
+				return;
+			}
+			match(startInBytes, nextInBytes, from, to, pattern.matcher(""));
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.util.Arrays;
+
+/**
+ * This is a compact index of the lines of a text file. Instead of keeping one
+ * object per line, we store line boundaries, i.e. the byte and char offsets
+ * where lines start, in chunks of primitive arrays. Each boundary is stored as
+ * an unsigned int delta from the base offset of its chunk, so that a line costs
+ * a few bytes, whatever the size of the file.
+ * 
+ * If the index is contiguous, line #i goes from boundary #i to boundary #i+1.
+ * Otherwise, as it is the case when lines are filtered, each line has its own
+ * pair of boundaries.
+ * 
+ * The index is designed for one writer thread and any number of reader
+ * threads: values are always written before the volatile boundary counter is
+ * updated, and readers only look at lines below the size they have read.
+ */
+public class LineIndex {
+	private final boolean contiguous;
+	private final PackedOffsets bytes = new PackedOffsets();
+	private final PackedOffsets chars = new PackedOffsets();
+	private volatile int boundaries = 0;
+
+	public LineIndex(boolean contiguous) {
+		this.contiguous = contiguous;
+	}
+
+	public boolean isContiguous() {
+		return contiguous;
+	}
+
+	/**
+	 * Adds a line. Start offsets are the ones of the first byte/char of the
+	 * line, next offsets are the ones of the first byte/char after the end of
+	 * the line, including its new line.
+	 */
+	public void addLine(long startInBytes, long startInChars,
+			long nextInBytes, long nextInChars) {
+		if (!contiguous || boundaries == 0) {
+			addBoundary(startInBytes, startInChars);
+		}
+		addBoundary(nextInBytes, nextInChars);
+	}
+
+	/**
+	 * Adds n lines to a contiguous index. The first one starts where the last
+	 * line of the index ends, or at offset 0 if the index is empty.
+	 */
+	public void addLineEnds(long[] nextInBytes, long[] nextInChars, int n) {
+		if (!contiguous) {
+			throw new IllegalStateException(
+					"Cannot add line ends to a non contiguous index");
+		}
+		int k = boundaries;
+		if (k == 0) {
+			bytes.set(0, 0);
+			chars.set(0, 0);
+			k = 1;
+		}
+		for (int i = 0; i < n; i++) {
+			bytes.set(k, nextInBytes[i]);
+			chars.set(k, nextInChars[i]);
+			k++;
+		}
+		/* Lines become visible to readers all at once */
+		boundaries = k;
+	}
+
+	private void addBoundary(long b, long c) {
+		final int n = boundaries;
+		bytes.set(n, b);
+		chars.set(n, c);
+		boundaries = n + 1;
+	}
+
+	/**
+	 * Returns the number of lines in the index.
+	 */
+	public int size() {
+		final int n = boundaries;
+		if (contiguous) {
+			return (n == 0) ? 0 : n - 1;
+		}
+		return n >> 1;
+	}
+
+	private int startBoundary(int line) {
+		return contiguous ? line : line << 1;
+	}
+
+	public long getStartInBytes(int line) {
+		return bytes.get(startBoundary(line));
+	}
+
+	/**
+	 * Returns the offset of the first byte after line #line.
+	 */
+	public long getNextInBytes(int line) {
+		return bytes.get(startBoundary(line) + 1);
+	}
+
+	public long getStartInChars(int line) {
+		return chars.get(startBoundary(line));
+	}
+
+	/**
+	 * Returns the offset of the first char after line #line.
+	 */
+	public long getNextInChars(int line) {
+		return chars.get(startBoundary(line) + 1);
+	}
+
+	/**
+	 * Looks for the line that contains the given char position, considering
+	 * only the first 'size' lines of the index. As line starts are sorted,
+	 * this is a binary search.
+	 * 
+	 * @return the number of the line, or -1 if no line contains the position
+	 */
+	public int getLineContainingChar(long position, int size) {
+		final int max = Math.min(size, size());
+		int low = 0;
+		int high = max - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (getStartInChars(middle) <= position) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		/* high is now the last line starting before or at the position */
+		if (high < 0 || position >= getNextInChars(high)) {
+			return -1;
+		}
+		return high;
+	}
+
+	/**
+	 * This is a growable sequence of non decreasing offsets. Offsets are
+	 * grouped in chunks of CHUNK_SIZE values. Each chunk stores a long base
+	 * and unsigned int deltas from this base. In the unlikely case where a
+	 * chunk covers more than 4Gb, it is stored as a plain long array.
+	 */
+	static class PackedOffsets {
+		private static final int CHUNK_SHIFT = 12;
+		private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+		private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+		private static final long MAX_DELTA = 0xFFFFFFFFL;
+		private long[] bases = new long[16];
+		private int[][] deltas = new int[16][];
+		private long[][] wide = new long[16][];
+
+		/**
+		 * Sets the value #index. Values must be set in increasing index order.
+		 */
+		void set(int index, long value) {
+			final int chunk = index >>> CHUNK_SHIFT;
+			final int offset = index & CHUNK_MASK;
+			if (offset == 0) {
+				if (chunk == bases.length) {
+					bases = Arrays.copyOf(bases, 2 * chunk);
+					deltas = Arrays.copyOf(deltas, 2 * chunk);
+					wide = Arrays.copyOf(wide, 2 * chunk);
+				}
+				bases[chunk] = value;
+				deltas[chunk] = new int[CHUNK_SIZE];
+			}
+			if (wide[chunk] != null) {
+				wide[chunk][offset] = value;
+				return;
+			}
+			final long delta = value - bases[chunk];
+			if (delta <= MAX_DELTA) {
+				deltas[chunk][offset] = (int) delta;
+				return;
+			}
+			/* The chunk is too large: we switch it to plain longs */
+			final long[] tmp = new long[CHUNK_SIZE];
+			for (int i = 0; i < offset; i++) {
+				tmp[i] = bases[chunk] + (deltas[chunk][i] & MAX_DELTA);
+			}
+			tmp[offset] = value;
+			wide[chunk] = tmp;
+		}
+
+		long get(int index) {
+			final int chunk = index >>> CHUNK_SHIFT;
+			final int offset = index & CHUNK_MASK;
+			final long[] w = wide[chunk];
+			if (w != null) {
+				return w[offset];
+			}
+			return bases[chunk] + (deltas[chunk][offset] & MAX_DELTA);
+		}
+	}
+}
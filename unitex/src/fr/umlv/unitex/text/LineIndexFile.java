@@ -0,0 +1,328 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.zip.CRC32;
+
+import fr.umlv.unitex.files.FileUtil;
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+import fr.umlv.unitex.text.LineScanner.LineSink;
+
+/**
+ * This class manages the sidecar index of a text file, i.e. a binary file
+ * named foo.txt.lidx that contains the line ends of foo.txt. For a .snt file,
+ * the sidecar is stored in its _snt directory, and for a file of a _snt
+ * directory, like a concordance, it is stored next to the file. The sidecars
+ * of other files, like dictionaries, are stored in ~/.unitex/cache, so that
+ * nothing is written among the files of the user. When a file is reopened,
+ * its line ends can be read from the sidecar with one mapping instead of
+ * scanning the whole file again. Files smaller than MIN_FILE_SIZE are fast
+ * enough to scan, so they don't get a sidecar.
+ * 
+ * A sidecar is only used if the size, the modification date and the encoding
+ * of the text file are the ones it was built for, and if its first and last
+ * SAMPLE_SIZE bytes have the same checksum, which catches most files that
+ * have been rewritten with the same size and date. It is made of a header
+ * followed, for each line, by its length in bytes and in chars as 2 ints.
+ */
+public class LineIndexFile {
+	public static final String EXTENSION = ".lidx";
+	static final long MIN_FILE_SIZE = 1 << 20;
+	private static final int MAGIC = 0x554C4958;
+	private static final int VERSION = 2;
+	private static final int SAMPLE_SIZE = 4096;
+	/*
+	 * magic, version, file size, file date, encoding, checksum, number of
+	 * lines, number of chars
+	 */
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 8;
+
+	private LineIndexFile() {
+		/* No instance */
+	}
+
+	/**
+	 * Returns the sidecar of f, or null if there is no place for it. In the
+	 * cache directory, the name of a sidecar is made of the name of the file
+	 * and of the hash code of its path, so that files with the same name in
+	 * different directories have different sidecars.
+	 */
+	public static File getIndexFile(File f) {
+		if ("snt".equals(FileUtil.getExtensionInLowerCase(f))) {
+			final File sntDir = SntUtil.getSntDir(f);
+			if (sntDir.isDirectory()) {
+				return new File(sntDir, f.getName() + EXTENSION);
+			}
+		}
+		final File dir = f.getAbsoluteFile().getParentFile();
+		if (dir != null && dir.getName().endsWith("_snt")) {
+			return new File(dir, f.getName() + EXTENSION);
+		}
+		final String home = System.getProperty("user.home");
+		if (home == null) {
+			return null;
+		}
+		return new File(new File(new File(home, ".unitex"), "cache"),
+				f.getName() + "."
+						+ Integer.toHexString(f.getAbsolutePath().hashCode())
+						+ EXTENSION);
+	}
+
+	/**
+	 * Gives the line ends stored in the sidecar of f to the sink, as the
+	 * LineScanner would do.
+	 * 
+	 * @return the number of chars of the text, or -1 if there is no valid
+	 *         sidecar, or if the sink stopped the reading. In the latter
+	 *         case, the sink may have received some lines.
+	 */
+	public static long read(File f, Encoding encoding, LineSink sink) {
+		if (f.length() < MIN_FILE_SIZE) {
+			return -1;
+		}
+		final File indexFile = getIndexFile(f);
+		if (indexFile == null || !indexFile.exists()
+				|| indexFile.lastModified() < f.lastModified()) {
+			return -1;
+		}
+		MappedFile index;
+		try {
+			index = MappedFile.map(indexFile);
+		} catch (final IOException e) {
+			return -1;
+		}
+		try {
+			if (index.length() < HEADER_SIZE) {
+				return -1;
+			}
+			final byte[] tmp = new byte[HEADER_SIZE];
+			index.get(0, tmp, 0, HEADER_SIZE);
+			final ByteBuffer header = ByteBuffer.wrap(tmp);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION
+					|| header.getLong() != f.length()
+					|| header.getLong() != f.lastModified()
+					|| header.getInt() != encoding.ordinal()
+					|| header.getInt() != getChecksum(f)) {
+				return -1;
+			}
+			final int lines = header.getInt();
+			final long chars = header.getLong();
+			if (lines < 0 || index.length() != HEADER_SIZE + 8L * lines) {
+				return -1;
+			}
+			final int batch = LineScanner.BATCH_SIZE;
+			final byte[] block = new byte[8 * batch];
+			final IntBuffer lengths = ByteBuffer.wrap(block).asIntBuffer();
+			final long[] nextInBytes = new long[batch];
+			final long[] nextInChars = new long[batch];
+			long lastBytes = 0;
+			long lastChars = 0;
+			long pos = HEADER_SIZE;
+			for (int done = 0; done < lines;) {
+				final int n = Math.min(batch, lines - done);
+				index.get(pos, block, 0, 8 * n);
+				lengths.clear();
+				for (int i = 0; i < n; i++) {
+					lastBytes += lengths.get() & 0xFFFFFFFFL;
+					lastChars += lengths.get() & 0xFFFFFFFFL;
+					nextInBytes[i] = lastBytes;
+					nextInChars[i] = lastChars;
+				}
+				if (!sink.add(nextInBytes, nextInChars, n, lastBytes)) {
+					return -1;
+				}
+				pos += 8 * n;
+				done += n;
+			}
+			return chars;
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * Returns the CRC32 of the first and last SAMPLE_SIZE bytes of f, or 0 if
+	 * f cannot be read.
+	 */
+	static int getChecksum(File f) {
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[SAMPLE_SIZE];
+		try {
+			final RandomAccessFile file = new RandomAccessFile(f, "r");
+			try {
+				final long length = file.length();
+				final int head = (int) Math.min(SAMPLE_SIZE, length);
+				file.readFully(buffer, 0, head);
+				crc.update(buffer, 0, head);
+				final int tail = (int) Math.min(SAMPLE_SIZE, length - head);
+				file.seek(length - tail);
+				file.readFully(buffer, 0, tail);
+				crc.update(buffer, 0, tail);
+			} finally {
+				file.close();
+			}
+		} catch (final IOException e) {
+			return 0;
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Returns a writer that will build the sidecar of f, or null if f is too
+	 * small to need one or if it cannot be created, for instance because
+	 * its directory is read-only.
+	 */
+	public static Writer createWriter(File f, Encoding encoding) {
+		if (f.length() < MIN_FILE_SIZE) {
+			return null;
+		}
+		try {
+			return new Writer(f, encoding);
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Records the line ends that go through a sink into a temporary file that
+	 * becomes the sidecar when finish() is called.
+	 */
+	public static class Writer {
+		private final File indexFile;
+		private final File tmpFile;
+		private final long fileLength;
+		private final long fileDate;
+		private final Encoding encoding;
+		private final int checksum;
+		private final FileOutputStream stream;
+		private final DataOutputStream output;
+		private boolean failed = false;
+		private int lines = 0;
+		private long lastBytes = 0;
+		private long lastChars = 0;
+
+		Writer(File f, Encoding encoding) throws IOException {
+			this.indexFile = getIndexFile(f);
+			if (indexFile == null) {
+				throw new IOException("No place for the index of " + f);
+			}
+			indexFile.getParentFile().mkdirs();
+			this.tmpFile = new File(indexFile.getPath() + ".tmp");
+			this.fileLength = f.length();
+			this.fileDate = f.lastModified();
+			this.encoding = encoding;
+			this.checksum = getChecksum(f);
+			stream = new FileOutputStream(tmpFile);
+			output = new DataOutputStream(new BufferedOutputStream(stream,
+					1 << 16));
+			/* Placeholder for the header, that is written by finish() */
+			output.write(new byte[HEADER_SIZE]);
+		}
+
+		/**
+		 * Returns a sink that records line ends before giving them to the
+		 * given sink.
+		 */
+		public LineSink wrap(final LineSink sink) {
+			return new LineSink() {
+				@SuppressWarnings("synthetic-access")
+				@Override
+				public boolean add(long[] nextInBytes, long[] nextInChars,
+						int n, long scanned) {
+					record(nextInBytes, nextInChars, n);
+					return sink.add(nextInBytes, nextInChars, n, scanned);
+				}
+			};
+		}
+
+		void record(long[] nextInBytes, long[] nextInChars, int n) {
+			if (failed) {
+				return;
+			}
+			try {
+				for (int i = 0; i < n; i++) {
+					final long b = nextInBytes[i] - lastBytes;
+					final long c = nextInChars[i] - lastChars;
+					if (b > 0xFFFFFFFFL) {
+						/* A line is too long to be stored */
+						failed = true;
+						return;
+					}
+					output.writeInt((int) b);
+					output.writeInt((int) c);
+					lastBytes = nextInBytes[i];
+					lastChars = nextInChars[i];
+				}
+				lines += n;
+			} catch (final IOException e) {
+				failed = true;
+			}
+		}
+
+		/**
+		 * Writes the header and installs the sidecar.
+		 * 
+		 * @param chars
+		 *            the total number of chars of the text
+		 */
+		public void finish(long chars) {
+			if (failed) {
+				abort();
+				return;
+			}
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putLong(fileLength)
+					.putLong(fileDate).putInt(encoding.ordinal())
+					.putInt(checksum).putInt(lines).putLong(chars);
+			header.flip();
+			try {
+				output.flush();
+				stream.getChannel().write(header, 0);
+				output.close();
+			} catch (final IOException e) {
+				abort();
+				return;
+			}
+			indexFile.delete();
+			if (!tmpFile.renameTo(indexFile)) {
+				tmpFile.delete();
+			}
+		}
+
+		public void abort() {
+			try {
+				output.close();
+			} catch (final IOException e) {
+				/* Nothing to do */
+			}
+			tmpFile.delete();
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.nio.ByteBuffer;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class looks for new lines in a mapped file. Instead of decoding chars
+ * one by one, it copies the file by blocks and tests 8 bytes at a time (SWAR),
+ * looking for 0x0A bytes in UTF8, and for 0x0A 0x00 (resp. 0x00 0x0A) code
+ * units in UTF16LE (resp. UTF16BE). Char offsets are computed without
+ * decoding: in UTF8, a char is a byte that is not a continuation byte
+ * 10XX XXXX, and in UTF16, a char is 2 bytes.
+ * 
+ * Line ends are reported by batches of primitive arrays to a LineSink.
+ */
+public class LineScanner {
+	/**
+	 * Receives the positions of the first byte and char after each new line.
+	 */
+	public interface LineSink {
+		/**
+		 * Called with at most BATCH_SIZE line ends, and at least once per
+		 * block of BLOCK_SIZE bytes, even if there is no new line in it.
+		 * 
+		 * @param scanned
+		 *            the position up to which the file has been scanned
+		 * @return false to stop the scan
+		 */
+		boolean add(long[] nextInBytes, long[] nextInChars, int n,
+				long scanned);
+	}
+
+	static final int BLOCK_SIZE = 1 << 16;
+	public static final int BATCH_SIZE = 1 << 13;
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+	private static final long NEW_LINES = 0x0A0A0A0A0A0A0A0AL;
+	/* High bits of the bytes #0, #2, #4 and #6 of a big endian long */
+	private static final long EVEN_BYTES = 0x8000800080008000L;
+
+	private final byte[] block = new byte[BLOCK_SIZE];
+	private final ByteBuffer words = ByteBuffer.wrap(block);
+	private final long[] bytes = new long[BATCH_SIZE];
+	private final long[] chars = new long[BATCH_SIZE];
+	private int n;
+
+	/**
+	 * Returns a mask with the high bit set for each byte of x that is zero.
+	 * Unlike the usual (x-0x01..)&~x&0x80.. trick, there is no false positive.
+	 */
+	private static long zeroBytes(long x) {
+		return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+	}
+
+	/**
+	 * Returns a mask with the high bit set for each byte of x that is a UTF8
+	 * continuation byte 10XX XXXX.
+	 */
+	private static long continuationBytes(long x) {
+		return x & ~(x << 1) & HIGH_BITS;
+	}
+
+	/**
+	 * Scans the bytes [from,to[ of the given file. For UTF16 encodings, from
+	 * must be the position of a code unit.
+	 * 
+	 * @param charsBefore
+	 *            the char offset of the position from
+	 * @return the char offset of the position to, or -1 if the sink stopped
+	 *         the scan
+	 */
+	public long scan(MappedFile file, long from, long to, Encoding encoding,
+			long charsBefore, LineSink sink) {
+		n = 0;
+		long continuations = 0;
+		long pos = from;
+		while (pos < to) {
+			final int length = (int) Math.min(BLOCK_SIZE, to - pos);
+			file.get(pos, block, 0, length);
+			final int wordCount = length >>> 3;
+			for (int w = 0; w < wordCount; w++) {
+				final int offset = w << 3;
+				final long x = words.getLong(offset);
+				long newLines;
+				if (encoding == Encoding.UTF8) {
+					final long cont = continuationBytes(x);
+					newLines = zeroBytes(x ^ NEW_LINES);
+					while (newLines != 0) {
+						final int shift = Long.numberOfLeadingZeros(newLines);
+						/* Continuation bytes before the new line */
+						final long before = (shift == 0) ? 0 : cont
+								& (-1L << (64 - shift));
+						final long next = pos + offset + (shift >>> 3) + 1;
+						addLine(next, charsBefore + (next - from)
+								- continuations - Long.bitCount(before));
+						newLines &= ~(Long.MIN_VALUE >>> shift);
+						if (n == BATCH_SIZE && !flush(sink, next)) {
+							return -1;
+						}
+					}
+					continuations += Long.bitCount(cont);
+				} else {
+					final long zeros = zeroBytes(x);
+					final long lf = zeroBytes(x ^ NEW_LINES);
+					if (encoding == Encoding.UTF16LE) {
+						newLines = lf & (zeros << 8) & EVEN_BYTES;
+					} else {
+						newLines = zeros & (lf << 8) & EVEN_BYTES;
+					}
+					while (newLines != 0) {
+						final int shift = Long.numberOfLeadingZeros(newLines);
+						final long next = pos + offset + (shift >>> 3) + 2;
+						addLine(next, charsBefore + ((next - from) >> 1));
+						newLines &= ~(Long.MIN_VALUE >>> shift);
+						if (n == BATCH_SIZE && !flush(sink, next)) {
+							return -1;
+						}
+					}
+				}
+			}
+			/* We deal with the last bytes of the block, if any */
+			for (int i = wordCount << 3; i < length; i++) {
+				final int b = block[i] & 0xFF;
+				if (encoding == Encoding.UTF8) {
+					if ((b & 0xC0) == 0x80) {
+						continuations++;
+					} else if (b == '\n') {
+						final long next = pos + i + 1;
+						addLine(next, charsBefore + (next - from)
+								- continuations);
+					}
+				} else if (((pos + i - from) & 1) == 0 && i + 1 < length) {
+					final int b2 = block[i + 1] & 0xFF;
+					if ((encoding == Encoding.UTF16LE && b == '\n' && b2 == 0)
+							|| (encoding == Encoding.UTF16BE && b == 0 && b2 == '\n')) {
+						final long next = pos + i + 2;
+						addLine(next, charsBefore + ((next - from) >> 1));
+					}
+				}
+				if (n == BATCH_SIZE && !flush(sink, pos + i + 1)) {
+					return -1;
+				}
+			}
+			pos += length;
+			if (!flush(sink, pos)) {
+				return -1;
+			}
+		}
+		if (encoding == Encoding.UTF8) {
+			return charsBefore + (to - from) - continuations;
+		}
+		return charsBefore + ((to - from) >> 1);
+	}
+
+	private void addLine(long nextInBytes, long nextInChars) {
+		bytes[n] = nextInBytes;
+		chars[n] = nextInChars;
+		n++;
+	}
+
+	private boolean flush(LineSink sink, long scanned) {
+		final int size = n;
+		n = 0;
+		return sink.add(bytes, chars, size, scanned);
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.SwingWorker;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+
+/**
+ * This class looks in the background for all the lines of a text model that
+ * contain a match of a regular expression. Lines are cut into chunks that are
+ * searched in parallel, and each line is first checked against a literal that
+ * every match must contain, which avoids running the regex on most lines.
+ * 
+ * The result is the sorted list of the matching lines, so that once the
+ * search is done, looking for the next or previous match is a binary search.
+ */
+public class LineSearch {
+	static final int CHUNK_SIZE = 1 << 14;
+	private final TextAsListModelImpl model;
+	private final MappedFile data;
+	private final LineIndex lines;
+	private final int size;
+	private final Encoding encoding;
+	private final Pattern pattern;
+	private final String literal;
+	private volatile boolean cancelled = false;
+	private SwingWorker<int[], Void> worker;
+	private int[] matches;
+
+	LineSearch(TextAsListModelImpl model, MappedFile data, LineIndex lines,
+			int size, Encoding encoding, Pattern pattern) {
+		this.model = model;
+		this.data = data;
+		this.lines = lines;
+		this.size = size;
+		this.encoding = encoding;
+		this.pattern = pattern;
+		this.literal = (pattern.flags() == 0) ? getRequiredLiteral(pattern
+				.pattern()) : null;
+	}
+
+	/**
+	 * Starts the search. whenDone is invoked on the event dispatch thread
+	 * once all the lines have been searched, unless the search is cancelled.
+	 */
+	public void start(final Runnable whenDone) {
+		worker = new SwingWorker<int[], Void>() {
+			@Override
+			protected int[] doInBackground() throws Exception {
+				if (data == null || !data.startReading()) {
+					return new int[0];
+				}
+				try {
+					return ParallelLineScanner.pool.invoke(new ChunkTask(0,
+							size));
+				} finally {
+					data.stopReading();
+				}
+			}
+
+			@SuppressWarnings("synthetic-access")
+			@Override
+			protected void done() {
+				if (cancelled) {
+					return;
+				}
+				try {
+					matches = get();
+				} catch (final Exception e) {
+					return;
+				}
+				if (whenDone != null) {
+					whenDone.run();
+				}
+			}
+		};
+		worker.execute();
+	}
+
+	public void cancel() {
+		cancelled = true;
+		if (worker != null) {
+			worker.cancel(false);
+		}
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * Returns true if the search has been done on all the lines that the
+	 * model currently contains.
+	 */
+	public boolean isUpToDate() {
+		return !cancelled && lines == model.getLineIndex()
+				&& size == model.getSize();
+	}
+
+	public boolean isDone() {
+		return matches != null;
+	}
+
+	/**
+	 * Returns the number of matching lines, or -1 if the search is not done.
+	 */
+	public int getMatchCount() {
+		return (matches == null) ? -1 : matches.length;
+	}
+
+	/**
+	 * Returns the first matching line after the given one, or -1 if there is
+	 * none or if the search is not done.
+	 */
+	public int getNextMatchedElement(int currentPosition) {
+		if (matches == null) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(matches, currentPosition + 1);
+		if (i < 0) {
+			i = -(i + 1);
+		}
+		return (i < matches.length) ? matches[i] : -1;
+	}
+
+	/**
+	 * Returns the last matching line before the given one, or -1 if there is
+	 * none or if the search is not done.
+	 */
+	public int getPreviousMatchedElement(int currentPosition) {
+		if (matches == null) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(matches, currentPosition - 1);
+		if (i < 0) {
+			i = -(i + 1) - 1;
+		}
+		return (i >= 0) ? matches[i] : -1;
+	}
+
+	/**
+	 * Searches the lines of a chunk, or splits it in two if it is too big.
+	 * Matching lines of the left half come before the ones of the right half,
+	 * so the result is sorted.
+	 */
+	@SuppressWarnings("synthetic-access")
+	class ChunkTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		ChunkTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected int[] compute() {
+			if (to - from > CHUNK_SIZE) {
+				final int middle = (from + to) >>> 1;
+				final ChunkTask right = new ChunkTask(middle, to);
+				right.fork();
+				final int[] a = new ChunkTask(from, middle).compute();
+				final int[] b = right.join();
+				final int[] result = Arrays.copyOf(a, a.length + b.length);
+				System.arraycopy(b, 0, result, a.length, b.length);
+				return result;
+			}
+			int[] found = new int[16];
+			int n = 0;
+			final Matcher matcher = pattern.matcher("");
+			for (int i = from; i < to && !cancelled; i++) {
+				final long start = lines.getStartInBytes(i);
+				final CharSequence line = LineDecoder.decode(
+						data.slice(start, (int) (lines.getNextInBytes(i) - start)),
+						encoding);
+				if (literal != null && !contains(line, literal)) {
+					continue;
+				}
+				if (matcher.reset(line).find()) {
+					if (n == found.length) {
+						found = Arrays.copyOf(found, 2 * n);
+					}
+					found[n++] = i;
+				}
+			}
+			return Arrays.copyOf(found, n);
+		}
+	}
+
+	static boolean contains(CharSequence s, String literal) {
+		final int n = literal.length();
+		final char first = literal.charAt(0);
+		final int max = s.length() - n;
+		for (int i = 0; i <= max; i++) {
+			if (s.charAt(i) != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < n && s.charAt(i + j) == literal.charAt(j)) {
+				j++;
+			}
+			if (j == n) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the longest sequence of plain chars that any match of the given
+	 * regex must contain, or null if we cannot tell. To keep it simple, we
+	 * give up on alternatives, embedded flags and quoted sequences, and we
+	 * ignore everything that is inside groups or char classes.
+	 */
+	static String getRequiredLiteral(String regex) {
+		if (regex.indexOf('|') != -1 || regex.contains("(?")
+				|| regex.contains("\\Q")) {
+			return null;
+		}
+		String best = "";
+		final StringBuilder current = new StringBuilder();
+		int depth = 0;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			boolean plain = false;
+			if (c == '\\') {
+				if (++i == regex.length()) {
+					return null;
+				}
+				c = regex.charAt(i);
+				if (Character.isLetterOrDigit(c)) {
+					/*
+					 * \d, \w... are not plain chars, and we give up on escapes
+					 * that are followed by arguments like \p{L} or \x41
+					 */
+					if ("dDsSwWbBAGZzhHvV".indexOf(c) == -1) {
+						return null;
+					}
+				} else {
+					plain = true;
+				}
+			} else if (c == '[') {
+				/* We skip the char class, that may contain nested classes */
+				int classDepth = 1;
+				i++;
+				if (i < regex.length() && regex.charAt(i) == '^') {
+					i++;
+				}
+				/* A ']' right after '[' or '[^' is a plain char */
+				if (i < regex.length() && regex.charAt(i) == ']') {
+					i++;
+				}
+				while (i < regex.length() && classDepth > 0) {
+					final char d = regex.charAt(i);
+					if (d == '\\') {
+						i++;
+					} else if (d == '[') {
+						classDepth++;
+					} else if (d == ']') {
+						classDepth--;
+					}
+					i++;
+				}
+				if (classDepth > 0) {
+					return null;
+				}
+				/* The for loop will go past the class */
+				i--;
+			} else if (c == '{') {
+				/* We skip the bounds of the quantifier */
+				i = regex.indexOf('}', i);
+				if (i == -1) {
+					return null;
+				}
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else {
+				plain = (".^$*+?{}".indexOf(c) == -1);
+			}
+			if (!plain || depth > 0) {
+				if (current.length() > best.length()) {
+					best = current.toString();
+				}
+				current.setLength(0);
+				continue;
+			}
+			/* A char followed by a quantifier may be absent or repeated */
+			final char next = (i + 1 < regex.length()) ? regex.charAt(i + 1)
+					: 0;
+			if (next == '*' || next == '?' || next == '{') {
+				if (current.length() > best.length()) {
+					best = current.toString();
+				}
+				current.setLength(0);
+				continue;
+			}
+			current.append(c);
+			if (next == '+') {
+				if (current.length() > best.length()) {
+					best = current.toString();
+				}
+				current.setLength(0);
+			}
+		}
+		if (current.length() > best.length()) {
+			best = current.toString();
+		}
+		return best.isEmpty() ? null : best;
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.text;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
+import fr.umlv.unitex.text.LineScanner.LineSink;
+
+/**
+ * This class looks for new lines in a whole mapped file using all available
+ * cores. The beginning of the file is scanned first, so that the first screen
+ * of lines can be displayed at once. Then, the rest of the file is cut into
+ * ranges of RANGE_SIZE bytes, aligned on char boundaries, that are scanned in
+ * parallel by a fork-join pool. Ranges are given back to the sink in file
+ * order, with their char offsets rebased, so that the sink sees exactly the
+ * same line ends as with a sequential LineScanner.
+ * 
+ * In order to bound the memory used by the line ends of ranges that are
+ * scanned but not yet consumed, there are at most 2 ranges per core in
+ * progress at the same time.
+ */
+public class ParallelLineScanner {
+	static final long FIRST_SCREEN_SIZE = 1 << 16;
+	static final long RANGE_SIZE = 8L << 20;
+	static final ForkJoinPool pool = new ForkJoinPool();
+
+	private ParallelLineScanner() {
+		/* No instance */
+	}
+
+	/**
+	 * Scans the whole file.
+	 * 
+	 * @return the number of chars in the file, or -1 if the sink stopped the
+	 *         scan
+	 */
+	public static long scan(MappedFile file, Encoding encoding, LineSink sink) {
+		final long length = file.length();
+		final long firstEnd = align(file, Math.min(length, FIRST_SCREEN_SIZE),
+				encoding);
+		long charBase = new LineScanner().scan(file, 0, firstEnd, encoding, 0,
+				sink);
+		if (charBase == -1) {
+			return -1;
+		}
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+		final int maxRanges = 2 * pool.getParallelism();
+		final ArrayDeque<RangeTask> tasks = new ArrayDeque<RangeTask>();
+		final long[] bytes = new long[LineScanner.BATCH_SIZE];
+		final long[] chars = new long[LineScanner.BATCH_SIZE];
+		long next = firstEnd;
+		try {
+			while (next < length || !tasks.isEmpty()) {
+				while (next < length && tasks.size() < maxRanges) {
+					final long end = align(file,
+							Math.min(length, next + RANGE_SIZE), encoding);
+					final RangeTask task = new RangeTask(file, next, end,
+							encoding, stopped);
+					pool.execute(task);
+					tasks.add(task);
+					next = end;
+				}
+				final RangeTask task = tasks.poll();
+				final Range range = task.join();
+				if (range == null) {
+					return -1;
+				}
+				/* We give the line ends of the range to the sink */
+				int k = 0;
+				for (int i = 0; i < range.n; i++) {
+					bytes[k] = range.start + range.bytes[i];
+					chars[k] = charBase + range.chars[i];
+					k++;
+					if (k == LineScanner.BATCH_SIZE) {
+						if (!sink.add(bytes, chars, k, bytes[k - 1])) {
+							return -1;
+						}
+						k = 0;
+					}
+				}
+				if (!sink.add(bytes, chars, k, range.end)) {
+					return -1;
+				}
+				charBase += range.charCount;
+			}
+			return charBase;
+		} finally {
+			/*
+			 * We must not return while a task may still read the file, since
+			 * the caller may release the mapping right after
+			 */
+			stopped.set(true);
+			for (final RangeTask task : tasks) {
+				task.cancel(false);
+				task.quietlyJoin();
+			}
+		}
+	}
+
+	/**
+	 * Returns the first position >= pos that is the start of a char.
+	 */
+	private static long align(MappedFile file, long pos, Encoding encoding) {
+		final long length = file.length();
+		if (encoding == Encoding.UTF8) {
+			while (pos < length && (file.get(pos) & 0xC0) == 0x80) {
+				pos++;
+			}
+			return pos;
+		}
+		return Math.min(length, (pos + 1) & ~1L);
+	}
+
+	/**
+	 * Line ends of a range. Offsets are relative to the start of the range, so
+	 * that they can be stored as ints.
+	 */
+	static class Range {
+		final long start;
+		final long end;
+		int[] bytes = new int[1024];
+		int[] chars = new int[1024];
+		int n = 0;
+		long charCount;
+
+		Range(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		void add(long nextInBytes, long nextInChars) {
+			if (n == bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * n);
+				chars = Arrays.copyOf(chars, 2 * n);
+			}
+			bytes[n] = (int) (nextInBytes - start);
+			chars[n] = (int) nextInChars;
+			n++;
+		}
+	}
+
+	static class RangeTask extends RecursiveTask<Range> {
+		private static final long serialVersionUID = 1L;
+		private final MappedFile file;
+		private final long start;
+		private final long end;
+		private final Encoding encoding;
+		final AtomicBoolean stopped;
+
+		RangeTask(MappedFile file, long start, long end, Encoding encoding,
+				AtomicBoolean stopped) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.encoding = encoding;
+			this.stopped = stopped;
+		}
+
+		@Override
+		protected Range compute() {
+			final Range range = new Range(start, end);
+			range.charCount = new LineScanner().scan(file, start, end,
+					encoding, 0, new LineSink() {
+						@Override
+						public boolean add(long[] nextInBytes,
+								long[] nextInChars, int n, long scanned) {
+							for (int i = 0; i < n; i++) {
+								range.add(nextInBytes[i], nextInChars[i]);
+							}
+							return !stopped.get();
+						}
+					});
+			return (range.charCount == -1) ? null : range;
+		}
+	}
+}
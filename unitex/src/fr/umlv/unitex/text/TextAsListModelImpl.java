@@ -21,22 +21,15 @@
 package fr.umlv.unitex.text;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.ref.PhantomReference;
-import java.lang.ref.ReferenceQueue;
-import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.regex.Matcher;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 
 import javax.swing.AbstractListModel;
 import javax.swing.SwingWorker;
 
 import fr.umlv.unitex.io.Encoding;
+import fr.umlv.unitex.io.MappedFile;
 
 /**
  * This is a model for representing a text file as the list of its paragraphs.
@@ -46,106 +39,186 @@ import fr.umlv.unitex.io.Encoding;
  * @author Sébastien Paumier
  */
 public class TextAsListModelImpl extends AbstractListModel {
-	private MappedByteBuffer mappedBuffer;
-	private SwingWorker<Void, Interval> worker;
+	private MappedFile mappedFile;
+	private SwingWorker<Void, Integer> worker;
+	private LineSearch search;
 	private Interval selection;
 	private String content = null;
-	private FileChannel channel;
-	private FileInputStream stream;
 	private File file;
 	private boolean dataFromFile;
-	ByteBuffer parseBuffer;
 	Encoding encoding;
-	private final ArrayList<Interval> lines = new ArrayList<Interval>();
+	private volatile LineIndex lines = new LineIndex(true);
+	/**
+	 * Number of lines the view has been notified of. The index may already
+	 * contain more lines.
+	 */
+	private volatile int publishedSize = 0;
 
 	public void load(File f) {
 		load(f, null);
 	}
 
-	public void load(File f, final Pattern filter) {
+	public void load(final File f, final Pattern filter) {
+		cancelSearch();
 		content = null;
 		dataFromFile = true;
+		lines = new LineIndex(filter == null);
+		publishedSize = 0;
+		clearCachedRows();
 		this.file = f;
-		final long fileLength = file.length();
 		this.encoding = Encoding.getEncoding(f);
-		try {
-			stream = new FileInputStream(file);
-		} catch (final FileNotFoundException e) {
-			e.printStackTrace();
-			return;
-		}
-		channel = stream.getChannel();
 		try {
 			/* We skip the BOM for UTF16 encodings */
 			if (encoding == Encoding.UTF16LE || encoding == Encoding.UTF16BE) {
-				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 2,
-						fileLength - 2);
+				mappedFile = MappedFile.map(file, 2);
 			} else {
-				mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
-						fileLength);
+				mappedFile = MappedFile.map(file);
 			}
 		} catch (final IOException e) {
 			e.printStackTrace();
 			return;
 		}
+		final MappedFile data = mappedFile;
 		/*
-		 * parseBuffer must NOT be a final variable, because it would keep a
-		 * reference on the buffer that would never be null, so that the buffer
-		 * can never be garbage collected. As a consequence, the underlying file
-		 * mapping would never be released.
+		 * The worker fills the index by itself, so that lines can be looked up
+		 * as soon as they are indexed. The list is notified in process().
 		 */
-		parseBuffer = mappedBuffer.duplicate();
-		worker = new SwingWorker<Void, Interval>() {
+		final LineIndex index = lines;
+		worker = new SwingWorker<Void, Integer>() {
 			@Override
 			protected Void doInBackground() throws Exception {
-				int lastStartInChars = 0;
-				int lastStartInBytes = 0;
-				final StringBuilder builder1 = new StringBuilder();
-				int pos;
-				for (pos = 0; parseBuffer.position() < parseBuffer.capacity(); pos = pos + 1) {
-					final int posInBuffer = parseBuffer.position();
-					final int c = encoding.readChar(parseBuffer);
-					if (c == '\n') {
-						// if we have an end-of-line
-						boolean publish = false;
-						if (filter == null) {
-							publish = true;
-						} else {
-							final Matcher m = filter.matcher(builder1
-									.toString());
-							if (m.matches())
-								publish = true;
+				if (!data.startReading()) {
+					return null;
+				}
+				try {
+					if (filter == null) {
+						indexAllLines();
+					} else {
+						indexFilteredLines();
+					}
+				} finally {
+					data.stopReading();
+				}
+				return null;
+			}
+
+			/**
+			 * Without filter, we don't need to decode anything: we read the
+			 * line ends from the sidecar index of the file if it is up to
+			 * date, or we let the line scanners look for new lines, saving
+			 * them in a new sidecar on the way. In both cases, lines are added
+			 * to the index by batches.
+			 */
+			private void indexAllLines() {
+				final long length = data.length();
+				final LineScanner.LineSink sink = new LineScanner.LineSink() {
+					private int progress = 0;
+
+					@Override
+					public boolean add(long[] nextInBytes,
+							long[] nextInChars, int n, long scanned) {
+						if (isCancelled()) {
+							return false;
 						}
-						builder1.setLength(0);
-						setProgress((int) ((long) parseBuffer.position() * 100 / parseBuffer
-								.capacity()));
-						if (publish) {
-							publish(new Interval(lastStartInBytes, posInBuffer,
-									lastStartInChars, pos));
+						if (n > 0) {
+							index.addLineEnds(nextInBytes,
+									nextInChars, n);
+							publish(index.size());
+						}
+						final int p = (int) (scanned * 100 / length);
+						if (p != progress) {
+							progress = p;
+							setProgress(p);
+						}
+						return true;
+					}
+				};
+				long totalChars = LineIndexFile.read(f, encoding, sink);
+				if (totalChars == -1) {
+					if (isCancelled()) {
+						return;
+					}
+					final LineIndexFile.Writer writer = LineIndexFile
+							.createWriter(f, encoding);
+					totalChars = ParallelLineScanner.scan(data, encoding,
+							(writer == null) ? sink : writer.wrap(sink));
+					if (writer != null) {
+						if (totalChars == -1) {
+							writer.abort();
+						} else {
+							writer.finish(totalChars);
 						}
-						lastStartInChars = pos + 1;
-						lastStartInBytes = parseBuffer.position();
-					} else {
-						if (filter != null && c != '\r')
-							builder1.append(c);
 					}
 				}
-				if (lastStartInBytes < parseBuffer.capacity()) {
-					publish(new Interval(lastStartInBytes,
-							parseBuffer.position(), lastStartInChars, pos - 1));
-					setProgress(100);
+				if (totalChars == -1) {
+					return;
+				}
+				final int size = index.size();
+				final long lastStartInBytes = (size == 0) ? 0 : index
+						.getNextInBytes(size - 1);
+				if (lastStartInBytes < length) {
+					/* The last line has no new line */
+					final long lastStartInChars = (size == 0) ? 0 : index
+							.getNextInChars(size - 1);
+					index.addLine(lastStartInBytes, lastStartInChars, length,
+							totalChars);
+					publish(index.size());
+				}
+			}
+
+			/**
+			 * With a filter, the line scanners still look for new lines, but
+			 * only the lines that match the filter are added to the index.
+			 */
+			private void indexFilteredLines() {
+				final long length = data.length();
+				final LineFilter lineFilter = new LineFilter(data, encoding,
+						filter);
+				final long totalChars = ParallelLineScanner.scan(data,
+						encoding, new LineScanner.LineSink() {
+							private int progress = 0;
+
+							@Override
+							public boolean add(long[] nextInBytes,
+									long[] nextInChars, int n, long scanned) {
+								if (isCancelled()) {
+									return false;
+								}
+								final int size = index.size();
+								lineFilter.addMatchingLines(nextInBytes,
+										nextInChars, n, index);
+								if (index.size() != size) {
+									publish(index.size());
+								}
+								final int p = (int) (scanned * 100 / length);
+								if (p != progress) {
+									progress = p;
+									setProgress(p);
+								}
+								return true;
+							}
+						});
+				if (totalChars == -1) {
+					return;
+				}
+				final int size = index.size();
+				lineFilter.addLastLine(length, totalChars, index);
+				if (index.size() != size) {
+					publish(index.size());
 				}
-				return null;
 			}
 
 			@SuppressWarnings("synthetic-access")
 			@Override
-			protected void process(java.util.List<Interval> chunks) {
-				final int oldSize = lines.size();
-				for (final Interval i : chunks) {
-					lines.add(i);
+			protected void process(java.util.List<Integer> chunks) {
+				if (index != lines) {
+					/* The model has been reset or reloaded in the meantime */
+					return;
 				}
-				fireIntervalAdded(this, oldSize, lines.size());
+				final int oldSize = publishedSize;
+				final int newSize = chunks.get(chunks.size() - 1);
+				publishedSize = newSize;
+				fireIntervalAdded(this, oldSize, newSize - 1);
 			}
 		};
 		worker.execute();
@@ -159,8 +232,10 @@ public class TextAsListModelImpl extends AbstractListModel {
 
 	public void setText(String string) {
 		dataFromFile = false;
-		final int size = lines.size();
-		lines.clear();
+		final int size = publishedSize;
+		lines = new LineIndex(true);
+		publishedSize = 0;
+		clearCachedRows();
 		fireIntervalRemoved(this, 0, size);
 		content = string;
 		fireIntervalAdded(this, 0, 0);
@@ -170,10 +245,23 @@ public class TextAsListModelImpl extends AbstractListModel {
 	public int getSize() {
 		if (content != null)
 			return 1;
-		return lines.size();
+		return publishedSize;
 	}
 
-	private final StringBuilder builder = new StringBuilder(40 * 100);
+	/**
+	 * The last rows returned by getElementAt, so that repaints don't decode
+	 * them again. Row #i can only be cached in slot i % ROW_CACHE_SIZE, which
+	 * is enough for the consecutive rows of a view.
+	 */
+	private static final int ROW_CACHE_SIZE = 256;
+	private final int[] cachedRows = new int[ROW_CACHE_SIZE];
+	private final String[] cachedValues = new String[ROW_CACHE_SIZE];
+
+	private void clearCachedRows() {
+		synchronized (cachedValues) {
+			Arrays.fill(cachedValues, null);
+		}
+	}
 
 	/**
 	 * Returns the text corresponding to the paragraph #i.
@@ -182,25 +270,42 @@ public class TextAsListModelImpl extends AbstractListModel {
 	public String getElementAt(int i) {
 		if (!dataFromFile)
 			return content;
-		final Interval interval = getInterval(i);
-		builder.setLength(0);
-		final int start = interval.getStartInChars();
-		final int end = interval.getEndInChars();
-		mappedBuffer.position(interval.getStartInBytes());
-		for (int pos = start; pos <= end; pos++) {
-			final int c = encoding.readChar(mappedBuffer);
-			if (c != '\r' && c != '\n') {
-				builder.append((char) c);
+		if (i >= publishedSize) {
+			return null;
+		}
+		final int slot = i & (ROW_CACHE_SIZE - 1);
+		synchronized (cachedValues) {
+			if (cachedRows[slot] == i && cachedValues[slot] != null) {
+				return cachedValues[slot];
 			}
 		}
-		return builder.toString();
+		final String s = getLineChars(i).toString();
+		synchronized (cachedValues) {
+			cachedRows[slot] = i;
+			cachedValues[slot] = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the chars of the paragraph #i, without new lines. They are
+	 * decoded in a buffer that belongs to the current thread, so they are
+	 * only valid until its next call to this method.
+	 */
+	CharSequence getLineChars(int i) {
+		final LineIndex index = lines;
+		final long start = index.getStartInBytes(i);
+		return LineDecoder.decode(mappedFile.slice(start,
+				(int) (index.getNextInBytes(i) - start)), encoding);
 	}
 
 	Interval getInterval(int i) {
-		if (!dataFromFile || i >= lines.size()) {
+		if (!dataFromFile || i >= publishedSize) {
 			return null;
 		}
-		return lines.get(i);
+		return new Interval(lines.getStartInBytes(i),
+				lines.getNextInBytes(i) - 1, lines.getStartInChars(i),
+				lines.getNextInChars(i) - 1);
 	}
 
 	public Interval getSelection() {
@@ -223,28 +328,19 @@ public class TextAsListModelImpl extends AbstractListModel {
 
 	/**
 	 * We want to get the number of the interval that contains the given
-	 * position in chars.
+	 * position in chars. This is a binary search in the line index, so that it
+	 * can be used while the file is still being loaded.
 	 * 
 	 * @param position
 	 * @return the number of the interval, or -1 if the position is not
 	 *         contained in an interval of the model
 	 */
-	public int getElementContainingPositionInChars(int position) {
+	public int getElementContainingPositionInChars(long position) {
 		if (!dataFromFile)
 			return -1;
 		if (position < 0)
 			return -1;
-		/*
-		 * We cache the size and length in case there is a publish operation
-		 * that updates the array
-		 */
-		for (int i = 0; i < lines.size(); i++) {
-			final Interval tmp = lines.get(i);
-			if (position >= tmp.getStartInChars()
-					&& position <= tmp.getEndInChars())
-				return i;
-		}
-		return -1;
+		return lines.getLineContainingChar(position, publishedSize);
 	}
 
 	public String getContent() {
@@ -252,66 +348,42 @@ public class TextAsListModelImpl extends AbstractListModel {
 	}
 
 	public void reset() {
+		cancelSearch();
 		if (worker != null) {
 			worker.cancel(true);
 			worker = null;
 		}
-		if (mappedBuffer != null) {
-			ReferenceQueue<MappedByteBuffer> queue=new ReferenceQueue<MappedByteBuffer>();
-			new PhantomReference<MappedByteBuffer>(mappedBuffer,queue);
-			mappedBuffer = null;
-			System.gc();
-			while (queue.poll()!=null) {
-				System.gc();
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					/* do nothing */
-				}
-				Thread.yield();
-			}
-		}
-		if (parseBuffer != null)
-			parseBuffer = null;
-		System.gc();
-		if (channel != null) {
-			try {
-				channel.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			channel = null;
-		}
-		if (stream != null) {
-			try {
-				stream.close();
-			} catch (final IOException e) {
-				e.printStackTrace();
-			}
-			stream = null;
+		if (mappedFile != null) {
+			/*
+			 * The worker has been cancelled; closing the file waits for it to
+			 * stop reading before releasing the mapping
+			 */
+			mappedFile.close();
+			mappedFile = null;
 		}
 		setText("");
-		final int size = lines.size();
-		lines.clear();
-		fireIntervalRemoved(this, 0, size);
 	}
 
-	public int getNextMatchedElement(int currentPosition, Pattern p) {
-		final int n = getSize();
-		for (int i = currentPosition + 1; i < n; i++) {
-			final Matcher m = p.matcher(getElementAt(i));
-			if (m.matches())
-				return i;
-		}
-		return -1;
+	LineIndex getLineIndex() {
+		return lines;
+	}
+
+	/**
+	 * Creates a search for the lines that contain a match of p, among the
+	 * lines that are currently loaded. The previous search of this model, if
+	 * any, is cancelled, and so is the new one when the model is reset.
+	 */
+	public LineSearch search(Pattern p) {
+		cancelSearch();
+		search = new LineSearch(this, dataFromFile ? mappedFile : null,
+				lines, dataFromFile ? publishedSize : 0, encoding, p);
+		return search;
 	}
 
-	public int getPreviousMatchedElement(int currentPosition, Pattern p) {
-		for (int i = currentPosition - 1; i >= 0; i--) {
-			final Matcher m = p.matcher(getElementAt(i));
-			if (m.matches())
-				return i;
+	private void cancelSearch() {
+		if (search != null) {
+			search.cancel();
+			search = null;
 		}
-		return -1;
 	}
 }
@@ -0,0 +1,202 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the last sentences read from text automata, so that going
+ * back and forth between neighbouring sentences does not read them again. A
+ * sentence is identified by the path, the date and the size of its .tfst
+ * file, so that a sentence of an automaton that has been rebuilt is never
+ * returned.
+ * 
+ * The cache is also warmed by a background thread, which reads the sentences
+ * around the one the user is looking at.
+ */
+public class SentenceCache {
+	private static final int MAX_SENTENCES = 128;
+
+	private static final Map<String, TfstSentence> sentences = new LinkedHashMap<String, TfstSentence>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, TfstSentence> eldest) {
+			return size() > MAX_SENTENCES;
+		}
+	};
+
+	/* The open automata, by path */
+	private static final Map<String, TfstFile> files = new HashMap<String, TfstFile>();
+
+	/* The last prefetch request; older ones are given up */
+	private static int prefetchGeneration = 0;
+	private static File[] prefetchFiles;
+	private static int prefetchFrom, prefetchTo;
+	private static Thread prefetcher;
+
+	private SentenceCache() {
+		/* */
+	}
+
+	/**
+	 * Returns the sentence #n of the given automaton.
+	 * 
+	 * @return null if the sentence cannot be read in process, in which case
+	 *         Tfst2Grf must be used
+	 */
+	public static TfstSentence get(File tfst, int n) {
+		final TfstFile file = getFile(tfst);
+		if (file == null) {
+			return null;
+		}
+		final String key = getKey(file, n);
+		synchronized (sentences) {
+			final TfstSentence s = sentences.get(key);
+			if (s != null) {
+				return s;
+			}
+		}
+		final TfstSentence s = file.readSentence(n);
+		if (s != null) {
+			synchronized (sentences) {
+				sentences.put(key, s);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Asks the background thread to read the sentences n-radius to n+radius
+	 * of the given automata, if they are not already cached. This request
+	 * replaces the previous one.
+	 */
+	public static void prefetch(int n, int radius, File... tfsts) {
+		synchronized (SentenceCache.class) {
+			prefetchGeneration++;
+			prefetchFiles = tfsts;
+			prefetchFrom = n - radius;
+			prefetchTo = n + radius;
+			if (prefetcher == null) {
+				prefetcher = new Thread("Sentence prefetcher") {
+					@Override
+					public void run() {
+						prefetchLoop();
+					}
+				};
+				prefetcher.setDaemon(true);
+				prefetcher.setPriority(Thread.MIN_PRIORITY);
+				prefetcher.start();
+			} else {
+				SentenceCache.class.notifyAll();
+			}
+		}
+	}
+
+	static void prefetchLoop() {
+		int done = 0;
+		for (;;) {
+			final int generation;
+			final File[] tfsts;
+			final int from, to;
+			synchronized (SentenceCache.class) {
+				while (prefetchGeneration == done) {
+					try {
+						SentenceCache.class.wait();
+					} catch (final InterruptedException e) {
+						return;
+					}
+				}
+				generation = done = prefetchGeneration;
+				tfsts = prefetchFiles;
+				from = prefetchFrom;
+				to = prefetchTo;
+			}
+			/* The closest sentences first */
+			final int middle = (from + to) / 2;
+			for (int d = 0; d <= middle - from; d++) {
+				synchronized (SentenceCache.class) {
+					if (generation != prefetchGeneration) {
+						break;
+					}
+				}
+				for (final File tfst : tfsts) {
+					prefetch(tfst, middle + d);
+					if (d != 0) {
+						prefetch(tfst, middle - d);
+					}
+				}
+			}
+		}
+	}
+
+	private static void prefetch(File tfst, int n) {
+		final TfstFile file = getFile(tfst);
+		if (file != null && n >= 1 && n <= file.getSentenceCount()) {
+			get(tfst, n);
+		}
+	}
+
+	/**
+	 * Forgets everything about the given automaton. This must be called when
+	 * it is replaced by another file, since their dates may be the same.
+	 */
+	public static void invalidate(File tfst) {
+		final String path = tfst.getAbsolutePath();
+		synchronized (files) {
+			files.remove(path);
+		}
+		final String prefix = path + '\0';
+		synchronized (sentences) {
+			final Iterator<String> it = sentences.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().startsWith(prefix)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static TfstFile getFile(File tfst) {
+		final String path = tfst.getAbsolutePath();
+		synchronized (files) {
+			TfstFile file = files.get(path);
+			if (file == null || !file.isUpToDate()) {
+				file = TfstFile.open(tfst);
+				if (file == null) {
+					files.remove(path);
+				} else {
+					files.put(path, file);
+				}
+			}
+			return file;
+		}
+	}
+
+	private static String getKey(TfstFile file, int n) {
+		return file.getFile().getAbsolutePath() + '\0' + file.getLength()
+				+ '\0' + file.getLastModified() + '\0' + n;
+	}
+}
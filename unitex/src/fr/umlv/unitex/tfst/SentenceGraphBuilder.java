@@ -0,0 +1,244 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.umlv.unitex.config.ConfigManager;
+import fr.umlv.unitex.graphrendering.GenericGraphBox;
+import fr.umlv.unitex.graphrendering.TfstGraphBox;
+import fr.umlv.unitex.io.GraphIO;
+
+/**
+ * This class builds the graph of a sentence automaton in memory, like
+ * Tfst2Grf does in a .grf file: there is one box per transition, and boxes
+ * are laid out in columns, according to the longest path from the initial
+ * state to the source state of their transition.
+ */
+public class SentenceGraphBuilder {
+	private static final int MARGIN = 20;
+	private static final int HORIZONTAL_GAP = 40;
+	private static final int VERTICAL_GAP = 20;
+	private static final int EMPTY_BOX_WIDTH = 15;
+	private static final int EMPTY_BOX_HEIGHT = 20;
+	private static final int FINAL_BOX_WIDTH = 25;
+
+	private SentenceGraphBuilder() {
+		/* */
+	}
+
+	public static GraphIO build(TfstSentence sentence) {
+		final Font font = ConfigManager.getManager().getInputFont(null);
+		final int fontSize = ConfigManager.getManager().getInputFontSize(null);
+		final Graphics2D g = new BufferedImage(1, 1,
+				BufferedImage.TYPE_INT_RGB).createGraphics();
+		final FontMetrics metrics = g.getFontMetrics(font);
+		final FontMetrics outputMetrics = g.getFontMetrics(ConfigManager
+				.getManager().getGraphPresentationPreferences(null).getOutput()
+				.getFont());
+		g.dispose();
+		final int n = sentence.getStateCount();
+		final int[] column = computeColumns(sentence);
+		final ArrayList<GenericGraphBox> boxes = new ArrayList<GenericGraphBox>();
+		boxes.add(new TfstGraphBox(0, 0, 0, null));
+		boxes.add(new TfstGraphBox(0, 0, 1, null));
+		/* The first box of the transitions of each state */
+		final int[] firstBox = new int[n];
+		final List<Integer> boxColumns = new ArrayList<Integer>();
+		int lastColumn = 0;
+		for (int state = 0; state < n; state++) {
+			firstBox[state] = boxes.size();
+			final int[] t = sentence.getTransitions(state);
+			for (int i = 0; i < t.length; i += 2) {
+				final TfstGraphBox b = new TfstGraphBox(0, 0, 2, null);
+				b.setContentWithBounds(sentence.getBoxContent(t[i]));
+				boxes.add(b);
+				boxColumns.add(column[state] + 1);
+				lastColumn = Math.max(lastColumn, column[state] + 1);
+			}
+		}
+		/* Then we compute the size of the boxes and of the columns */
+		final int nBoxes = boxes.size();
+		final int[] widths = new int[nBoxes];
+		final int[] heights = new int[nBoxes];
+		final int[] columnWidths = new int[lastColumn + 2];
+		final int[] columnHeights = new int[lastColumn + 2];
+		final int[] boxColumn = new int[nBoxes];
+		boxColumn[1] = lastColumn + 1;
+		for (int i = 0; i < nBoxes; i++) {
+			if (i >= 2) {
+				boxColumn[i] = boxColumns.get(i - 2);
+			}
+			computeSize((TfstGraphBox) boxes.get(i), i, metrics, outputMetrics,
+					widths, heights);
+			final int c = boxColumn[i];
+			columnWidths[c] = Math.max(columnWidths[c], widths[i]);
+			if (columnHeights[c] != 0) {
+				columnHeights[c] += VERTICAL_GAP;
+			}
+			columnHeights[c] += heights[i];
+		}
+		int maxHeight = 0;
+		for (final int h : columnHeights) {
+			maxHeight = Math.max(maxHeight, h);
+		}
+		final int[] columnX = new int[lastColumn + 2];
+		final int[] columnY = new int[lastColumn + 2];
+		int x = MARGIN;
+		for (int c = 0; c < columnX.length; c++) {
+			columnX[c] = x;
+			x += columnWidths[c] + HORIZONTAL_GAP;
+			columnY[c] = MARGIN + (maxHeight - columnHeights[c]) / 2;
+		}
+		final int width = x - HORIZONTAL_GAP + MARGIN;
+		final int height = maxHeight + 2 * MARGIN;
+		final boolean rightToLeft = ConfigManager.getManager()
+				.isRightToLeftForText(null)
+				|| ConfigManager.getManager().getGraphPresentationPreferences(
+						null).isRightToLeft();
+		for (int i = 0; i < nBoxes; i++) {
+			final int c = boxColumn[i];
+			final int y = columnY[c] + heights[i] / 2;
+			columnY[c] += heights[i] + VERTICAL_GAP;
+			place(boxes.get(i), i,
+					rightToLeft ? width - columnX[c] : columnX[c], y);
+		}
+		/* And finally, the transitions */
+		addTransitions(boxes.get(0), sentence, 0, firstBox, boxes);
+		int box = 2;
+		for (int state = 0; state < n; state++) {
+			final int[] t = sentence.getTransitions(state);
+			for (int i = 0; i < t.length; i += 2) {
+				addTransitions(boxes.get(box++), sentence, t[i + 1], firstBox,
+						boxes);
+			}
+		}
+		return GraphIO.createSentenceGraph(boxes, width, height, font,
+				fontSize);
+	}
+
+	/**
+	 * Links the given box to the boxes of the transitions of the given state,
+	 * and to the final box if the state is final.
+	 */
+	private static void addTransitions(GenericGraphBox b,
+			TfstSentence sentence, int state, int[] firstBox,
+			ArrayList<GenericGraphBox> boxes) {
+		final int n = sentence.getTransitions(state).length / 2;
+		for (int i = 0; i < n; i++) {
+			b.addTransitionTo(boxes.get(firstBox[state] + i));
+		}
+		if (sentence.isFinal(state)) {
+			b.addTransitionTo(boxes.get(1));
+		}
+	}
+
+	/**
+	 * Returns, for each state, the length of the longest path from the initial
+	 * state. A sentence automaton has no loop.
+	 */
+	private static int[] computeColumns(TfstSentence sentence) {
+		final int n = sentence.getStateCount();
+		final int[] inDegree = new int[n];
+		for (int state = 0; state < n; state++) {
+			final int[] t = sentence.getTransitions(state);
+			for (int i = 0; i < t.length; i += 2) {
+				inDegree[t[i + 1]]++;
+			}
+		}
+		final int[] column = new int[n];
+		final int[] queue = new int[n];
+		int head = 0, tail = 0;
+		for (int state = 0; state < n; state++) {
+			if (inDegree[state] == 0) {
+				queue[tail++] = state;
+			}
+		}
+		while (head < tail) {
+			final int state = queue[head++];
+			final int[] t = sentence.getTransitions(state);
+			for (int i = 0; i < t.length; i += 2) {
+				final int dest = t[i + 1];
+				column[dest] = Math.max(column[dest], column[state] + 1);
+				if (--inDegree[dest] == 0) {
+					queue[tail++] = dest;
+				}
+			}
+		}
+		return column;
+	}
+
+	private static void computeSize(TfstGraphBox b, int i,
+			FontMetrics metrics, FontMetrics outputMetrics, int[] widths,
+			int[] heights) {
+		if (i == 1) {
+			widths[i] = FINAL_BOX_WIDTH;
+			heights[i] = EMPTY_BOX_HEIGHT;
+			return;
+		}
+		final String content = b.getContent();
+		if (content.equals("<E>")) {
+			widths[i] = EMPTY_BOX_WIDTH;
+			heights[i] = EMPTY_BOX_HEIGHT;
+			return;
+		}
+		int max = 0;
+		if (content.charAt(0) == '{') {
+			for (final String s : b.lines) {
+				max = Math.max(max, metrics.stringWidth(s));
+			}
+		} else {
+			max = metrics.stringWidth(content);
+		}
+		final String output = b.transduction;
+		if (output != null) {
+			max = Math.max(max, outputMetrics.stringWidth(output));
+		}
+		widths[i] = max + 10;
+		heights[i] = Math.max(1, b.lines.size()) * metrics.getHeight() + 6;
+		if (output != null && output.length() != 0) {
+			heights[i] += 2 * outputMetrics.getHeight();
+		}
+	}
+
+	/**
+	 * Sets the coordinates of a box, like GraphIO does when it reads it.
+	 */
+	private static void place(GenericGraphBox g, int i, int x, int y) {
+		g.setX(x);
+		g.setY(y);
+		g.setX1(x);
+		g.setY1(y);
+		g.setX_in(x);
+		g.setY_in(y);
+		g.setX_out(x + g.getWidth() + 5);
+		g.setY_out(y);
+		if (i == 1) {
+			g.setY1(y - 10);
+			g.setX_out(x + 25);
+		}
+	}
+}
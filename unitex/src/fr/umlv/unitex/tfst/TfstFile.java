@@ -0,0 +1,212 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import fr.umlv.unitex.files.FileUtil;
+
+/**
+ * This class reads the sentences of a text automaton without running
+ * Tfst2Grf. The .tind file gives the offset in bytes of each sentence in the
+ * .tfst file, so that we can seek straight to any sentence.
+ */
+public class TfstFile {
+	private final File tfst;
+	private final long length;
+	private final long lastModified;
+	private final String charset;
+	private final long[] offsets;
+	private final File tind;
+	private final long tindLastModified;
+
+	private TfstFile(File tfst, File tind, String charset, long[] offsets) {
+		this.tfst = tfst;
+		this.length = tfst.length();
+		this.lastModified = tfst.lastModified();
+		this.tind = tind;
+		this.tindLastModified = tind.lastModified();
+		this.charset = charset;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Opens the given .tfst file with its .tind file.
+	 * 
+	 * @return null if one of the files is missing or not as expected
+	 */
+	public static TfstFile open(File tfst) {
+		final File tind = new File(FileUtil.getFileNameWithoutExtension(tfst)
+				+ ".tind");
+		if (!tfst.isFile() || !tind.isFile()) {
+			return null;
+		}
+		try {
+			final FileInputStream in = new FileInputStream(tfst);
+			final String charset;
+			final int count;
+			try {
+				final byte[] head = new byte[32];
+				final int n = in.read(head);
+				if (n < 2) {
+					return null;
+				}
+				int start = 0;
+				if ((head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+					charset = "UTF-16LE";
+					start = 2;
+				} else if ((head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+					charset = "UTF-16BE";
+					start = 2;
+				} else {
+					charset = "UTF-8";
+					if (n >= 3 && (head[0] & 0xFF) == 0xEF
+							&& (head[1] & 0xFF) == 0xBB
+							&& (head[2] & 0xFF) == 0xBF) {
+						start = 3;
+					}
+				}
+				/* The first line is the number of sentences */
+				final String s = new String(head, start, n - start, charset);
+				final int eol = s.indexOf('\n');
+				if (eol == -1) {
+					return null;
+				}
+				count = Integer.parseInt(s.substring(0, eol).trim());
+			} finally {
+				in.close();
+			}
+			final long[] offsets = readOffsets(tind, count);
+			if (offsets == null) {
+				return null;
+			}
+			return new TfstFile(tfst, tind, charset, offsets);
+		} catch (final IOException e) {
+			return null;
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the offsets of the .tind file. They are little-endian integers,
+	 * of 4 or 8 bytes depending on the platform that has built the file.
+	 */
+	private static long[] readOffsets(File tind, int count) throws IOException {
+		if (count <= 0) {
+			return null;
+		}
+		final long size = tind.length();
+		final int bytes;
+		if (size == 4L * count) {
+			bytes = 4;
+		} else if (size == 8L * count) {
+			bytes = 8;
+		} else {
+			return null;
+		}
+		final FileInputStream in = new FileInputStream(tind);
+		try {
+			final FileChannel channel = in.getChannel();
+			/*
+			 * The file is small and read once, so we don't map it: a mapping
+			 * would keep it locked on Windows until it is garbage collected
+			 */
+			final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) == -1) {
+					return null;
+				}
+			}
+			buffer.flip();
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			final long[] offsets = new long[count];
+			for (int i = 0; i < count; i++) {
+				offsets[i] = (bytes == 4) ? buffer.getInt() & 0xFFFFFFFFL
+						: buffer.getLong();
+			}
+			return offsets;
+		} finally {
+			in.close();
+		}
+	}
+
+	public File getFile() {
+		return tfst;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public int getSentenceCount() {
+		return offsets.length;
+	}
+
+	/**
+	 * Returns false if the .tfst or the .tind file has been modified since
+	 * they were opened.
+	 */
+	public boolean isUpToDate() {
+		return tfst.length() == length && tfst.lastModified() == lastModified
+				&& tind.lastModified() == tindLastModified;
+	}
+
+	/**
+	 * Reads the sentence #n, the first one being #1. The .tfst file is opened
+	 * for each call, so that several threads can read sentences at the same
+	 * time.
+	 * 
+	 * @return the sentence, or null if it cannot be read
+	 */
+	public TfstSentence readSentence(int n) {
+		if (n < 1 || n > offsets.length || offsets[n - 1] >= length) {
+			return null;
+		}
+		try {
+			final FileInputStream in = new FileInputStream(tfst);
+			try {
+				final FileChannel channel = in.getChannel();
+				channel.position(offsets[n - 1]);
+				final BufferedReader r = new BufferedReader(
+						new InputStreamReader(Channels.newInputStream(channel),
+								charset));
+				return TfstSentence.read(r, n);
+			} finally {
+				in.close();
+			}
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Unitex
+ *
+ * Copyright (C) 2001-2019 Université Paris-Est Marne-la-Vallée <unitex@univ-mlv.fr>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA.
+ *
+ */
+package fr.umlv.unitex.tfst;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sentence automaton, as read from a .tfst file by {@link TfstFile}. A
+ * sentence is described like this:
+ * 
+ * <pre>
+ * $1                      sentence number
+ * The cat                 text of the sentence
+ * 0/3 1/1 2/3             token numbers and lengths
+ * 0_0                     offset of the sentence in tokens and in chars
+ * : 1 1 2 1               states: ':' or 't' if final, and then
+ * : 3 2                   pairs (tag, destination state)
+ * t
+ * f
+ * &#64;&lt;E&gt;                    tag #0
+ * .
+ * &#64;STD                    other tags: type, content and bounds
+ * &#64;{The,the.DET}
+ * &#64;0.0.0-0.2.0
+ * .
+ * f
+ * </pre>
+ */
+public class TfstSentence {
+	private final String text;
+	private final int[] tokens;
+	private final int offsetInTokens;
+	private final boolean[] finalStates;
+	/* For each state, its transitions as (tag, destination) pairs */
+	private final int[][] transitions;
+	/* For each tag, the content of its box, with its bounds after a slash */
+	private final String[] tags;
+
+	private TfstSentence(String text, int[] tokens, int offsetInTokens,
+			boolean[] finalStates, int[][] transitions, String[] tags) {
+		this.text = text;
+		this.tokens = tokens;
+		this.offsetInTokens = offsetInTokens;
+		this.finalStates = finalStates;
+		this.transitions = transitions;
+		this.tags = tags;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Returns the token numbers and lengths of the sentence, as TokensInfo
+	 * wants them.
+	 */
+	public int[] getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * Returns the position in tokens of the first token of the sentence in the
+	 * text, as Tfst2Grf writes it in cursentence.start.
+	 */
+	public int getOffsetInTokens() {
+		return offsetInTokens;
+	}
+
+	public int getStateCount() {
+		return finalStates.length;
+	}
+
+	public boolean isFinal(int state) {
+		return finalStates[state];
+	}
+
+	public int[] getTransitions(int state) {
+		return transitions[state];
+	}
+
+	/**
+	 * Returns the content of the box for the given tag, like
+	 * <code>{The,the.DET}/0 0 0 0 2 0</code>, or <code>&lt;E&gt;</code>.
+	 */
+	public String getBoxContent(int tag) {
+		return tags[tag];
+	}
+
+	/**
+	 * Reads the sentence #n from the given reader, which must be at the start
+	 * of the sentence.
+	 * 
+	 * @return the sentence, or null if the data is not as expected
+	 */
+	static TfstSentence read(BufferedReader r, int n) throws IOException {
+		if (!("$" + n).equals(r.readLine())) {
+			return null;
+		}
+		final String text = r.readLine();
+		final String tokenLine = r.readLine();
+		final String offset = r.readLine();
+		if (text == null || tokenLine == null || offset == null
+				|| offset.indexOf('_') == -1) {
+			return null;
+		}
+		try {
+			final int offsetInTokens = Integer.parseInt(offset.substring(0,
+					offset.indexOf('_')));
+			final String[] items = split(tokenLine);
+			final int[] tokens = new int[2 * items.length];
+			int length = 0;
+			for (int i = 0; i < items.length; i++) {
+				final int slash = items[i].indexOf('/');
+				tokens[2 * i] = Integer.parseInt(items[i].substring(0, slash));
+				tokens[2 * i + 1] = Integer.parseInt(items[i]
+						.substring(slash + 1));
+				length += tokens[2 * i + 1];
+			}
+			if (length != text.length()) {
+				return null;
+			}
+			final List<int[]> transitions = new ArrayList<int[]>();
+			final List<Boolean> finalStates = new ArrayList<Boolean>();
+			String line;
+			while (!"f".equals(line = r.readLine())) {
+				if (line == null || line.length() == 0
+						|| (line.charAt(0) != ':' && line.charAt(0) != 't')) {
+					return null;
+				}
+				finalStates.add(line.charAt(0) == 't');
+				final String[] fields = split(line.substring(1));
+				if (fields.length % 2 != 0) {
+					return null;
+				}
+				final int[] t = new int[fields.length];
+				for (int i = 0; i < t.length; i++) {
+					t[i] = Integer.parseInt(fields[i]);
+				}
+				transitions.add(t);
+			}
+			final List<String> tags = new ArrayList<String>();
+			while (!"f".equals(line = r.readLine())) {
+				final String tag = readTag(r, line);
+				if (tag == null) {
+					return null;
+				}
+				tags.add(tag);
+			}
+			final boolean[] f = new boolean[finalStates.size()];
+			for (int i = 0; i < f.length; i++) {
+				f[i] = finalStates.get(i);
+			}
+			final int[][] t = transitions.toArray(new int[transitions.size()][]);
+			/* We check that the automaton only refers to existing things */
+			for (final int[] trans : t) {
+				for (int i = 0; i < trans.length; i += 2) {
+					if (trans[i] < 0 || trans[i] >= tags.size()
+							|| trans[i + 1] < 0 || trans[i + 1] >= t.length) {
+						return null;
+					}
+				}
+			}
+			return new TfstSentence(text, tokens, offsetInTokens, f, t,
+					tags.toArray(new String[tags.size()]));
+		} catch (final NumberFormatException e) {
+			return null;
+		} catch (final IndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a tag, whose first line has already been read, and returns the
+	 * content of its box, or null if the tag is not valid.
+	 */
+	private static String readTag(BufferedReader r, String first)
+			throws IOException {
+		if (first == null || !first.startsWith("@")) {
+			return null;
+		}
+		if (first.equals("@<E>")) {
+			return ".".equals(r.readLine()) ? "<E>" : null;
+		}
+		if (!first.equals("@STD")) {
+			return null;
+		}
+		final String content = r.readLine();
+		final String bounds = r.readLine();
+		if (content == null || !content.startsWith("@") || bounds == null
+				|| !bounds.startsWith("@") || !".".equals(r.readLine())) {
+			return null;
+		}
+		/* a.b.c-d.e.f => a b c d e f */
+		final String[] b = bounds.substring(1).split("[.-]");
+		if (b.length != 6) {
+			return content.substring(1) + "/-1";
+		}
+		final StringBuilder s = new StringBuilder(content.substring(1));
+		s.append('/');
+		for (int i = 0; i < 6; i++) {
+			if (i != 0) {
+				s.append(' ');
+			}
+			s.append(Integer.parseInt(b[i]));
+		}
+		return s.toString();
+	}
+
+	private static String[] split(String s) {
+		final String t = s.trim();
+		if (t.length() == 0) {
+			return new String[0];
+		}
+		return t.split("\\s+");
+	}
+}
@@ -21,6 +21,7 @@
 package fr.umlv.unitex.tfst;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.table.AbstractTableModel;
 
@@ -85,9 +86,36 @@ public class TfstTableModel extends AbstractTableModel {
 	}
 
 	public void init(ArrayList<GenericGraphBox> boxes) {
+		setLines(computeLines(boxes, TokensInfo.getTokens()));
+	}
+
+	/**
+	 * Replaces the rows of the table with the given ones, as computed by
+	 * computeLines.
+	 */
+	public void setLines(ArrayList<TokenTags> newLines) {
 		lines.clear();
+		lines.addAll(newLines);
+		nColumns = 1;
+		for (final TokenTags t : lines) {
+			t.refreshFilter(filter, delafStyle);
+			final int max = 1 + t.getInterpretationCount();
+			if (max > nColumns)
+				nColumns = max;
+		}
+		fireTableStructureChanged();
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Computes the rows of the table for the given sentence graph. This method
+	 * does not change the model, so it can be called from any thread.
+	 */
+	public static ArrayList<TokenTags> computeLines(
+			ArrayList<GenericGraphBox> boxes, List<String> tokens) {
+		final ArrayList<TokenTags> res = new ArrayList<TokenTags>();
 		if (emptySentenceGraph(boxes))
-			return;
+			return res;
 		final boolean[] boxStartingTokens = new boolean[boxes.size()];
 		for (int i = 0; i < boxStartingTokens.length; i++) {
 			boxStartingTokens[i] = true;
@@ -111,20 +139,12 @@ public class TfstTableModel extends AbstractTableModel {
 			}
 			final TfstGraphBox t = (TfstGraphBox) b;
 			final ArrayList<TfstGraphBox> tmp = new ArrayList<TfstGraphBox>();
-			exploreBox(t, tmp);
+			exploreBox(t, tmp, res, tokens);
 		}
-		nColumns = 1;
-		for (final TokenTags t : lines) {
-			t.refreshFilter(filter, delafStyle);
-			final int max = 1 + t.getInterpretationCount();
-			if (max > nColumns)
-				nColumns = max;
-		}
-		fireTableStructureChanged();
-		fireTableDataChanged();
+		return res;
 	}
 
-	private boolean emptySentenceGraph(ArrayList<GenericGraphBox> boxes) {
+	private static boolean emptySentenceGraph(ArrayList<GenericGraphBox> boxes) {
 		if (boxes.size() != 3)
 			return false;
 		return boxes.get(2).getContent()
@@ -136,7 +156,9 @@ public class TfstTableModel extends AbstractTableModel {
 	 * in 'tmp' a list of boxes that form an interpretation for a token
 	 * sequence. This interpretation is then added to the TfstTableModel.
 	 */
-	private void exploreBox(TfstGraphBox t, ArrayList<TfstGraphBox> list) {
+	private static void exploreBox(TfstGraphBox t,
+			ArrayList<TfstGraphBox> list, ArrayList<TokenTags> lines,
+			List<String> tokens) {
 		list.add(t);
 		final ArrayList<GenericGraphBox> transitions = t.getTransitions();
 		if (transitions.size() == 0) {
@@ -144,11 +166,11 @@ public class TfstTableModel extends AbstractTableModel {
 		}
 		TfstGraphBox tmp = (TfstGraphBox) transitions.get(0);
 		if (!t.isNextBoxInSameToken(tmp)) {
-			addInterpretation(list);
+			addInterpretation(list, lines, tokens);
 		} else {
 			for (final GenericGraphBox b : transitions) {
 				tmp = (TfstGraphBox) b;
-				exploreBox(tmp, list);
+				exploreBox(tmp, list, lines, tokens);
 			}
 		}
 		/* Don't forget to remove the element we added */
@@ -158,12 +180,14 @@ public class TfstTableModel extends AbstractTableModel {
 	/**
 	 * Adding an interpretation to the TfstTableModel
 	 */
-	private void addInterpretation(ArrayList<TfstGraphBox> list) {
+	private static void addInterpretation(ArrayList<TfstGraphBox> list,
+			ArrayList<TokenTags> lines, List<String> tokens) {
 		final int start = list.get(0).getBounds().getStart_in_tokens();
 		final int end = list.get(list.size() - 1).getBounds()
 				.getEnd_in_tokens();
-		final String tokenSequence = TokensInfo.getTokenSequence(start, end);
-		final TokenTags tags = getTokenTags(start, end, tokenSequence);
+		final String tokenSequence = TokensInfo.getTokenSequence(tokens, start,
+				end);
+		final TokenTags tags = getTokenTags(lines, start, end, tokenSequence);
 		final ArrayList<Tag> interpretation = new ArrayList<Tag>();
 		for (final TfstGraphBox b : list) {
 			interpretation.add(new Tag(b.getContent()));
@@ -175,7 +199,8 @@ public class TfstTableModel extends AbstractTableModel {
 	 * Returns the TokenTags object for the given token sequence, inserting it
 	 * if needed, so that the TokenTags list is sorted.
 	 */
-	private TokenTags getTokenTags(int start, int end, String tokenSequence) {
+	private static TokenTags getTokenTags(ArrayList<TokenTags> lines,
+			int start, int end, String tokenSequence) {
 		for (int i = 0; i < lines.size(); i++) {
 			TokenTags t = lines.get(i);
 			if (t.getStart() == start && t.getEnd() == end
@@ -22,6 +22,7 @@ package fr.umlv.unitex.tfst;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import fr.umlv.unitex.io.Encoding;
@@ -30,19 +31,56 @@ public class TokensInfo {
 	private static int[] info;
 	private static ArrayList<String> tokens = new ArrayList<String>();
 
+	/*
+	 * The token info a thread may use instead of the shared one, so that a
+	 * sentence graph can be built in the background while another sentence
+	 * is shown
+	 */
+	private static final ThreadLocal<Object[]> local = new ThreadLocal<Object[]>();
+
+	private static int[] info() {
+		final Object[] l = local.get();
+		return (l == null) ? info : (int[]) l[0];
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ArrayList<String> tokens() {
+		final Object[] l = local.get();
+		return (l == null) ? tokens : (ArrayList<String>) l[1];
+	}
+
 	public static int getToken(int n) {
-		return info[2 * n];
+		return info()[2 * n];
 	}
 
 	public static int getTokenLength(int n) {
-		return info[2 * n + 1];
+		return info()[2 * n + 1];
+	}
+
+	/**
+	 * Sets the token info of the given sentence for the current thread only,
+	 * until clearLocalTokensInfo is called.
+	 */
+	public static void setLocalTokensInfo(int[] tokenInfo, String sentence) {
+		local.set(new Object[] { tokenInfo.clone(),
+				getTokens(tokenInfo, sentence) });
+	}
+
+	public static void clearLocalTokensInfo() {
+		local.remove();
 	}
 
 	public static void loadTokensInfo(File f, String sentence) {
+		setTokensInfo(readTokensInfo(f), sentence);
+	}
+
+	/**
+	 * Reads the token numbers and lengths of a .tok file. This method does
+	 * not change the current token info, so it can be called from any thread.
+	 */
+	public static int[] readTokensInfo(File f) {
 		final Scanner scanner = Encoding.getScanner(f);
 		final ArrayList<Integer> l = new ArrayList<Integer>();
-		tokens.clear();
-		int currentPos = 0;
 		while (scanner.hasNextInt()) {
 			int n = scanner.nextInt();
 			if (n < 0) {
@@ -60,9 +98,6 @@ public class TokensInfo {
 						+ " ; should be >=-1");
 			}
 			l.add(n);
-			/* Then we compute the token itself */
-			tokens.add(sentence.substring(currentPos, currentPos + n));
-			currentPos = currentPos + n;
 		}
 		if (scanner.hasNext()) {
 			throw new AssertionError(
@@ -71,29 +106,68 @@ public class TokensInfo {
 		}
 		scanner.close();
 		final int size = l.size();
-		info = new int[size];
+		final int[] res = new int[size];
 		for (int i = 0; i < size; i++) {
-			info[i] = l.get(i);
+			res[i] = l.get(i);
+		}
+		return res;
+	}
+
+	/**
+	 * Sets the token numbers and lengths of the given sentence, as they would
+	 * be read from a .tok file.
+	 */
+	public static void setTokensInfo(int[] tokenInfo, String sentence) {
+		final ArrayList<String> t = getTokens(tokenInfo, sentence);
+		tokens.clear();
+		tokens.addAll(t);
+		info = tokenInfo.clone();
+	}
+
+	/**
+	 * Cuts the given sentence into its tokens, without changing the current
+	 * token info.
+	 */
+	public static ArrayList<String> getTokens(int[] tokenInfo, String sentence) {
+		final ArrayList<String> res = new ArrayList<String>();
+		int currentPos = 0;
+		for (int i = 0; i < tokenInfo.length; i += 2) {
+			final int n = tokenInfo[i + 1];
+			res.add(sentence.substring(currentPos, currentPos + n));
+			currentPos = currentPos + n;
 		}
 		if (currentPos != sentence.length()) {
 			throw new IllegalStateException("Inconsistency in sentence tokens");
 		}
+		return res;
 	}
 
 	public static String getTokenSequence(int start, int end) {
+		return getTokenSequence(tokens(), start, end);
+	}
+
+	public static String getTokenSequence(List<String> tokenList, int start,
+			int end) {
 		final StringBuilder b = new StringBuilder();
 		for (int i = start; i <= end; i++) {
-			b.append(tokens.get(i));
+			b.append(tokenList.get(i));
 		}
 		return b.toString();
 	}
 
+	/**
+	 * Returns the tokens of the current sentence.
+	 */
+	public static List<String> getTokens() {
+		return tokens();
+	}
+
 	public static int getTokenCount() {
-		return tokens.size();
+		return tokens().size();
 	}
 
 	public static String getTokenAsString(int n) {
-		return tokens.get(n);
+		return tokens().get(n);
 	}
 
 	private static int[] infoBackup;
@@ -21,13 +21,10 @@
 package fr.umlv.unitex.xalign;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -36,6 +33,7 @@ import java.util.concurrent.ExecutionException;
 
 import javax.swing.SwingWorker;
 
+import fr.umlv.unitex.io.MappedFile;
 import fr.umlv.unitex.listeners.AlignmentListener;
 
 public class XAlignModelImpl implements XAlignModel {
@@ -94,11 +92,9 @@ public class XAlignModelImpl implements XAlignModel {
 		alignments = new ArrayList<Couple>();
 	}
 
-	private MappedByteBuffer buffer;
+	private MappedFile buffer;
 	private int dataLength = 0;
 	private SwingWorker<Void, PublishInfo> worker;
-	private FileChannel channel;
-	private FileInputStream stream;
 	private File file;
 	Charset utf8 = Charset.forName("UTF-8");
 
@@ -110,10 +106,7 @@ public class XAlignModelImpl implements XAlignModel {
 		}
 		setDataLength((int) file.length());
 		group = new HashMap<String, ArrayList<String>>();
-		stream = new FileInputStream(file);
-		channel = stream.getChannel();
-		setBuffer(channel
-				.map(FileChannel.MapMode.READ_ONLY, 0, getDataLength()));
+		setBuffer(MappedFile.map(file));
 		worker = new SwingWorker<Void, PublishInfo>() {
 			@Override
 			protected Void doInBackground() throws Exception {
@@ -296,8 +289,6 @@ public class XAlignModelImpl implements XAlignModel {
 					}
 				}
 				setProgress(100);
-				setBuffer(null);
-				System.gc();
 				return null;
 			}
 
@@ -320,6 +311,8 @@ public class XAlignModelImpl implements XAlignModel {
 		} catch (final ExecutionException e) {
 			e.printStackTrace();
 		}
+		/* The alignment has been loaded, we don't need the mapping anymore */
+		reset();
 	}
 
 	private final ArrayList<AlignmentListener> listeners = new ArrayList<AlignmentListener>();
@@ -671,9 +664,10 @@ public class XAlignModelImpl implements XAlignModel {
 
 	@Override
 	public void reset() {
-		if (getBuffer() != null)
+		if (getBuffer() != null) {
+			getBuffer().close();
 			setBuffer(null);
-		System.gc();
+		}
 	}
 
 	@Override
@@ -690,11 +684,11 @@ public class XAlignModelImpl implements XAlignModel {
 		return dataLength;
 	}
 
-	public void setBuffer(MappedByteBuffer buffer) {
+	public void setBuffer(MappedFile buffer) {
 		this.buffer = buffer;
 	}
 
-	public MappedByteBuffer getBuffer() {
+	public MappedFile getBuffer() {
 		return buffer;
 	}
 }
@@ -20,7 +20,6 @@
  */
 package fr.umlv.unitex.xalign;
 
-import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -29,6 +28,8 @@ import java.util.List;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
+import fr.umlv.unitex.io.MappedFile;
+
 /**
  * This is a model for representing a XML text file as the list of its
  * sentences. It is used for alignements.
@@ -36,12 +37,12 @@ import javax.swing.event.ListDataListener;
  * @author Sébastien Paumier
  */
 public class XMLTextModelImpl implements XMLTextModel {
-	private MappedByteBuffer buffer;
+	private MappedFile buffer;
 	private static final Charset utf8 = Charset.forName("UTF-8");
 	private final ArrayList<Sentence> sentences;
 	private final HashMap<String, Integer> id;
 
-	public XMLTextModelImpl(MappedByteBuffer buffer) {
+	public XMLTextModelImpl(MappedFile buffer) {
 		this.buffer = buffer;
 		sentences = new ArrayList<Sentence>();
 		id = new HashMap<String, Integer>();
@@ -61,35 +62,46 @@ public class XMLTextModelImpl implements XMLTextModel {
 		final long start = s.start;
 		final long end = s.end;
 		final byte[] tmp = new byte[(int) (end - start + 1)];
+		buffer.get(start, tmp, 0, tmp.length);
+		/* We decode XML entities in place */
 		int z = 0;
-		for (long pos = start; pos <= end; pos++) {
-			if (buffer.get((int) pos) == '&') {
-				if (buffer.get((int) pos + 1) == 'a'
-						&& buffer.get((int) pos + 2) == 'm'
-						&& buffer.get((int) pos + 3) == 'p'
-						&& buffer.get((int) pos + 4) == ';') {
+		for (int pos = 0; pos < tmp.length; pos++) {
+			if (tmp[pos] == '&') {
+				if (matches(tmp, pos + 1, AMP)) {
 					tmp[z++] = '&';
 					pos = pos + 4;
-				} else if (buffer.get((int) pos + 1) == 'l'
-						&& buffer.get((int) pos + 2) == 't'
-						&& buffer.get((int) pos + 3) == ';') {
+				} else if (matches(tmp, pos + 1, LT)) {
 					tmp[z++] = '<';
 					pos = pos + 3;
-				} else if (buffer.get((int) pos + 1) == 'g'
-						&& buffer.get((int) pos + 2) == 't'
-						&& buffer.get((int) pos + 3) == ';') {
+				} else if (matches(tmp, pos + 1, GT)) {
 					tmp[z++] = '>';
 					pos = pos + 3;
 				} else {
-					tmp[z++] = buffer.get((int) pos);
+					tmp[z++] = tmp[pos];
 				}
 			} else {
-				tmp[z++] = buffer.get((int) pos);
+				tmp[z++] = tmp[pos];
 			}
 		}
 		return new String(tmp, 0, z, utf8);
 	}
 
+	private static final byte[] AMP = { 'a', 'm', 'p', ';' };
+	private static final byte[] LT = { 'l', 't', ';' };
+	private static final byte[] GT = { 'g', 't', ';' };
+
+	private static boolean matches(byte[] tmp, int pos, byte[] entity) {
+		if (pos + entity.length > tmp.length) {
+			return false;
+		}
+		for (int i = 0; i < entity.length; i++) {
+			if (tmp[pos + i] != entity[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	@Override
 	public int getIndex(String s) {
 		final Integer i = id.get(s);
@@ -144,8 +156,9 @@ public class XMLTextModelImpl implements XMLTextModel {
 
 	@Override
 	public void reset() {
-		if (buffer != null)
+		if (buffer != null) {
+			buffer.close();
 			buffer = null;
-		System.gc();
+		}
 	}
 }